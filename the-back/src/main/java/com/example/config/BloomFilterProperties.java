@@ -0,0 +1,37 @@
+package com.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 防缓存穿透布隆过滤器配置（cache.bloom）
+ * namespaces 的键为过滤器命名空间（user、group），各自按预期元素个数和误判率确定位数组大小
+ */
+@Data
+@ConfigurationProperties(prefix = "cache.bloom")
+public class BloomFilterProperties {
+
+    private boolean enabled = true;
+
+    // 为 true 时过滤器存放在 Redis 位图中由集群共享，否则每个节点在内存中各建一份
+    private boolean shared = false;
+
+    // 从数据库重建时每批读取的ID数
+    private int rebuildBatchSize = 5000;
+
+    // 过滤器判定不存在时，每个命名空间每秒最多再查数据库确认的次数；超出后直接信任过滤器，防止穿透请求打到数据库
+    private int missConfirmPerSecond = 20;
+
+    private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+
+    @Data
+    public static class Namespace {
+        // 预期元素个数，实际数量超出后误判率会上升，应留出增长余量
+        private long expectedInsertions = 1_000_000;
+        // 期望误判率
+        private double fpp = 0.01;
+    }
+}
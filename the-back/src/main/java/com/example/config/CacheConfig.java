@@ -1 +1,22 @@
- 
\ No newline at end of file
+package com.example.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 缓存配置：本地一级缓存和布隆过滤器的分命名空间配置，以及接收缓存失效广播的 Redis 订阅容器
+ */
+@Configuration
+@EnableConfigurationProperties({LocalCacheProperties.class, BloomFilterProperties.class})
+public class CacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+}
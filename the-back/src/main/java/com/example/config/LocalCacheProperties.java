@@ -0,0 +1,28 @@
+package com.example.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本地一级缓存配置（cache.local）
+ * namespaces 的键为 RedisKeys 常量名的短横线形式（如 user-groups 对应 USER_GROUPS），只有配置了的命名空间才会启用本地缓存
+ */
+@Data
+@ConfigurationProperties(prefix = "cache.local")
+public class LocalCacheProperties {
+
+    private boolean enabled = true;
+
+    private Map<String, Namespace> namespaces = new LinkedHashMap<>();
+
+    @Data
+    public static class Namespace {
+        // 最大条目数，超出后按 W-TinyLFU 淘汰
+        private long maxSize = 10000;
+        // 写入后的有效期（秒），也是错过失效广播时读到旧值的最长时间
+        private long ttlSeconds = 60;
+    }
+}
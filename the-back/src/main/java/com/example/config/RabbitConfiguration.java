@@ -1,13 +1,22 @@
 package com.example.config;
 
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import com.example.utils.ChatPartitionRouter;
+import com.example.utils.ChatRetryRouter;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration 
 public class RabbitConfiguration {
@@ -23,9 +32,29 @@ public class RabbitConfiguration {
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(jsonMessageConverter());
+        // 无法路由的消息退回给发布方，配合发布确认发现丢失的消息
+        rabbitTemplate.setMandatory(true);
         return rabbitTemplate;
     }
 
+    // 配置批量消费的监听容器工厂：攒够batchSize条或等待receiveTimeout毫秒后，把整批消息一次性交给监听方法
+    @Bean("batchListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${chat.group.batch.size:50}") int batchSize,
+            @Value("${chat.group.batch.receive-timeout:20}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(jsonMessageConverter());
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        // 预取数量至少覆盖两个批次，避免攒批时等待网络
+        factory.setPrefetchCount(batchSize * 2);
+        return factory;
+    }
+
     // 配置email队列
     @Bean("emailQueue")
     public Queue emailQueue(){
@@ -42,6 +71,50 @@ public class RabbitConfiguration {
                 .build();
     }
 
+    //配置私聊分区队列：按对话ID哈希到K个队列，每个队列只有一个活跃消费者，保证同一对话内消息有序
+    @Bean("privateChatPartitionQueues")
+    public Declarables privateChatPartitionQueues(ChatPartitionRouter partitionRouter){
+        List<Declarable> queues = new ArrayList<>();
+        for (int i = 0; i < partitionRouter.getPartitions(); i++) {
+            queues.add(QueueBuilder
+                    .durable(partitionRouter.queueName(i))
+                    .singleActiveConsumer() // 多节点部署时同一分区也只有一个消费者在工作
+                    .build());
+        }
+        return new Declarables(queues);
+    }
+
+    //配置聊天消息的延迟重试队列：每级重试队列设置TTL，过期后经默认交换机死信回原队列，
+    //重试状态保存在Broker中，节点重启不会丢失，数据库故障时重试也会按级别错峰回流
+    @Bean("chatRetryQueues")
+    public Declarables chatRetryQueues(ChatPartitionRouter partitionRouter, ChatRetryRouter retryRouter){
+        List<String> sourceQueues = new ArrayList<>();
+        sourceQueues.add("groupChat");
+        for (int i = 0; i < partitionRouter.getPartitions(); i++) {
+            sourceQueues.add(partitionRouter.queueName(i));
+        }
+        List<Declarable> queues = new ArrayList<>();
+        for (String sourceQueue : sourceQueues) {
+            for (int attempt = 1; attempt <= retryRouter.getMaxRetries(); attempt++) {
+                queues.add(QueueBuilder
+                        .durable(retryRouter.retryQueue(sourceQueue, attempt))
+                        .ttl((int) retryRouter.delayOf(attempt))
+                        .deadLetterExchange("") // 默认交换机，按队列名路由
+                        .deadLetterRoutingKey(sourceQueue)
+                        .build());
+            }
+        }
+        return new Declarables(queues);
+    }
+
+    //配置停车场队列：超过最大重试次数的聊天消息停放在这里，等待人工检查和重放
+    @Bean("chatParkingLotQueue")
+    public Queue chatParkingLotQueue(){
+        return QueueBuilder
+                .durable(ChatRetryRouter.PARKING_LOT_QUEUE)
+                .build();
+    }
+
     //配置一个队列用于存放群聊消息
     @Bean("groupChatQueue")
     public Queue groupChatQueue(){
@@ -0,0 +1,95 @@
+package com.example.controller;
+
+import com.example.service.MessageRetryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天消息停车场管理控制器
+ * 查看超过最大重试次数的消息，并在故障排除后重放回原始队列，仅管理员可用
+ */
+@RestController
+@RequestMapping("/api/admin/chat/parking-lot")
+public class ChatParkingLotController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatParkingLotController.class);
+
+    @Autowired
+    private MessageRetryService messageRetryService;
+
+    /**
+     * 查看停车场中的消息（不会移除消息）
+     */
+    @GetMapping
+    public ResponseEntity<?> peekParkedMessages(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            if (!isAdmin(userDetails)) {
+                return ResponseEntity.status(403).body(Map.of("error", "无权访问"));
+            }
+
+            if (limit <= 0 || limit > 100) {
+                return ResponseEntity.badRequest().body(Map.of("error", "limit必须在1-100之间"));
+            }
+
+            List<Map<String, Object>> messages = messageRetryService.peekParked(limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("messages", messages);
+            response.put("message", String.format("获取停车场消息成功，数量: %d", messages.size()));
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("获取停车场消息失败", e);
+            return ResponseEntity.status(500).body(Map.of("error", "获取停车场消息失败"));
+        }
+    }
+
+    /**
+     * 把停车场中的消息重放回原始队列
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<?> replayParkedMessages(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            if (!isAdmin(userDetails)) {
+                return ResponseEntity.status(403).body(Map.of("error", "无权访问"));
+            }
+
+            if (limit <= 0 || limit > 500) {
+                return ResponseEntity.badRequest().body(Map.of("error", "limit必须在1-500之间"));
+            }
+
+            int replayed = messageRetryService.replayParked(limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("replayedCount", replayed);
+            response.put("message", String.format("重放停车场消息完成，重放数量: %d", replayed));
+
+            logger.info("手动重放停车场消息: 用户={}, 重放数量={}", userDetails.getUsername(), replayed);
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("重放停车场消息失败", e);
+            return ResponseEntity.status(500).body(Map.of("error", "重放停车场消息失败"));
+        }
+    }
+
+    private boolean isAdmin(UserDetails userDetails) {
+        return userDetails != null && userDetails.getAuthorities().stream()
+                .anyMatch(authority -> "ROLE_admin".equalsIgnoreCase(authority.getAuthority()));
+    }
+}
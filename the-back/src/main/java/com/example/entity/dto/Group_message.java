@@ -8,9 +8,16 @@ import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.annotation.JSONField;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 @Data
 @TableName("group_messages")
 public class Group_message {  // 类名建议使用大驼峰命名
+    // 雪花ID超过 2^53，按字符串输出，避免浏览器按 double 解析后丢失精度；与 ChatMessage.id 保持一致
+    @JsonSerialize(using = ToStringSerializer.class)
+    @JSONField(serializeFeatures = JSONWriter.Feature.WriteLongAsString)
     @TableId(type = IdType.AUTO, value = "id")
     private Long id;         // 添加主键字段
     @TableField("groupId")
@@ -38,6 +45,9 @@ public class Group_message {  // 类名建议使用大驼峰命名
     
     @TableField("File_size")
     private Long FileSize;
+
+    @TableField("seq")
+    private Long seq;          // 群内消息序号，单调递增
     
     @TableField(exist = false)
     private String MessageType;
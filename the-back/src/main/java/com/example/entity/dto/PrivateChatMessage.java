@@ -5,10 +5,17 @@ import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableName;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.annotation.JSONField;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 
 @Data
 @TableName("private_messages")
 public class PrivateChatMessage {
+    // 按字符串输出，原因同 Group_message.id
+    @JsonSerialize(using = ToStringSerializer.class)
+    @JSONField(serializeFeatures = JSONWriter.Feature.WriteLongAsString)
     @TableId(type = IdType.AUTO, value = "id")
     private Long id;
     @TableField("sender_id")
@@ -29,4 +36,10 @@ public class PrivateChatMessage {
     private Long fileSize;
     @TableField("message_type")
     private String messageType;
+    // 会话ID，格式为 较小用户ID:较大用户ID，与 ChatPartitionRouter.dialogId 一致
+    @TableField("conversation_id")
+    private String conversationId;
+    // 对话内消息序号，单调递增
+    @TableField("seq")
+    private Long seq;
 }
\ No newline at end of file
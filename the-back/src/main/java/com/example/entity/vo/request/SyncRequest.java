@@ -0,0 +1,19 @@
+package com.example.entity.vo.request;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 增量同步请求：客户端回传上一次同步得到的高水位和实体摘要，都为空时按首次加载处理
+ * 高水位使用字符串传递，避免雪花ID在前端被解析为 Number 后丢失精度
+ */
+@Data
+public class SyncRequest {
+    private String userId;                     // 高水位所属的用户，与当前用户不一致时忽略高水位
+    private String privateAfterId;             // 已有的最大私聊消息ID
+    private Map<String, String> groupAfterIds; // 群ID -> 已有的最大群聊消息ID
+    private String friendsDigest;              // 好友列表摘要
+    private String friendRequestsDigest;       // 好友请求列表摘要
+    private String groupsDigest;               // 群组列表摘要
+}
@@ -21,6 +21,7 @@ public class ChatMessage {
     private String fileType;   // 文件MIME类型，如image/jpeg, application/pdf等
     private Long fileSize;     // 文件大小（字节数）
     private String tempId;     // 前端生成的临时ID，用于消息确认机制
+    private Long seq;          // 会话内消息序号，客户端据此发现缺失的消息并按区间补拉(可选)
     
     // 枚举定义消息类型
     public enum MessageType {
@@ -0,0 +1,16 @@
+package com.example.entity.vo.response;
+
+import com.example.entity.dto.Group_message;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 群聊历史分页结果（按消息ID倒序翻页）
+ */
+@Data
+public class GroupHistoryPage {
+    private List<Group_message> messages; // 本页消息，按ID升序排列
+    private String nextCursor;            // 下一页（更早消息）的游标，没有更多时为null
+    private boolean hasMore;              // 是否还有更早的消息
+}
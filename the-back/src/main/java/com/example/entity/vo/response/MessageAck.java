@@ -11,6 +11,7 @@ public class MessageAck {
     private String error;       // 错误信息（失败时）
     private Date timestamp;     // 确认时间戳
     private String messageType; // 消息类型（private/group）
+    private Long seq;           // 消息的会话内序号，发送者据此记下自己占用的序号，不把它当作缺失
     
     // 静态工厂方法
     public static MessageAck success(String tempId, String realId, String messageType) {
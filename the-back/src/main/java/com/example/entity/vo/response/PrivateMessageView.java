@@ -0,0 +1,33 @@
+package com.example.entity.vo.response;
+
+import java.util.Date;
+
+import lombok.Data;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.annotation.JSONField;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+/**
+ * 返回给前端的私聊消息，附带发送者和接收者的用户名
+ */
+@Data
+public class PrivateMessageView {
+    // 按字符串输出，原因同 Group_message.id
+    @JsonSerialize(using = ToStringSerializer.class)
+    @JSONField(serializeFeatures = JSONWriter.Feature.WriteLongAsString)
+    private Long id;
+    private Integer senderId;
+    private String senderName;
+    private Integer receiverId;
+    private String receiverName;
+    private String content;
+    private Boolean isRead;    // 包装类型，序列化后字段名保持为 isRead
+    private Date createdAt;
+    private String fileUrl;
+    private String fileName;
+    private String fileType;
+    private Long fileSize;
+    private String messageType;
+    private Long seq;
+}
@@ -0,0 +1,36 @@
+package com.example.entity.vo.response;
+
+import com.example.entity.dto.Group_member;
+import com.example.entity.dto.Group_message;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量同步结果：实体列表只在摘要变化时返回，消息只返回高水位之后的部分
+ * 未完成的分段回传客户端原有的摘要和高水位，客户端按"未变化"处理即可
+ */
+@Data
+public class SyncResponse {
+    private String userId;
+    private String username;
+
+    private List<FriendsResponse> friends;        // 摘要未变化时为null
+    private String friendsDigest;
+    private List<FriendsResponse> friendRequests; // 摘要未变化时为null
+    private String friendRequestsDigest;
+    private List<Group_member> groups;            // 摘要未变化时为null
+    private String groupsDigest;
+
+    private Map<String, List<Group_message>> groupMessages; // 只包含有新消息的群，按ID升序
+    private List<String> resetGroups;                       // 这些群返回的是最新一页，客户端应替换而不是追加
+    private List<String> incompleteGroups;                  // 截止时间内未加载完成的群，高水位保持不变
+    private Map<String, String> groupHighWaterMarks;        // 下次同步回传的群聊高水位
+
+    private List<PrivateMessageView> privateMessages; // 高水位之后的私聊消息，按ID升序
+    private boolean privateReset;                 // 返回的是最新一页，客户端应替换而不是追加
+    private String privateHighWaterMark;          // 下次同步回传的私聊高水位
+
+    private List<String> partialSections;         // 截止时间内未完成的分段，客户端应保留本地数据并稍后重试
+}
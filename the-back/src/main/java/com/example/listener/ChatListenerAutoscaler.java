@@ -0,0 +1,254 @@
+package com.example.listener;
+
+import com.example.service.ChatService;
+import com.example.utils.ChatPartitionRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 聊天监听容器自适应调节（AIMD）
+ * 每个周期读取写库耗时（chat.db.insert.latency 在本周期内的平均值）和队列积压：
+ * 1. 写库变慢（平均耗时超过目标值）：乘性减小并发和预取，给数据库减压
+ * 2. 写库正常且队列积压超过阈值：加性增大并发和预取，消化积压
+ * 3. 队列为空：并发逐步回落到下限，释放连接和线程
+ * 群聊容器同时调节并发和预取；私聊分区必须保持单消费者以保证顺序，只调节预取。
+ * 预取数（basic.qos）在消费者建立时确定，已运行的消费者不会感知新值，因此预取变化后重启容器，
+ * 让所有消费者按新值重建；重启时未确认的预取消息回到队列，由去重兜底
+ */
+@Component
+@ConditionalOnProperty(name = "chat.autoscale.enabled", havingValue = "true", matchIfMissing = true)
+public class ChatListenerAutoscaler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatListenerAutoscaler.class);
+
+    private static final String[] GROUP_CONTAINER_IDS = {"groupChatBatchListener", "groupChatListener"};
+    private static final String PRIVATE_CONTAINER_PREFIX = "privateChatPartitionListener-";
+
+    @Resource
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Resource
+    private AmqpAdmin amqpAdmin;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private ChatPartitionRouter partitionRouter;
+
+    @Value("${chat.autoscale.min-concurrency:1}")
+    private int minConcurrency;
+
+    @Value("${chat.autoscale.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${chat.autoscale.min-prefetch:10}")
+    private int minPrefetch;
+
+    @Value("${chat.autoscale.max-prefetch:250}")
+    private int maxPrefetch;
+
+    @Value("${chat.autoscale.prefetch-step:10}")
+    private int prefetchStep;
+
+    @Value("${chat.autoscale.latency-target-millis:50}")
+    private double latencyTargetMillis;
+
+    @Value("${chat.autoscale.depth-threshold:500}")
+    private long depthThreshold;
+
+    private final ScaleState groupState = new ScaleState();
+    private final ScaleState privateState = new ScaleState();
+
+    @PostConstruct
+    public void init() {
+        groupState.register("group");
+        privateState.register("private");
+    }
+
+    @Scheduled(fixedDelayString = "${chat.autoscale.interval-millis:10000}")
+    public void adjust() {
+        try {
+            adjustGroup();
+            adjustPrivate();
+        } catch (Exception e) {
+            logger.error("聊天监听容器自适应调节失败", e);
+        }
+    }
+
+    private void adjustGroup() {
+        SimpleMessageListenerContainer container = runningGroupContainer();
+        if (container == null) {
+            return;
+        }
+        if (groupState.concurrency.get() == 0) {
+            // 首次接管：容器按配置文件的预取数启动，先统一到调节器的起点，保证指标与实际一致
+            groupState.concurrency.set(Math.max(minConcurrency, container.getActiveConsumerCount()));
+            groupState.prefetch.set(minPrefetch);
+            applyPrefetch(container, minPrefetch);
+        }
+        int previousConcurrency = groupState.concurrency.get();
+        int previousPrefetch = groupState.prefetch.get();
+        double latency = groupState.windowLatencyMillis("group");
+        long depth = queueDepth("groupChat");
+        String action = decide(groupState, latency, depth, true);
+        if (action == null) {
+            return;
+        }
+        int concurrency = groupState.concurrency.get();
+        // 上限与并发保持一致，关闭容器自带的扩缩容；扩容先调上限、缩容先调并发，保证并发不超过上限
+        if (concurrency >= previousConcurrency) {
+            container.setMaxConcurrentConsumers(concurrency);
+            container.setConcurrentConsumers(concurrency);
+        } else {
+            container.setConcurrentConsumers(concurrency);
+            container.setMaxConcurrentConsumers(concurrency);
+        }
+        if (groupState.prefetch.get() != previousPrefetch) {
+            applyPrefetch(container, groupState.prefetch.get());
+        }
+        logger.info("群聊监听容器调节: action={}, latency={}ms, depth={}, concurrency={}, prefetch={}",
+                action, String.format("%.1f", latency), depth, groupState.concurrency.get(), groupState.prefetch.get());
+    }
+
+    private void adjustPrivate() {
+        if (privateState.prefetch.get() == 0) {
+            privateState.concurrency.set(1);
+            privateState.prefetch.set(minPrefetch);
+            applyPrivatePrefetch();
+        }
+        double latency = privateState.windowLatencyMillis("private");
+        long depth = 0;
+        for (int i = 0; i < partitionRouter.getPartitions(); i++) {
+            depth = Math.max(depth, queueDepth(partitionRouter.queueName(i)));
+        }
+        String action = decide(privateState, latency, depth, false);
+        if (action == null) {
+            return;
+        }
+        applyPrivatePrefetch();
+        logger.info("私聊分区监听容器调节: action={}, latency={}ms, maxDepth={}, prefetch={}",
+                action, String.format("%.1f", latency), depth, privateState.prefetch.get());
+    }
+
+    private void applyPrivatePrefetch() {
+        for (int i = 0; i < partitionRouter.getPartitions(); i++) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(PRIVATE_CONTAINER_PREFIX + i);
+            if (container instanceof SimpleMessageListenerContainer simpleContainer && container.isRunning()) {
+                applyPrefetch(simpleContainer, privateState.prefetch.get());
+            }
+        }
+    }
+
+    /**
+     * 设置预取数并重启容器：stop 会等待正在处理的消息完成，start 时按新预取数重建消费者。
+     * 私聊分区只有一个消费者，重启期间不会有第二个消费者并行处理，分区内顺序不受影响
+     */
+    private void applyPrefetch(SimpleMessageListenerContainer container, int prefetch) {
+        container.setPrefetchCount(prefetch);
+        container.stop();
+        container.start();
+    }
+
+    /**
+     * AIMD 决策，返回本次动作（无变化时返回null）
+     */
+    private String decide(ScaleState state, double latencyMillis, long depth, boolean scaleConcurrency) {
+        int concurrency = state.concurrency.get();
+        int prefetch = state.prefetch.get();
+        String action;
+        if (latencyMillis > latencyTargetMillis) {
+            action = "decrease";
+            if (scaleConcurrency) {
+                concurrency = Math.max(minConcurrency, concurrency / 2);
+            }
+            prefetch = Math.max(minPrefetch, prefetch / 2);
+        } else if (depth > depthThreshold) {
+            action = "increase";
+            if (scaleConcurrency) {
+                concurrency = Math.min(maxConcurrency, concurrency + 1);
+            }
+            prefetch = Math.min(maxPrefetch, prefetch + prefetchStep);
+        } else if (depth == 0 && scaleConcurrency && concurrency > minConcurrency) {
+            action = "release";
+            concurrency = concurrency - 1;
+        } else {
+            return null;
+        }
+        if (concurrency == state.concurrency.get() && prefetch == state.prefetch.get()) {
+            return null;
+        }
+        state.concurrency.set(concurrency);
+        state.prefetch.set(prefetch);
+        meterRegistry.counter("chat.autoscale.decisions", "listener", state.name, "action", action).increment();
+        return action;
+    }
+
+    private SimpleMessageListenerContainer runningGroupContainer() {
+        for (String id : GROUP_CONTAINER_IDS) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container instanceof SimpleMessageListenerContainer simpleContainer && container.isRunning()) {
+                return simpleContainer;
+            }
+        }
+        return null;
+    }
+
+    private long queueDepth(String queue) {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            return info != null ? info.getMessageCount() : 0;
+        } catch (Exception e) {
+            logger.warn("获取队列积压失败: queue={}", queue, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 单类监听容器的调节状态，并发和预取以 Gauge 形式暴露
+     */
+    private class ScaleState {
+        private final AtomicInteger concurrency = new AtomicInteger();
+        private final AtomicInteger prefetch = new AtomicInteger();
+        private String name;
+        private long lastCount;
+        private double lastTotalMillis;
+
+        void register(String name) {
+            this.name = name;
+            meterRegistry.gauge("chat.autoscale.concurrency", Tags.of("listener", name), concurrency);
+            meterRegistry.gauge("chat.autoscale.prefetch", Tags.of("listener", name), prefetch);
+        }
+
+        /**
+         * 本周期内写库的平均耗时（毫秒），没有写库时返回0
+         */
+        double windowLatencyMillis(String type) {
+            Timer timer = meterRegistry.timer(ChatService.INSERT_LATENCY_METRIC, "type", type);
+            long count = timer.count();
+            double totalMillis = timer.totalTime(TimeUnit.MILLISECONDS);
+            long deltaCount = count - lastCount;
+            double deltaMillis = totalMillis - lastTotalMillis;
+            lastCount = count;
+            lastTotalMillis = totalMillis;
+            return deltaCount > 0 ? deltaMillis / deltaCount : 0;
+        }
+    }
+}
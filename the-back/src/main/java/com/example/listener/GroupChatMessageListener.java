@@ -1,113 +1,238 @@
 package com.example.listener;
 
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 import jakarta.annotation.Resource;
 import com.example.entity.vo.response.ChatMessage;
 import com.example.entity.vo.response.MessageAck;
 import com.example.service.ChatService;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import com.example.service.MessageDedupService;
+import com.example.service.MessageRetryService;
+import com.example.service.MessageWalService;
+import com.example.service.ChatTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.example.utils.Const;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 群聊消息消费者
+ * 支持两种模式，通过 chat.group.batch.enabled 切换（同一时间只会启动其中一个容器）：
+ * 1. 逐条模式：每条消息单独入库
+ * 2. 批量模式：攒够N条或等待T毫秒后，用一条多行INSERT整批入库，再逐条回执
+ * 入库前经 MessageDedupService 判重，重试次数随消息头 x-retry-count 传递，
+ * 失败的消息投递到 groupChat.retry.N 延迟队列，超过最大重试次数进入停车场队列
+ */
 @Component
-@RabbitListener(queues = "groupChat")
 public class GroupChatMessageListener {
 
     @Resource
     ChatService chatService;
 
-    @Resource
-    RabbitTemplate rabbitTemplate;
-    
     @Resource
     private SimpMessagingTemplate messagingTemplate;
-    
-    // 增强重试机制
-    private final Map<String, Integer> retryCountMap = new ConcurrentHashMap<>();
-    private final int MAX_RETRY_COUNT = 3; // 最大重试次数
-    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-
-    @RabbitHandler
-    public void process(ChatMessage message){
+
+    @Resource
+    private MessageDedupService messageDedupService;
+
+    @Resource
+    private MessageRetryService messageRetryService;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private MessageWalService messageWalService;
+
+    @RabbitListener(id = "groupChatListener", queues = "groupChat",
+            autoStartup = "#{!${chat.group.batch.enabled:false}}")
+    public void process(ChatMessage message,
+                        @Header(name = Const.MESSAGE_RETRY_COUNT_HEADER, required = false) Integer retryCount) {
         System.out.println("收到群聊消息：" + message);
 
-        // 改进消息唯一标识符生成
-        String messageId = generateMessageId(message);
-        
-        // 获取当前重试次数
-        int currentRetryCount = retryCountMap.getOrDefault(messageId, 0);
+        int currentRetryCount = retryCount == null ? 0 : retryCount;
+        String dedupKey = messageDedupService.dedupKey(message);
+        if (isDuplicate(message, dedupKey, currentRetryCount)) {
+            return;
+        }
+        // 降级期间直接写入本地预写日志，由后台回放入库
+        if (messageWalService.isDegraded()
+                && appendToWal(Collections.singletonList(message), Collections.singletonList(dedupKey), false)) {
+            return;
+        }
 
         try {
             // 调用服务层方法保存消息，获取返回的消息ID
             String savedMessageId = chatService.savePublicMessageWithId(message);
-            
+
             if (savedMessageId != null) {
-                System.out.println("群聊消息成功保存到数据库: " + message.getContent() + ", ID: " + savedMessageId);
-                
-                // 清理重试记录
-                retryCountMap.remove(messageId);
-                
-                // 发送成功确认给发送者
-                if (message.getTempId() != null) {
-                    MessageAck ack = MessageAck.success(message.getTempId(), savedMessageId, "group");
-                    messagingTemplate.convertAndSendToUser(
-                        message.getSenderId().toString(),
-                        "/queue/message-ack",
-                        ack
-                    );
-                    System.out.println("已发送群聊消息确认: " + ack);
-                }
+                onMessageSaved(message, dedupKey, savedMessageId);
             } else {
-                handleSaveFailure(message, messageId, currentRetryCount, "数据库保存失败");
+                handleSaveFailure(message, dedupKey, currentRetryCount, "数据库保存失败");
             }
         } catch (Exception e) {
             System.err.println("处理群聊消息时发生错误: " + e.getMessage());
             e.printStackTrace();
-            handleSaveFailure(message, messageId, currentRetryCount, "处理消息时发生错误: " + e.getMessage());
+            handleSaveFailure(message, dedupKey, currentRetryCount, "处理消息时发生错误: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量模式：容器攒批后整批交付，一次数据库往返写入整批消息
+     */
+    @RabbitListener(id = "groupChatBatchListener", queues = "groupChat",
+            containerFactory = "batchListenerContainerFactory",
+            autoStartup = "${chat.group.batch.enabled:false}")
+    public void processBatch(List<Message<ChatMessage>> batch) {
+        System.out.println("收到群聊消息批次，数量：" + batch.size());
+
+        // 先判重，只把真正需要入库的消息交给数据库
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        List<String> dedupKeys = new ArrayList<>(batch.size());
+        List<Integer> retryCounts = new ArrayList<>(batch.size());
+        for (Message<ChatMessage> item : batch) {
+            ChatMessage message = item.getPayload();
+            String dedupKey = messageDedupService.dedupKey(message);
+            Integer retryCount = item.getHeaders().get(Const.MESSAGE_RETRY_COUNT_HEADER, Integer.class);
+            int currentRetryCount = retryCount == null ? 0 : retryCount;
+            if (isDuplicate(message, dedupKey, currentRetryCount)) {
+                continue;
+            }
+            messages.add(message);
+            dedupKeys.add(dedupKey);
+            retryCounts.add(currentRetryCount);
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 降级期间直接写入本地预写日志，由后台回放入库
+        if (messageWalService.isDegraded() && appendToWal(messages, dedupKeys, false)) {
+            return;
+        }
+
+        List<String> savedMessageIds;
+        try {
+            savedMessageIds = chatService.savePublicMessagesWithIds(messages);
+        } catch (Exception e) {
+            System.err.println("批量处理群聊消息时发生错误: " + e.getMessage());
+            e.printStackTrace();
+            if (appendToWal(messages, dedupKeys, true)) {
+                return;
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                handleSaveFailure(messages.get(i), dedupKeys.get(i), retryCounts.get(i),
+                        "处理消息时发生错误: " + e.getMessage());
+            }
+            return;
+        }
+
+        for (int i = 0; i < messages.size(); i++) {
+            String savedMessageId = savedMessageIds.get(i);
+            if (savedMessageId != null) {
+                onMessageSaved(messages.get(i), dedupKeys.get(i), savedMessageId);
+            } else {
+                handleSaveFailure(messages.get(i), dedupKeys.get(i), retryCounts.get(i), "数据库保存失败");
+            }
+        }
+    }
+
+    /**
+     * 判重：已入库的消息直接补发成功回执；正在其他投递中处理的消息推迟到重试队列，
+     * 不能直接确认，否则占用方宕机时这条消息就丢了
+     */
+    private boolean isDuplicate(ChatMessage message, String dedupKey, int currentRetryCount) {
+        if (dedupKey == null) {
+            return false;
+        }
+        String existing = messageDedupService.tryClaim(dedupKey);
+        if (existing == null) {
+            return false;
+        }
+        if (MessageDedupService.PENDING.equals(existing)) {
+            System.out.println("群聊消息正在处理中，推迟重复投递: " + dedupKey);
+            messageRetryService.defer(message, "groupChat", currentRetryCount);
+        } else {
+            System.out.println("群聊消息已入库，跳过重复投递: " + dedupKey + ", ID: " + existing);
+            sendSuccessAck(message, existing);
+        }
+        return true;
+    }
+
+    /**
+     * 消息入库成功：记录去重结果并向发送者回执真实ID
+     */
+    private void onMessageSaved(ChatMessage message, String dedupKey, String savedMessageId) {
+        System.out.println("群聊消息成功保存到数据库: " + message.getContent() + ", ID: " + savedMessageId);
+
+        if (dedupKey != null) {
+            messageDedupService.markSaved(dedupKey, savedMessageId);
         }
+        recordPersistLatency(message);
+        sendSuccessAck(message, savedMessageId);
     }
-    
+
+    private void recordPersistLatency(ChatMessage message) {
+        if (message.getTimestamp() != null) {
+            meterRegistry.timer(ChatTransport.PERSIST_LATENCY_METRIC, "transport", "amqp")
+                    .record(System.currentTimeMillis() - message.getTimestamp().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
-     * 生成更可靠的消息唯一标识符
+     * 追加到本地预写日志，成功后按已入库处理（回执预分配的消息ID）
+     * @param afterFailure 写库失败后调用时为true，只有数据库不可达才追加，其他失败交给重试/停车场
      */
-    private String generateMessageId(ChatMessage message) {
-        return String.format("%s:%s:%s:%d", 
-            message.getTimestamp(), 
-            message.getSenderId(), 
-            message.getGroupId(), 
-            message.getContent().hashCode());
+    private boolean appendToWal(List<ChatMessage> messages, List<String> dedupKeys, boolean afterFailure) {
+        boolean appended = afterFailure
+                ? messageWalService.appendIfDatabaseUnavailable(messages, false)
+                : messageWalService.append(messages, false);
+        if (!appended) {
+            return false;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            onMessageSaved(messages.get(i), dedupKeys.get(i), messages.get(i).getId());
+        }
+        return true;
+    }
+
+    private void sendSuccessAck(ChatMessage message, String savedMessageId) {
+        if (message.getTempId() != null) {
+            MessageAck ack = MessageAck.success(message.getTempId(), savedMessageId, "group");
+            ack.setSeq(message.getSeq());
+            messagingTemplate.convertAndSendToUser(
+                message.getSenderId().toString(),
+                "/queue/message-ack",
+                ack
+            );
+            System.out.println("已发送群聊消息确认: " + ack);
+        }
     }
-    
+
     /**
      * 处理消息保存失败
      */
-    private void handleSaveFailure(ChatMessage message, String messageId, int currentRetryCount, String errorMessage) {
-        if (currentRetryCount < MAX_RETRY_COUNT) {
-            // 增加重试次数并延迟重试
-            retryCountMap.put(messageId, currentRetryCount + 1);
-            
-            // 延迟重试，避免立即重试造成资源压力
-            scheduledExecutor.schedule(() -> {
-                System.out.println("重试群聊消息保存，第 " + (currentRetryCount + 1) + " 次重试: " + messageId);
-                rabbitTemplate.convertAndSend("groupChat", message);
-            }, (currentRetryCount + 1) * 2, TimeUnit.SECONDS); // 递增延迟
-            
-            // 设置清理任务，避免内存泄漏
-            scheduledExecutor.schedule(() -> {
-                retryCountMap.remove(messageId);
-            }, 10, TimeUnit.MINUTES);
-            
-        } else {
+    private void handleSaveFailure(ChatMessage message, String dedupKey, int currentRetryCount, String errorMessage) {
+        // 数据库不可达时写入本地预写日志并以预分配ID回执成功，数据库恢复后由后台回放
+        if (appendToWal(Collections.singletonList(message), Collections.singletonList(dedupKey), true)) {
+            return;
+        }
+
+        // 释放占用，让重试投递可以重新处理
+        if (dedupKey != null) {
+            messageDedupService.release(dedupKey);
+        }
+
+        // 投递到延迟重试队列，由Broker按级别延迟后回流；超过最大重试次数进入停车场
+        String sourceQueue = "groupChat";
+        if (!messageRetryService.retryOrPark(message, sourceQueue, currentRetryCount, errorMessage)) {
             // 超过最大重试次数，发送失败确认
-            System.err.println("群聊消息保存失败，已达到最大重试次数: " + messageId);
-            retryCountMap.remove(messageId);
-            
+            System.err.println("群聊消息保存失败，已达到最大重试次数: " + message.getId());
+
             if (message.getTempId() != null) {
                 MessageAck ack = MessageAck.failure(message.getTempId(), errorMessage, "group");
                 messagingTemplate.convertAndSendToUser(
@@ -119,4 +244,4 @@ public class GroupChatMessageListener {
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package com.example.listener;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.OfflineInboxService;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重连补发：客户端在 CONNECT 帧中带上最后确认的消息ID，订阅私聊队列后从离线收件箱补发之后的消息
+ * 订阅事件发布时代理可能还没登记该订阅，因此补发稍作延迟；补发只发往本次连接的会话，
+ * 客户端按消息ID去重，与增量同步返回的消息重叠也不会重复显示
+ */
+@Component
+public class OfflineInboxReplayListener implements ApplicationListener<SessionSubscribeEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineInboxReplayListener.class);
+
+    private static final String PRIVATE_QUEUE = "/queue/private";
+
+    @Resource
+    private OfflineInboxService offlineInboxService;
+
+    @Resource
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Resource
+    private TaskScheduler taskScheduler;
+
+    @Value("${chat.inbox.replay-delay-millis:200}")
+    private long replayDelayMillis;
+
+    @Override
+    public void onApplicationEvent(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (!("/user" + PRIVATE_QUEUE).equals(accessor.getDestination())) {
+            return;
+        }
+        Principal user = accessor.getUser();
+        Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+        if (user == null || sessionAttributes == null) {
+            return;
+        }
+        // 每个连接只补发一次，重复订阅不再补发
+        Object lastAck = sessionAttributes.remove(OfflineInboxService.LAST_ACK_ATTRIBUTE);
+        if (lastAck == null) {
+            return;
+        }
+        long lastAckId;
+        try {
+            lastAckId = Long.parseLong(lastAck.toString());
+        } catch (NumberFormatException e) {
+            logger.warn("无效的最后确认消息ID: userId={}, lastAckId={}", user.getName(), lastAck);
+            return;
+        }
+        String userId = user.getName();
+        String sessionId = accessor.getSessionId();
+        taskScheduler.schedule(() -> replay(userId, sessionId, lastAckId),
+                Instant.now().plus(Duration.ofMillis(replayDelayMillis)));
+    }
+
+    private void replay(String userId, String sessionId, long lastAckId) {
+        try {
+            List<ChatMessage> messages = offlineInboxService.readAfter(Integer.parseInt(userId), lastAckId);
+            for (ChatMessage message : messages) {
+                messagingTemplate.convertAndSendToUser(userId, PRIVATE_QUEUE, message, sessionHeaders(sessionId));
+            }
+            logger.info("离线收件箱补发完成: userId={}, lastAckId={}, count={}", userId, lastAckId, messages.size());
+        } catch (Exception e) {
+            logger.error("离线收件箱补发失败: userId={}, lastAckId={}", userId, lastAckId, e);
+        }
+    }
+
+    /**
+     * 只发往指定会话，同一用户的其他连接不受影响
+     */
+    private static Map<String, Object> sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        return headers.getMessageHeaders();
+    }
+}
@@ -1,8 +1,13 @@
 package com.example.listener;
 
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Component;
 
@@ -11,40 +16,105 @@ import jakarta.annotation.Resource;
 import com.example.entity.vo.response.ChatMessage;
 import com.example.entity.vo.response.MessageAck;
 import com.example.service.ChatService;
+import com.example.service.MessageDedupService;
+import com.example.service.MessageRetryService;
+import com.example.service.MessageWalService;
+import com.example.service.ChatTransport;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.example.utils.Const;
+import com.example.utils.ChatPartitionRouter;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 私聊消息消费者
+ * 私聊消息按对话ID分区投递到 privateChat.<分区号> 队列，每个分区注册一个单消费者容器，
+ * 同一对话内的消息严格按顺序处理，不同分区并行处理，吞吐随分区数（CPU核数）扩展。
+ * 旧的 privateChat 队列仍保留消费，用于处理升级前已入队的消息。
+ * 入库前经 MessageDedupService 判重，重试次数随消息头 x-retry-count 传递，
+ * 失败的消息投递到所属分区的 privateChat.<分区号>.retry.N 延迟队列，超过最大重试次数进入停车场队列
+ */
 @Component
 @RabbitListener(queues = "privateChat")
-public class PrivateChatMessageListener {
+public class PrivateChatMessageListener implements RabbitListenerConfigurer {
 
     @Resource
     private ChatService chatService;
 
     @Resource
-    private RabbitTemplate rabbitTemplate;
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Resource
+    private ChatPartitionRouter partitionRouter;
+
+    @Resource
+    private MessageConverter jsonMessageConverter;
     
     @Resource
-    private SimpMessagingTemplate messagingTemplate;
+    private MessageDedupService messageDedupService;
     
-    // 增强重试机制
-    private final Map<String, Integer> retryCountMap = new ConcurrentHashMap<>();
-    private final int MAX_RETRY_COUNT = 3; // 最大重试次数
-    private final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+    @Resource
+    private MessageRetryService messageRetryService;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private MessageWalService messageWalService;
+
+    /**
+     * 为每个私聊分区队列注册一个并发度为1的监听容器
+     */
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int i = 0; i < partitionRouter.getPartitions(); i++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId("privateChatPartitionListener-" + i);
+            endpoint.setQueueNames(partitionRouter.queueName(i));
+            endpoint.setConcurrency("1"); // 单消费者，保证分区内顺序
+            endpoint.setMessageListener(this::onPartitionMessage);
+            registrar.registerEndpoint(endpoint);
+        }
+    }
+
+    /**
+     * 分区队列消息入口：转换为 ChatMessage 后走统一的处理逻辑
+     */
+    private void onPartitionMessage(Message amqpMessage) {
+        ChatMessage message = (ChatMessage) jsonMessageConverter.fromMessage(amqpMessage);
+        Integer retryCount = amqpMessage.getMessageProperties().getHeader(Const.MESSAGE_RETRY_COUNT_HEADER);
+        receiveMessage(message, retryCount);
+    }
 
     @RabbitHandler
-    public void receiveMessage(ChatMessage message) {
+    public void receiveMessage(ChatMessage message,
+                               @Header(name = Const.MESSAGE_RETRY_COUNT_HEADER, required = false) Integer retryCount) {
         System.out.println("收到私聊消息：" + message);
         
-        // 改进消息唯一标识符生成
-        String messageId = generateMessageId(message);
+        int currentRetryCount = retryCount == null ? 0 : retryCount;
+        String dedupKey = messageDedupService.dedupKey(message);
+        if (dedupKey != null) {
+            String existing = messageDedupService.tryClaim(dedupKey);
+            if (MessageDedupService.PENDING.equals(existing)) {
+                // 不能直接确认：占用方若已宕机，这条消息就丢了；推迟回流，等处理中标记有了结果再判重
+                System.out.println("私聊消息正在处理中，推迟重复投递: " + dedupKey);
+                messageRetryService.defer(message,
+                        partitionRouter.privateChatQueue(message.getSenderId(), message.getReceiverId()), currentRetryCount);
+                return;
+            }
+            if (existing != null) {
+                // 已入库的重复投递：不再写库，只补发成功回执
+                System.out.println("私聊消息已入库，跳过重复投递: " + dedupKey + ", ID: " + existing);
+                sendSuccessAck(message, existing);
+                return;
+            }
+        }
         
-        // 获取当前重试次数
-        int currentRetryCount = retryCountMap.getOrDefault(messageId, 0);
+        // 降级期间直接写入本地预写日志，由后台回放入库
+        if (messageWalService.isDegraded() && appendToWal(message, dedupKey, false)) {
+            return;
+        }
         
         try {
             // 调用服务层方法保存消息，获取返回的消息ID
@@ -53,63 +123,79 @@ public class PrivateChatMessageListener {
             if (savedMessageId != null) {
                 System.out.println("私聊消息成功保存到数据库: " + message.getContent() + ", ID: " + savedMessageId);
                 
-                // 清理重试记录
-                retryCountMap.remove(messageId);
-                
-                // 发送成功确认给发送者
-                if (message.getTempId() != null) {
-                    MessageAck ack = MessageAck.success(message.getTempId(), savedMessageId, "private");
-                    messagingTemplate.convertAndSendToUser(
-                        message.getSenderId().toString(),
-                        "/queue/message-ack",
-                        ack
-                    );
-                    System.out.println("已发送私聊消息确认: " + ack);
+                if (dedupKey != null) {
+                    messageDedupService.markSaved(dedupKey, savedMessageId);
                 }
+                recordPersistLatency(message);
+                sendSuccessAck(message, savedMessageId);
             } else {
-                handleSaveFailure(message, messageId, currentRetryCount, "数据库保存失败");
+                handleSaveFailure(message, dedupKey, currentRetryCount, "数据库保存失败");
             }
         } catch (Exception e) {
             System.err.println("处理私聊消息时发生错误: " + e.getMessage());
             e.printStackTrace();
-            handleSaveFailure(message, messageId, currentRetryCount, "处理消息时发生错误: " + e.getMessage());
+            handleSaveFailure(message, dedupKey, currentRetryCount, "处理消息时发生错误: " + e.getMessage());
         }
     }
     
     /**
-     * 生成更可靠的消息唯一标识符
+     * 追加到本地预写日志，成功后按已入库处理（回执预分配的消息ID）
+     * @param afterFailure 写库失败后调用时为true，只有数据库不可达才追加，其他失败交给重试/停车场
      */
-    private String generateMessageId(ChatMessage message) {
-        return String.format("%s:%s:%s:%d", 
-            message.getTimestamp(), 
-            message.getSenderId(), 
-            message.getReceiverId(), 
-            message.getContent().hashCode());
+    private boolean appendToWal(ChatMessage message, String dedupKey, boolean afterFailure) {
+        boolean appended = afterFailure
+                ? messageWalService.appendIfDatabaseUnavailable(Collections.singletonList(message), true)
+                : messageWalService.append(Collections.singletonList(message), true);
+        if (!appended) {
+            return false;
+        }
+        if (dedupKey != null) {
+            messageDedupService.markSaved(dedupKey, message.getId());
+        }
+        recordPersistLatency(message);
+        sendSuccessAck(message, message.getId());
+        return true;
+    }
+    
+    private void recordPersistLatency(ChatMessage message) {
+        if (message.getTimestamp() != null) {
+            meterRegistry.timer(ChatTransport.PERSIST_LATENCY_METRIC, "transport", "amqp")
+                    .record(System.currentTimeMillis() - message.getTimestamp().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void sendSuccessAck(ChatMessage message, String savedMessageId) {
+        if (message.getTempId() != null) {
+            MessageAck ack = MessageAck.success(message.getTempId(), savedMessageId, "private");
+            ack.setSeq(message.getSeq());
+            messagingTemplate.convertAndSendToUser(
+                message.getSenderId().toString(),
+                "/queue/message-ack",
+                ack
+            );
+            System.out.println("已发送私聊消息确认: " + ack);
+        }
     }
     
     /**
      * 处理消息保存失败
      */
-    private void handleSaveFailure(ChatMessage message, String messageId, int currentRetryCount, String errorMessage) {
-        if (currentRetryCount < MAX_RETRY_COUNT) {
-            // 增加重试次数并延迟重试
-            retryCountMap.put(messageId, currentRetryCount + 1);
-            
-            // 延迟重试，避免立即重试造成资源压力
-            scheduledExecutor.schedule(() -> {
-                System.out.println("重试私聊消息保存，第 " + (currentRetryCount + 1) + " 次重试: " + messageId);
-                rabbitTemplate.convertAndSend("privateChat", message);
-            }, (currentRetryCount + 1) * 2, TimeUnit.SECONDS); // 递增延迟
-            
-            // 设置清理任务，避免内存泄漏
-            scheduledExecutor.schedule(() -> {
-                retryCountMap.remove(messageId);
-            }, 10, TimeUnit.MINUTES);
-            
-        } else {
+    private void handleSaveFailure(ChatMessage message, String dedupKey, int currentRetryCount, String errorMessage) {
+        // 数据库不可达时写入本地预写日志并以预分配ID回执成功，数据库恢复后由后台回放
+        if (appendToWal(message, dedupKey, true)) {
+            return;
+        }
+        
+        // 释放占用，让重试投递可以重新处理
+        if (dedupKey != null) {
+            messageDedupService.release(dedupKey);
+        }
+        
+        // 投递到延迟重试队列，由Broker按级别延迟后回流；超过最大重试次数进入停车场
+        String sourceQueue = partitionRouter.privateChatQueue(message.getSenderId(), message.getReceiverId());
+        if (!messageRetryService.retryOrPark(message, sourceQueue, currentRetryCount, errorMessage)) {
             // 超过最大重试次数，发送失败确认
-            System.err.println("私聊消息保存失败，已达到最大重试次数: " + messageId);
-            retryCountMap.remove(messageId);
+            System.err.println("私聊消息保存失败，已达到最大重试次数: " + message.getId());
             
             if (message.getTempId() != null) {
                 MessageAck ack = MessageAck.failure(message.getTempId(), errorMessage, "private");
@@ -122,4 +208,4 @@ public class PrivateChatMessageListener {
             }
         }
     }
-}
\ No newline at end of file
+}
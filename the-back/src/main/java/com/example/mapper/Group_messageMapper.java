@@ -1,11 +1,28 @@
 package com.example.mapper;
 
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.entity.dto.Group_message;
 
+import java.util.List;
+
 @Mapper
 public interface Group_messageMapper extends BaseMapper<Group_message> {
-    
+
+    /**
+     * 多行插入群组消息（一条 INSERT ... VALUES (...),(...) 语句，一次往返、一次提交）
+     * 消息ID在发布前由 IdGeneratorService 预分配，随数据一起写入，不再依赖自增回填
+     * @param messages 待插入的消息列表，不能为空
+     * @return 插入行数
+     */
+    @Insert({"<script>",
+            "INSERT INTO group_messages (id, groupId, content, SenderId, Create_at, Content_type, File_url, File_name, File_type, File_size, seq) VALUES ",
+            "<foreach collection='list' item='m' separator=','>",
+            "(#{m.id}, #{m.groupId}, #{m.content}, #{m.senderId}, #{m.createAt}, #{m.contentType}, #{m.fileUrl}, #{m.fileName}, #{m.fileType}, #{m.fileSize}, #{m.seq})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("list") List<Group_message> messages);
 }
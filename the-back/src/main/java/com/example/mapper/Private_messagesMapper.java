@@ -2,9 +2,45 @@ package com.example.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.entity.dto.PrivateChatMessage;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 @Mapper
 public interface Private_messagesMapper extends BaseMapper<PrivateChatMessage> {
-    
+
+    /**
+     * 多行插入私聊消息（一条 INSERT ... VALUES (...),(...) 语句，一次往返、一次提交）
+     * 消息ID在发布前由 IdGeneratorService 预分配，随数据一起写入；新消息一律为未读
+     * @param messages 待插入的消息列表，不能为空
+     * @return 插入行数
+     */
+    @Insert({"<script>",
+            "INSERT INTO private_messages (id, sender_id, receiver_id, content, is_read, created_at, file_url, file_name, file_type, file_size, message_type, conversation_id, seq) VALUES ",
+            "<foreach collection='list' item='m' separator=','>",
+            "(#{m.id}, #{m.senderId}, #{m.receiverId}, #{m.content}, 0, #{m.createdAt}, #{m.fileUrl}, #{m.fileName}, #{m.fileType}, #{m.fileSize}, #{m.messageType}, #{m.conversationId}, #{m.seq})",
+            "</foreach>",
+            "</script>"})
+    int insertBatch(@Param("list") List<PrivateChatMessage> messages);
+
+    /**
+     * 按ID顺序取一批尚未回填会话ID的消息ID，走 (conversation_id, id) 索引的 NULL 区间
+     * @param limit 批大小
+     * @return 升序排列的消息ID
+     */
+    @Select("SELECT id FROM private_messages WHERE conversation_id IS NULL ORDER BY id ASC LIMIT #{limit}")
+    List<Long> selectIdsWithoutConversation(@Param("limit") int limit);
+
+    /**
+     * 回填指定ID区间内缺失的会话ID（较小用户ID:较大用户ID）
+     * @return 更新行数
+     */
+    @Update("UPDATE private_messages " +
+            "SET conversation_id = CONCAT(LEAST(sender_id, receiver_id), ':', GREATEST(sender_id, receiver_id)) " +
+            "WHERE id BETWEEN #{fromId} AND #{toId} AND conversation_id IS NULL")
+    int backfillConversationId(@Param("fromId") long fromId, @Param("toId") long toId);
 }
@@ -5,7 +5,9 @@ import com.example.entity.dto.Account;
 import com.example.entity.vo.request.EmailRegisterVO;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 public interface AccountService extends IService<Account>, UserDetailsService {
     Account getAccountByUsernameOrEmail(String text);
 
@@ -21,6 +23,13 @@ public interface AccountService extends IService<Account>, UserDetailsService {
 
     Account getAccountById(int id);
 
+    /**
+     * 批量获取用户名（本地缓存 -> Redis -> 一次 selectBatchIds）
+     * @param userIds 用户ID集合，可以包含重复值
+     * @return 用户ID -> 用户名，不存在的用户不在结果中
+     */
+    Map<Integer, String> getUsernames(Collection<Integer> userIds);
+
     /**
      * 根据用户名查找账户信息
      * @param username 用户名
@@ -0,0 +1,35 @@
+package com.example.service;
+
+/**
+ * 防缓存穿透布隆过滤器
+ * 按命名空间维护已存在的实体ID集合：判断为不存在时一定不存在，可以直接跳过缓存和数据库查询；
+ * 判断为可能存在时有少量误判，仍需正常查询。过滤器尚未构建完成或出错时一律视为可能存在
+ */
+public interface BloomFilterService {
+
+    // 用户ID（db_account.id）
+    String USER = "user";
+
+    // 群组ID（group.group_id）
+    String GROUP = "group";
+
+    /**
+     * 判断ID是否可能存在
+     * @param namespace 命名空间（USER / GROUP）
+     * @param id 实体ID
+     * @return false 表示一定不存在；未配置的命名空间总是返回 true
+     */
+    boolean mightContain(String namespace, String id);
+
+    /**
+     * 新建实体后登记其ID，集群内所有节点随即可见
+     * @param namespace 命名空间（USER / GROUP）
+     * @param id 实体ID
+     */
+    void add(String namespace, String id);
+
+    /**
+     * 从数据库全量重建所有命名空间的过滤器
+     */
+    void rebuild();
+}
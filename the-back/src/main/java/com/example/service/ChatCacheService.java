@@ -7,20 +7,46 @@ import java.util.List;
 
 public interface ChatCacheService {
     /**
-     * 缓存群聊消息
-     * @param groupId 群ID
-     * @param messageJson JSON字符串格式的消息
+     * 把已入库的群聊消息写入该群的最新消息窗口
+     * @param message 已分配ID的群聊消息
      */
-    void cacheGroupMessage(String groupId, String messageJson);
+    void cacheGroupMessage(Group_message message);
 
     /**
-     * 获取群聊历史（自动回落 DB 并缓存到 Redis）
+     * 获取群聊最新历史（优先读取 Redis 窗口，只向 DB 查询缺失部分）
      * @param groupId 群ID
      * @param limit 限制条数
      * @return 群聊消息列表
      */
     List<Group_message> getGroupChatHistory(String groupId, int limit);
 
+    /**
+     * 按消息ID倒序翻页获取群聊历史
+     * 缓存窗口内的部分直接读 Redis，窗口以下的部分走 WHERE groupId=? AND id<? ORDER BY id DESC LIMIT ?
+     * @param groupId 群ID
+     * @param beforeId 只返回ID小于该值的消息，为null时从最新消息开始
+     * @param limit 限制条数
+     * @return 群聊消息列表，按ID升序排列
+     */
+    List<Group_message> getGroupChatHistoryBefore(String groupId, Long beforeId, int limit);
+
+    /**
+     * 增量获取群聊消息：ID大于 afterId 的最多 limit 条消息，按ID升序排列
+     * @param groupId 群ID
+     * @param afterId 客户端已有的最大消息ID
+     * @param limit 最大条数
+     */
+    List<Group_message> getGroupChatHistoryAfter(String groupId, long afterId, int limit);
+
+    /**
+     * 按序号区间获取群聊消息，直接走 (groupId, seq) 索引，并补齐发送者名称
+     * @param groupId 群ID
+     * @param fromSeq 起始序号（包含）
+     * @param toSeq 结束序号（包含）
+     * @return 按序号升序排列的消息
+     */
+    List<Group_message> getGroupChatHistoryBySeq(String groupId, long fromSeq, long toSeq);
+
     /**
      * 缓存私聊消息
      * @param message 聊天消息对象
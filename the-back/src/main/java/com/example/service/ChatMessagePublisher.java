@@ -0,0 +1,19 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+/**
+ * 聊天消息异步发布器
+ * 把 STOMP 入站线程上的消息交给后台线程批量发布到 RabbitMQ，
+ * 并通过发布确认把 Broker 的 nack / 退回关联到前端 tempId
+ */
+public interface ChatMessagePublisher {
+
+    /**
+     * 异步发布消息到指定队列
+     * @param queue 目标队列
+     * @param message 聊天消息
+     * @param ackType 失败回执中的消息类型（private/group）
+     */
+    void publish(String queue, ChatMessage message, String ackType);
+}
@@ -9,10 +9,14 @@ import com.example.entity.dto.PrivateChatMessage;
 import com.example.entity.vo.response.FriendsResponse;
 import java.util.Map;
 import com.example.entity.dto.Group_message;
+import com.example.entity.vo.response.GroupHistoryPage;
 /**
  * 聊天服务接口，处理消息的保存和检索
  */
 public interface ChatService {
+
+    // 消息写库耗时指标（单条或整批INSERT），按 type=group/private 区分
+    String INSERT_LATENCY_METRIC = "chat.db.insert.latency";
     
     /**
      * 保存公共聊天消息
@@ -27,6 +31,13 @@ public interface ChatService {
      * @return 保存成功时返回消息ID，失败时返回null
      */
     String savePublicMessageWithId(ChatMessage message);
+
+    /**
+     * 批量保存公共聊天消息（单条多行INSERT），并返回每条消息的ID
+     * @param messages 聊天消息列表
+     * @return 与入参顺序一一对应的消息ID列表，保存失败的位置为null
+     */
+    List<String> savePublicMessagesWithIds(List<ChatMessage> messages);
     
     /**
      * 保存私人聊天消息
@@ -42,6 +53,13 @@ public interface ChatService {
      */
     String savePrivateMessageWithId(ChatMessage message);
 
+    /**
+     * 批量保存私人聊天消息（单条多行INSERT），并返回每条消息的ID
+     * @param messages 私人聊天消息列表
+     * @return 与入参顺序一一对应的消息ID列表，保存失败的位置为null
+     */
+    List<String> savePrivateMessagesWithIds(List<ChatMessage> messages);
+
     /**
      * 获取用户的好友列表
      * @param userId 用户ID
@@ -136,6 +154,54 @@ public interface ChatService {
      */
     List<Group_message> getGroupChatHistoryByGroupId(String groupId, int limit);
 
+    /**
+     * 按游标分页获取群组聊天历史，从新到旧翻页
+     * @param groupId 群组ID
+     * @param beforeId 只返回ID小于该值的消息，为null时从最新消息开始
+     * @param cursor 上一页返回的游标，不为null时优先于 beforeId
+     * @param limit 每页消息数量
+     * @return 分页结果
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    GroupHistoryPage getGroupChatHistoryPage(String groupId, Long beforeId, String cursor, int limit);
+
+    /**
+     * 按序号区间获取群组消息，用于客户端补拉 seq 不连续的部分
+     * @param groupId 群组ID
+     * @param fromSeq 起始序号（包含）
+     * @param toSeq 结束序号（包含）
+     * @return 区间内的消息，按序号升序排列
+     */
+    List<Group_message> getGroupChatHistoryBySeq(String groupId, long fromSeq, long toSeq);
+
+    /**
+     * 按序号区间获取两个用户之间的私聊消息
+     * @param userId 当前用户ID
+     * @param friendId 对方用户ID
+     * @param fromSeq 起始序号（包含）
+     * @param toSeq 结束序号（包含）
+     * @return 区间内的消息，按序号升序排列
+     */
+    List<PrivateChatMessage> getPrivateChatHistoryBySeq(int userId, int friendId, long fromSeq, long toSeq);
+
+    /**
+     * 增量获取群组消息，用于客户端重连后的增量同步
+     * @param groupId 群组ID
+     * @param afterId 客户端已有的最大消息ID
+     * @param limit 最大条数
+     * @return ID大于 afterId 的消息，按ID升序排列
+     */
+    List<Group_message> getGroupChatHistoryAfter(String groupId, long afterId, int limit);
+
+    /**
+     * 增量获取用户收发的私聊消息，用于客户端重连后的增量同步
+     * @param userId 用户ID
+     * @param afterId 客户端已有的最大私聊消息ID
+     * @param limit 最大条数
+     * @return ID大于 afterId 的消息，按ID升序排列
+     */
+    List<PrivateChatMessage> getPrivateChatHistoryAfter(int userId, long afterId, int limit);
+
     /**
      * 删除好友 (解除好友关系)
      * @param userId1 用户ID1
@@ -0,0 +1,20 @@
+package com.example.service;
+
+import com.example.entity.vo.request.SyncRequest;
+import com.example.entity.vo.response.SyncResponse;
+
+/**
+ * 客户端增量同步服务
+ * 客户端回传每个会话的高水位（已有的最大消息ID）和实体列表摘要，
+ * 服务端只返回新消息和发生变化的实体，重连时不再重建完整快照
+ */
+public interface ChatSyncService {
+
+    /**
+     * 计算用户的增量同步结果
+     * @param userId 当前用户ID
+     * @param username 当前用户名
+     * @param request 客户端回传的高水位和摘要，为null时按首次加载处理
+     */
+    SyncResponse sync(String userId, String username, SyncRequest request);
+}
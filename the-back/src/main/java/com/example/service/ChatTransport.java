@@ -0,0 +1,21 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+/**
+ * 聊天消息传输通道
+ * 负责把 ChatController 收到的消息交给持久化流程，保持 groupChat / privateChat 的原有语义：
+ * 群聊消息批量入库，私聊消息按对话有序入库，入库后向发送者回执真实ID。
+ * 通过 chat.transport.mode 选择实现：
+ * amqp（默认）：经 RabbitMQ 队列由监听器消费，适用于多节点部署
+ * embedded：进程内环形缓冲区直接消费，适用于单节点部署，省去两次网络往返
+ */
+public interface ChatTransport {
+
+    // 持久化延迟指标：从服务端收到消息到入库完成的耗时，按 transport 标签区分，用于对比两种模式
+    String PERSIST_LATENCY_METRIC = "chat.message.persist.latency";
+
+    void sendGroupMessage(ChatMessage message);
+
+    void sendPrivateMessage(ChatMessage message);
+}
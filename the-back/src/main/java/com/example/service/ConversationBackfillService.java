@@ -0,0 +1,20 @@
+package com.example.service;
+
+/**
+ * 私聊消息会话ID回填服务
+ * 历史数据的 conversation_id 为空，后台按批次限速回填；回填完成前私聊历史查询仍走按收发双方过滤的旧条件
+ */
+public interface ConversationBackfillService {
+
+    /**
+     * 所有私聊消息是否都已有会话ID
+     * @return 回填完成返回 true
+     */
+    boolean isComplete();
+
+    /**
+     * 回填一批消息的会话ID
+     * @return 本批更新的行数，没有需要回填的消息时返回0
+     */
+    int backfillBatch();
+}
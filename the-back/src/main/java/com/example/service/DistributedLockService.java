@@ -0,0 +1,45 @@
+package com.example.service;
+
+import java.time.Duration;
+
+/**
+ * 基于 Redis 的分布式锁
+ * 加锁为 SET NX PX + 随机持有者凭证，释放和续期都先校验凭证；持有期间由看门狗按租约的 1/3 周期续期。
+ * 每次加锁同时分配单调递增的防护令牌（fencing token），配合 fencedSet 写缓存，
+ * 锁因停顿过期后被他人取得时，旧持有者的迟到写入会被拒绝
+ */
+public interface DistributedLockService {
+
+    /**
+     * 已持有的锁
+     * @param name 锁名
+     * @param owner 持有者凭证
+     * @param fencingToken 防护令牌，同一锁名下严格递增
+     */
+    record Lock(String name, String owner, long fencingToken) {
+    }
+
+    /**
+     * 尝试加锁，不等待
+     * @param name 锁名
+     * @param lease 租约时长，持有期间自动续期，进程宕机后最多这么久锁会自动释放
+     * @return 加锁成功返回锁，被他人持有或 Redis 出错时返回null
+     */
+    Lock tryLock(String name, Duration lease);
+
+    /**
+     * 释放锁并停止续期，锁已不属于自己时什么也不做
+     * @param lock tryLock 返回的锁
+     */
+    void unlock(Lock lock);
+
+    /**
+     * 带防护令牌的写入：若该锁名下已有更大令牌的持有者写入过，则放弃本次写入
+     * @param lock 当前持有的锁
+     * @param key 缓存键
+     * @param value 缓存值
+     * @param ttl 过期时间
+     * @return 是否写入
+     */
+    boolean fencedSet(Lock lock, String key, String value, Duration ttl);
+}
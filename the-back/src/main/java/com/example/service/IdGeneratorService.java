@@ -0,0 +1,28 @@
+package com.example.service;
+
+/**
+ * 应用侧消息ID生成服务（Snowflake风格的64位趋势递增ID）
+ * 在消息发布前即分配ID，回执和历史排序不再依赖数据库自增ID
+ */
+public interface IdGeneratorService {
+
+    /**
+     * 生成下一个ID，同一节点内严格递增，不同节点之间按时间趋势递增
+     * @return 64位ID
+     * @throws IllegalStateException 本节点未持有 workerId 租约时拒绝发号
+     */
+    long nextId();
+
+    /**
+     * 当前节点持有的 workerId
+     * @return workerId
+     */
+    int getWorkerId();
+
+    /**
+     * 指定时刻可能分配的最小ID，用于按时间换算ID边界
+     * @param timestampMillis 毫秒时间戳
+     * @return 该毫秒内任一节点生成的ID都不小于此值
+     */
+    long minIdAt(long timestampMillis);
+}
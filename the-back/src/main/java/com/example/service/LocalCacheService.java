@@ -0,0 +1,29 @@
+package com.example.service;
+
+/**
+ * 进程内一级缓存（Redis 为二级）
+ * 命中时既省去 Redis 往返也省去 JSON 解析；失效时通过 Redis Pub/Sub 广播，集群内所有节点同时清除
+ */
+public interface LocalCacheService {
+
+    /**
+     * 读取本地缓存
+     * @param key Redis 缓存键
+     * @param type 期望的值类型
+     * @return 命中且类型匹配时返回缓存值，否则返回null
+     */
+    <T> T get(String key, Class<T> type);
+
+    /**
+     * 写入本地缓存，键不属于已配置的命名空间时忽略
+     * @param key Redis 缓存键
+     * @param value 已解析的值，调用方不应再修改该对象
+     */
+    void put(String key, Object value);
+
+    /**
+     * 清除本节点的本地缓存并广播给其他节点
+     * @param key Redis 缓存键
+     */
+    void invalidate(String key);
+}
@@ -0,0 +1,35 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+/**
+ * 聊天消息去重服务
+ * 以 发送者ID + 前端tempId 作为去重键，本地时间窗口缓存 + Redis SET NX 两级判重，
+ * 保证同一条消息在集群内只入库一次
+ */
+public interface MessageDedupService {
+
+    // 去重键已被占用、消息正在处理中
+    String PENDING = "PENDING";
+
+    /**
+     * 计算消息的去重键，消息没有 tempId 时返回 null（不参与去重）
+     */
+    String dedupKey(ChatMessage message);
+
+    /**
+     * 尝试占用去重键
+     * @return null 表示占用成功，可以入库；PENDING 表示其他投递正在处理；其他值为已入库的消息ID
+     */
+    String tryClaim(String dedupKey);
+
+    /**
+     * 入库成功后记录消息ID，窗口期内的重复投递直接返回该ID
+     */
+    void markSaved(String dedupKey, String savedMessageId);
+
+    /**
+     * 入库失败时释放占用，允许后续重试重新处理
+     */
+    void release(String dedupKey);
+}
@@ -0,0 +1,43 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天消息重试与停车场服务
+ * 入库失败的消息投递到延迟重试队列，超过最大重试次数后进入停车场队列
+ */
+public interface MessageRetryService {
+
+    /**
+     * 入库失败后安排重试
+     * @param message 失败的消息
+     * @param sourceQueue 消息重试后应回到的队列
+     * @param retryCount 已重试次数
+     * @param errorMessage 失败原因
+     * @return true 表示已投递到重试队列；false 表示已达最大重试次数，消息进入停车场
+     */
+    boolean retryOrPark(ChatMessage message, String sourceQueue, int retryCount, String errorMessage);
+
+    /**
+     * 推迟处理：去重键正被另一次投递占用时，把消息投递到第一级重试队列稍后回流，不消耗重试次数。
+     * 占用方入库成功后回流的消息按已入库回执；占用方宕机时处理中标记到期释放，回流的消息重新入库
+     * @param message 被推迟的消息
+     * @param sourceQueue 消息回流的队列
+     * @param retryCount 当前重试次数，原样保留
+     */
+    void defer(ChatMessage message, String sourceQueue, int retryCount);
+
+    /**
+     * 查看停车场中的消息（不移除）
+     */
+    List<Map<String, Object>> peekParked(int limit);
+
+    /**
+     * 把停车场中的消息重放回原始队列，重试次数清零
+     * @return 实际重放的数量
+     */
+    int replayParked(int limit);
+}
@@ -0,0 +1,41 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 聊天消息本地预写日志（WAL）
+ * MySQL 不可达（连接失败、超时）时先把消息追加到本地日志并立即以预分配ID回执成功，
+ * 后台回放任务在数据库恢复后按批次把日志写回 MySQL。
+ * 与重试/停车场流程的分工：数据库可达但写入仍失败（数据问题等）的消息不进日志，照常走延迟重试和停车场；
+ * 回放时数据库可达却仍写不进去的记录转入隔离文件，检查点继续推进，不会卡住整个日志
+ */
+public interface MessageWalService {
+
+    /**
+     * 是否处于降级状态：日志中还有未回放的消息时，新消息直接写入日志，不再尝试数据库
+     */
+    boolean isDegraded();
+
+    /**
+     * 追加一批同类消息并刷盘
+     * @param messages 消息列表，必须已分配消息ID
+     * @param privateMessage 是否私聊消息
+     * @return 是否全部追加成功（未启用或写入失败时返回false）
+     */
+    boolean append(List<ChatMessage> messages, boolean privateMessage);
+
+    /**
+     * 数据库写入失败后调用：只有数据库不可达时才追加到日志。
+     * 数据库可达说明失败与消息本身有关，追加到日志只会让回放反复失败，应交给重试/停车场流程
+     * @return 是否已追加（未启用、数据库可达或写入失败时返回false）
+     */
+    boolean appendIfDatabaseUnavailable(List<ChatMessage> messages, boolean privateMessage);
+
+    /**
+     * 把日志中的消息回放到数据库
+     * @return 本次回放的消息数量
+     */
+    int replay();
+}
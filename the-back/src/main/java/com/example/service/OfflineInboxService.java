@@ -0,0 +1,33 @@
+package com.example.service;
+
+import com.example.entity.vo.response.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 用户离线收件箱
+ * 推送给用户的私聊消息同时写入该用户的有界收件箱，客户端重连时带上最后确认的消息ID，
+ * 服务端只补发这之后的消息，不必重新下载完整快照
+ */
+public interface OfflineInboxService {
+
+    // 客户端在 STOMP CONNECT 帧中携带的最后确认消息ID
+    String LAST_ACK_HEADER = "last-ack-id";
+    // CONNECT 时暂存到会话属性中，订阅私聊队列后按此补发
+    String LAST_ACK_ATTRIBUTE = "inbox-last-ack";
+
+    /**
+     * 把推送给用户的消息写入收件箱，超出容量时丢弃最早的消息
+     * @param userId 接收者ID
+     * @param message 消息，必须已分配ID
+     */
+    void append(int userId, ChatMessage message);
+
+    /**
+     * 读取收件箱中ID大于 lastAckId 的消息
+     * @param userId 用户ID
+     * @param lastAckId 客户端最后确认收到的消息ID
+     * @return 按ID升序排列的消息
+     */
+    List<ChatMessage> readAfter(int userId, long lastAckId);
+}
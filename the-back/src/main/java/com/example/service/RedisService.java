@@ -1,8 +1,10 @@
 package com.example.service;
 
+import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.core.script.RedisScript;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface RedisService {
@@ -11,6 +13,12 @@ public interface RedisService {
     String get(String key);
     boolean delete(String key);
     boolean exists(String key);
+    // SET NX：仅当键不存在时写入，返回是否写入成功
+    boolean setIfAbsent(String key, String value, Duration ttl);
+    // 批量读取，返回与 keys 一一对应的值，不存在的键对应 null
+    List<String> multiGet(List<String> keys);
+    // 批量写入（管道化 SETEX），所有键使用相同的过期时间
+    void multiSet(Map<String, String> values, Duration ttl);
 
     // List operations with optional length control
     void pushList(String key, String value, int maxLen, Duration ttl);
@@ -19,10 +27,31 @@ public interface RedisService {
     // Sorted Set operations
     void addToZSet(String key, String member, double score, Duration ttl);
     Set<String> rangeByScore(String key, double min, double max);
+    // 按分数从低到高取 [min, max] 区间内的成员，最多 count 个
+    Set<String> rangeByScore(String key, double min, double max, long offset, long count);
+    // 按分数从高到低取 [min, max] 区间内的成员，最多 count 个
+    Set<String> reverseRangeByScore(String key, double min, double max, long offset, long count);
 
     // Hash increment
     void hashIncrement(String key, String field, long delta, Duration ttl);
 
+    // Pub/Sub：向频道发布消息
+    void publish(String channel, String message);
+
+    // Stream operations
+    // XADD MAXLEN ~ maxLen：追加消息并近似裁剪长度，返回消息ID
+    String streamAdd(String key, Map<String, String> fields, long maxLen);
+    // 创建消费组（流不存在时自动创建），消费组已存在视为成功
+    boolean streamCreateGroup(String key, String group);
+    // XREADGROUP：以消费组身份读取最多count条新消息，block为阻塞等待时间；读取失败（含消费组不存在）时返回null
+    List<MapRecord<String, Object, Object>> streamReadGroup(String key, String group, String consumer, int count, Duration block);
+    // XACK：确认已处理的消息
+    long streamAck(String key, String group, List<String> ids);
+    // XAUTOCLAIM：把空闲超过minIdle的待确认消息转移给当前消费者；已被裁剪的消息以空内容的记录返回
+    List<MapRecord<String, Object, Object>> streamAutoClaim(String key, String group, String consumer, Duration minIdle, int count);
+    // XPENDING：查询空闲超过minIdle的待确认消息的投递次数，返回 消息ID -> 投递次数
+    Map<String, Long> streamPendingDeliveries(String key, String group, Duration minIdle, int count);
+
     // Execute Lua script or other scripts
     <T> T executeScript(RedisScript<T> script, List<String> keys, Object... args);
 } 
\ No newline at end of file
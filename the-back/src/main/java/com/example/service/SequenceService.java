@@ -0,0 +1,23 @@
+package com.example.service;
+
+/**
+ * 会话内消息序号服务
+ * 每个群、每个私聊对话各自维护一个从1开始单调递增的 seq，客户端据此发现缺失的消息并按区间补拉
+ */
+public interface SequenceService {
+
+    /**
+     * 分配群聊消息序号
+     * @param groupId 群ID
+     * @return 序号，Redis 不可用时返回null（消息照常发送，只是不带序号）
+     */
+    Long nextGroupSeq(String groupId);
+
+    /**
+     * 分配私聊消息序号，A发给B和B发给A共用同一个序列
+     * @param userId1 一方用户ID
+     * @param userId2 另一方用户ID
+     * @return 序号，Redis 不可用时返回null
+     */
+    Long nextPrivateSeq(int userId1, int userId2);
+}
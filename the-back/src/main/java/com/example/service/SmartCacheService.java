@@ -1,6 +1,7 @@
 package com.example.service;
 
 import java.time.Duration;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -24,6 +25,18 @@ public interface SmartCacheService {
      * @return 缓存数据
      */
     <T> T getWithProtection(String cacheKey, Supplier<T> dbQuery, Class<T> clazz, Duration ttl);
+
+    /**
+     * 带软过期的缓存读取：软过期后（或按 XFetch 概率提前）仍返回旧值并在后台刷新一次，硬过期后才回源
+     * @param cacheKey 缓存键
+     * @param dbQuery 数据库查询函数
+     * @param localType 本地缓存中的值类型
+     * @param parser 把缓存的JSON解析为返回值，用于泛型集合等无法用 Class 表示的类型
+     * @param softTtl 软过期时间
+     * @return 缓存数据
+     */
+    <T> T getWithRefresh(String cacheKey, Supplier<T> dbQuery, Class<?> localType,
+                         Function<String, T> parser, Duration softTtl);
     
     /**
      * 异步预热缓存
@@ -34,6 +34,17 @@ import com.example.service.ChatCacheService;
 import com.example.utils.RedisKeys;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import com.example.service.RedisService;
+import com.example.service.BloomFilterService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 @Service //extends ServiceImpl<AccountMapper, Account> implements AccountService
 public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> implements AccountService {
 
@@ -61,6 +72,33 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
     @Lazy
     private ChatCacheService chatCacheService;
 
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private BloomFilterService bloomFilterService;
+
+    // 用户名本地缓存容量
+    @Value("${account.username-cache.max-size:10000}")
+    private long usernameCacheMaxSize;
+
+    // 用户名本地缓存有效期（秒），其他节点修改用户名后最多在这段时间内读到旧值
+    @Value("${account.username-cache.expire-seconds:300}")
+    private long usernameCacheExpireSeconds;
+
+    private static final Duration USERNAME_REDIS_TTL = Duration.ofHours(1);
+
+    // 用户名一级缓存：名称几乎不变，消息/好友列表的名称装饰都从这里取
+    private Cache<Integer, String> usernameCache;
+
+    @PostConstruct
+    public void initUsernameCache() {
+        usernameCache = Caffeine.newBuilder()
+                .maximumSize(usernameCacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(usernameCacheExpireSeconds))
+                .build();
+    }
+
     //修改security的loadUserByUsername方法
     //我们这个业务只允许邮箱登录，因为我们不限制用户名唯一
     @Override
@@ -183,6 +221,8 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
         account.setRole("user");
         account.setRegister_time(new Date());
         if(this.save(account)){
+            // 新用户登记到布隆过滤器，否则在下次重建前会被判定为不存在
+            bloomFilterService.add(BloomFilterService.USER, String.valueOf(account.getId()));
             // 删除 Redis 中的验证码
             verificationCodeService.deleteEmailCode(email);
             return null;
@@ -229,6 +269,69 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
                 .one();
     }
     
+    @Override
+    public Map<Integer, String> getUsernames(Collection<Integer> userIds) {
+        Map<Integer, String> result = new HashMap<>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+
+        // 1. 本地缓存
+        List<Integer> localMisses = new ArrayList<>();
+        for (Integer userId : new LinkedHashSet<>(userIds)) {
+            if (userId == null) {
+                continue;
+            }
+            String username = usernameCache.getIfPresent(userId);
+            if (username != null) {
+                result.put(userId, username);
+            } else {
+                localMisses.add(userId);
+            }
+        }
+        if (localMisses.isEmpty()) {
+            return result;
+        }
+
+        // 2. Redis 一次 MGET
+        List<String> keys = localMisses.stream()
+                .map(id -> RedisKeys.ACCOUNT_USERNAME + id)
+                .collect(Collectors.toList());
+        List<String> cached = redisService.multiGet(keys);
+        List<Integer> redisMisses = new ArrayList<>();
+        for (int i = 0; i < localMisses.size(); i++) {
+            Integer userId = localMisses.get(i);
+            String username = cached.get(i);
+            if (username != null) {
+                result.put(userId, username);
+                usernameCache.put(userId, username);
+            } else {
+                redisMisses.add(userId);
+            }
+        }
+        if (redisMisses.isEmpty()) {
+            return result;
+        }
+
+        // 3. 数据库一次 selectBatchIds，结果回填两级缓存
+        Map<String, String> toCache = new HashMap<>();
+        for (Account account : this.baseMapper.selectBatchIds(redisMisses)) {
+            result.put(account.getId(), account.getUsername());
+            usernameCache.put(account.getId(), account.getUsername());
+            toCache.put(RedisKeys.ACCOUNT_USERNAME + account.getId(), account.getUsername());
+        }
+        redisService.multiSet(toCache, USERNAME_REDIS_TTL);
+        return result;
+    }
+
+    /**
+     * 清除用户名的两级缓存
+     */
+    private void evictUsername(Integer userId) {
+        usernameCache.invalidate(userId);
+        redisService.delete(RedisKeys.ACCOUNT_USERNAME + userId);
+    }
+
     private boolean existsAccountByEmail(String email){
         return this.baseMapper.exists(Wrappers.<Account>query().eq("email",email));
     }
@@ -332,7 +435,8 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
      */
     private void clearUserRelatedCacheExtended(Integer userId, String oldUsername, String newUsername) {
         try {
-            // 1. 清除聊天相关缓存
+            // 1. 清除用户名缓存和聊天相关缓存
+            evictUsername(userId);
             chatCacheService.clearUserChatCache(userId);
             
             // 2. 清除可能包含用户名的群组缓存
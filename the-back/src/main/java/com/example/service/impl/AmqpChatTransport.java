@@ -0,0 +1,36 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.ChatMessagePublisher;
+import com.example.service.ChatTransport;
+import com.example.utils.ChatPartitionRouter;
+import jakarta.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * 基于 RabbitMQ 的传输通道（默认）
+ * 群聊消息进入 groupChat 队列，私聊消息按对话ID进入分区队列
+ */
+@Service
+@ConditionalOnProperty(name = "chat.transport.mode", havingValue = "amqp", matchIfMissing = true)
+public class AmqpChatTransport implements ChatTransport {
+
+    @Resource
+    private ChatMessagePublisher chatMessagePublisher;
+
+    @Resource
+    private ChatPartitionRouter partitionRouter;
+
+    @Override
+    public void sendGroupMessage(ChatMessage message) {
+        chatMessagePublisher.publish("groupChat", message, "group");
+    }
+
+    @Override
+    public void sendPrivateMessage(ChatMessage message) {
+        // 按对话ID投递到固定分区队列，保证同一对话内的消息按发送顺序入库
+        chatMessagePublisher.publish(
+                partitionRouter.privateChatQueue(message.getSenderId(), message.getReceiverId()), message, "private");
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.example.config.BloomFilterProperties;
+import com.example.entity.dto.Account;
+import com.example.entity.dto.Group;
+import com.example.mapper.AccountMapper;
+import com.example.mapper.GroupMapper;
+import com.example.service.BloomFilterService;
+import com.example.service.RedisService;
+import com.example.utils.BloomFilter;
+import com.example.utils.RedisKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 布隆过滤器实现，两种模式：
+ * 1. 内存模式（默认）：每个节点在内存中持有位数组，定时从数据库按主键分批扫描ID重建后整体替换；
+ *    新增ID经 Redis Pub/Sub 广播给其他节点。重建期间的新增同时写入新旧两份，
+ *    上一轮以来的新增在重建结束时补写一遍，避免扫描时尚未提交的行被漏掉。
+ * 2. 共享模式（cache.bloom.shared=true）：过滤器为 Redis 位图，所有节点共用一份，
+ *    由持有租约的节点重建到临时键后 RENAME 替换，重建期间的新增同时写入临时键
+ * Pub/Sub 最多投递一次，节点漏收广播（如订阅重连期间）或共享位图写入失败都会造成漏判，
+ * 因此过滤器判定不存在时再按主键查一次数据库确认（每秒限量，超出后直接信任过滤器），查到的ID补写回过滤器
+ */
+@Service
+public class BloomFilterServiceImpl implements BloomFilterService, MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BloomFilterServiceImpl.class);
+
+    private static final Duration REBUILD_LEASE_TTL = Duration.ofMinutes(10);
+
+    // 位图不存在（尚未构建）返回 -1，任一位为 0 返回 0，否则返回 1
+    private static final RedisScript<Long> CONTAINS_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return -1
+            end
+            for i = 1, #ARGV do
+                if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then
+                    return 0
+                end
+            end
+            return 1
+            """,
+            Long.class);
+
+    // 只写入已存在的位图：正式位图未构建时写入会产生一份残缺的位图，临时键只在重建期间存在
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            """
+            for k = 1, #KEYS do
+                if redis.call('EXISTS', KEYS[k]) == 1 then
+                    for i = 1, #ARGV do
+                        redis.call('SETBIT', KEYS[k], ARGV[i], 1)
+                    end
+                end
+            end
+            return 1
+            """,
+            Long.class);
+
+    // 重建时批量写入临时位图（不检查是否存在）
+    private static final RedisScript<Long> FILL_SCRIPT = new DefaultRedisScript<>(
+            """
+            for i = 1, #ARGV do
+                redis.call('SETBIT', KEYS[1], ARGV[i], 1)
+            end
+            return #ARGV
+            """,
+            Long.class);
+
+    // 把位图一次性扩到目标长度（最后一位写 0），之后的 SETBIT 不再触发扩容
+    private static final RedisScript<Long> ALLOCATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) return redis.call('SETBIT', KEYS[1], ARGV[1], 0)",
+            Long.class);
+
+    private static final RedisScript<String> SWAP_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('RENAME', KEYS[1], KEYS[2])
+                return 'OK'
+            end
+            return 'MISSING'
+            """,
+            String.class);
+
+    // 仅当租约仍归本节点所有时才释放
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """,
+            Long.class);
+
+    @Resource
+    private BloomFilterProperties properties;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private AccountMapper accountMapper;
+
+    @Resource
+    private GroupMapper groupMapper;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 已配置的命名空间
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            logger.info("布隆过滤器未启用");
+            return;
+        }
+        for (Map.Entry<String, BloomFilterProperties.Namespace> entry : properties.getNamespaces().entrySet()) {
+            BiFunction<String, Integer, List<String>> idSource = idSource(entry.getKey());
+            Predicate<String> exists = existsCheck(entry.getKey());
+            if (idSource == null || exists == null) {
+                logger.warn("未知的布隆过滤器命名空间，已忽略: {}", entry.getKey());
+                continue;
+            }
+            BloomFilterProperties.Namespace config = entry.getValue();
+            long numBits = BloomFilter.optimalNumBits(config.getExpectedInsertions(), config.getFpp());
+            int numHashes = BloomFilter.optimalNumHashes(config.getExpectedInsertions(), numBits);
+            namespaces.put(entry.getKey(), new Namespace(entry.getKey(), config, numBits, numHashes, idSource, exists));
+            logger.info("布隆过滤器命名空间: {}, expectedInsertions={}, fpp={}, bits={}, hashes={}",
+                    entry.getKey(), config.getExpectedInsertions(), config.getFpp(), numBits, numHashes);
+        }
+        if (!properties.isShared()) {
+            redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeys.BLOOM_ADD_CHANNEL));
+        }
+    }
+
+    @Override
+    public boolean mightContain(String namespace, String id) {
+        Namespace ns = namespaces.get(namespace);
+        if (ns == null || id == null) {
+            return true;
+        }
+        if (properties.isShared()) {
+            Long result = redisService.executeScript(CONTAINS_SCRIPT,
+                    List.of(RedisKeys.BLOOM_FILTER + namespace), bitArgs(ns, id));
+            // 位图未构建或 Redis 出错时放行
+            if (result == null || result != 0L) {
+                return true;
+            }
+        } else {
+            BloomFilter filter = ns.filter;
+            if (filter == null || filter.mightContain(id)) {
+                return true;
+            }
+        }
+        return confirmAbsent(ns, id);
+    }
+
+    /**
+     * 过滤器判定不存在后按主键确认；限额内查到的ID补写回过滤器并返回 true
+     */
+    private boolean confirmAbsent(Namespace ns, String id) {
+        if (!ns.tryAcquireConfirm(properties.getMissConfirmPerSecond())) {
+            return false;
+        }
+        try {
+            if (!ns.exists.test(id)) {
+                return false;
+            }
+        } catch (Exception e) {
+            logger.warn("布隆过滤器漏判确认查询失败，按过滤器结果处理: {}, id={}", ns.name, id, e);
+            return false;
+        }
+        logger.warn("布隆过滤器漏判，已补写: {}, id={}", ns.name, id);
+        add(ns.name, id);
+        return true;
+    }
+
+    @Override
+    public void add(String namespace, String id) {
+        Namespace ns = namespaces.get(namespace);
+        if (ns == null || id == null) {
+            return;
+        }
+        if (properties.isShared()) {
+            String key = RedisKeys.BLOOM_FILTER + namespace;
+            redisService.executeScript(ADD_SCRIPT, List.of(key, key + ":rebuild"), bitArgs(ns, id));
+            return;
+        }
+        addLocal(ns, id);
+        redisService.publish(RedisKeys.BLOOM_ADD_CHANNEL, nodeId + "|" + namespace + "|" + id);
+    }
+
+    /**
+     * 收到其他节点新增ID的广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        Namespace ns = namespaces.get(parts[1]);
+        if (ns != null) {
+            addLocal(ns, parts[2]);
+        }
+    }
+
+    /**
+     * 启动后尽快构建一次，之后按固定间隔重建，清除已删除实体的残留位并控制误判率
+     */
+    @Scheduled(initialDelay = 5000, fixedDelayString = "${cache.bloom.rebuild-interval-millis:3600000}")
+    public void scheduledRebuild() {
+        if (!namespaces.isEmpty()) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        if (properties.isShared()) {
+            rebuildShared();
+            return;
+        }
+        for (Namespace ns : namespaces.values()) {
+            try {
+                rebuildLocal(ns);
+            } catch (Exception e) {
+                logger.error("布隆过滤器重建失败，继续使用旧过滤器: {}", ns.name, e);
+            }
+        }
+    }
+
+    private void addLocal(Namespace ns, String id) {
+        synchronized (ns.lock) {
+            ns.recentAdds.add(id);
+            if (ns.filter != null) {
+                ns.filter.put(id);
+            }
+            if (ns.building != null) {
+                ns.building.put(id);
+            }
+        }
+    }
+
+    private void rebuildLocal(Namespace ns) {
+        long start = System.currentTimeMillis();
+        BloomFilter fresh = BloomFilter.create(ns.config.getExpectedInsertions(), ns.config.getFpp());
+        Set<String> carried;
+        synchronized (ns.lock) {
+            // 此后的新增直接写入新过滤器；此前（上一轮重建以来）的新增在扫描结束后补写
+            carried = ns.recentAdds;
+            ns.recentAdds = ConcurrentHashMap.newKeySet();
+            ns.building = fresh;
+        }
+        long count;
+        try {
+            count = scan(ns, ids -> ids.forEach(fresh::put));
+        } catch (RuntimeException e) {
+            synchronized (ns.lock) {
+                ns.building = null;
+                ns.recentAdds.addAll(carried);
+            }
+            throw e;
+        }
+        carried.forEach(fresh::put);
+        synchronized (ns.lock) {
+            ns.filter = fresh;
+            ns.building = null;
+        }
+        logger.info("布隆过滤器已重建: {}, 元素数={}, 耗时={}ms", ns.name, count, System.currentTimeMillis() - start);
+    }
+
+    private void rebuildShared() {
+        String token = nodeId + ":" + System.currentTimeMillis();
+        if (!redisService.setIfAbsent(RedisKeys.BLOOM_REBUILD_LEASE, token, REBUILD_LEASE_TTL)) {
+            logger.debug("其他节点正在重建共享布隆过滤器");
+            return;
+        }
+        try {
+            for (Namespace ns : namespaces.values()) {
+                long start = System.currentTimeMillis();
+                String key = RedisKeys.BLOOM_FILTER + ns.name;
+                String tmpKey = key + ":rebuild";
+                if (redisService.executeScript(ALLOCATE_SCRIPT, List.of(tmpKey), String.valueOf(ns.numBits - 1)) == null) {
+                    throw new IllegalStateException("创建临时位图失败: " + tmpKey);
+                }
+                long count = scan(ns, ids -> {
+                    List<String> args = new ArrayList<>(ids.size() * ns.numHashes);
+                    for (String id : ids) {
+                        args.addAll(List.of(bitArgs(ns, id)));
+                    }
+                    // 任一批写入失败都放弃本次重建，不能用残缺的位图替换正式位图
+                    if (redisService.executeScript(FILL_SCRIPT, List.of(tmpKey), args.toArray()) == null) {
+                        throw new IllegalStateException("写入临时位图失败: " + tmpKey);
+                    }
+                });
+                String swapped = redisService.executeScript(SWAP_SCRIPT, List.of(tmpKey, key));
+                logger.info("共享布隆过滤器已重建: {}, 元素数={}, 结果={}, 耗时={}ms",
+                        ns.name, count, swapped, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            logger.error("共享布隆过滤器重建失败，继续使用旧位图", e);
+        } finally {
+            redisService.executeScript(RELEASE_LEASE_SCRIPT, List.of(RedisKeys.BLOOM_REBUILD_LEASE), token);
+        }
+    }
+
+    /**
+     * 按主键升序分批读取全部ID
+     * @return 读取的ID总数
+     */
+    private long scan(Namespace ns, Consumer<List<String>> consumer) {
+        int batchSize = properties.getRebuildBatchSize();
+        long count = 0;
+        String lastId = null;
+        while (true) {
+            List<String> ids = ns.idSource.apply(lastId, batchSize);
+            if (ids.isEmpty()) {
+                return count;
+            }
+            consumer.accept(ids);
+            count += ids.size();
+            lastId = ids.get(ids.size() - 1);
+            if (ids.size() < batchSize) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 命名空间对应的ID来源：(上一批最后一个ID, 批大小) -> 下一批ID
+     */
+    private BiFunction<String, Integer, List<String>> idSource(String namespace) {
+        return switch (namespace) {
+            case USER -> (lastId, limit) -> toStrings(accountMapper.selectObjs(
+                    Wrappers.<Account>query().select("id")
+                            .gt(lastId != null, "id", lastId == null ? null : Integer.valueOf(lastId))
+                            .orderByAsc("id")
+                            .last("LIMIT " + limit)));
+            case GROUP -> (lastId, limit) -> toStrings(groupMapper.selectObjs(
+                    Wrappers.<Group>query().select("group_id")
+                            .gt(lastId != null, "group_id", lastId)
+                            .orderByAsc("group_id")
+                            .last("LIMIT " + limit)));
+            default -> null;
+        };
+    }
+
+    /**
+     * 命名空间对应的按主键存在性查询
+     */
+    private Predicate<String> existsCheck(String namespace) {
+        return switch (namespace) {
+            case USER -> id -> {
+                try {
+                    return accountMapper.exists(Wrappers.<Account>query().eq("id", Integer.valueOf(id)));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            };
+            case GROUP -> id -> groupMapper.exists(Wrappers.<Group>query().eq("group_id", id));
+            default -> null;
+        };
+    }
+
+    private static List<String> toStrings(List<Object> values) {
+        List<String> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null) {
+                result.add(String.valueOf(value));
+            }
+        }
+        return result;
+    }
+
+    private static Object[] bitArgs(Namespace ns, String id) {
+        long[] indexes = BloomFilter.bitIndexes(id, ns.numBits, ns.numHashes);
+        Object[] args = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            args[i] = String.valueOf(indexes[i]);
+        }
+        return args;
+    }
+
+    private static class Namespace {
+        final String name;
+        final BloomFilterProperties.Namespace config;
+        final long numBits;
+        final int numHashes;
+        final BiFunction<String, Integer, List<String>> idSource;
+        final Predicate<String> exists;
+        final Object lock = new Object();
+        // 当前生效的过滤器，首次构建完成前为 null（一律放行）
+        volatile BloomFilter filter;
+        // 正在重建的过滤器
+        BloomFilter building;
+        // 上一轮重建开始以来新增的ID
+        Set<String> recentAdds = ConcurrentHashMap.newKeySet();
+        // 漏判确认查询的限流：当前秒及其已用次数
+        private long confirmSecond;
+        private int confirmCount;
+
+        Namespace(String name, BloomFilterProperties.Namespace config, long numBits, int numHashes,
+                  BiFunction<String, Integer, List<String>> idSource, Predicate<String> exists) {
+            this.name = name;
+            this.config = config;
+            this.numBits = numBits;
+            this.numHashes = numHashes;
+            this.idSource = idSource;
+            this.exists = exists;
+        }
+
+        synchronized boolean tryAcquireConfirm(int perSecond) {
+            long second = System.currentTimeMillis() / 1000;
+            if (second != confirmSecond) {
+                confirmSecond = second;
+                confirmCount = 0;
+            }
+            if (confirmCount >= perSecond) {
+                return false;
+            }
+            confirmCount++;
+            return true;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.example.service.CacheWarmupService;
 import com.example.service.SmartCacheService;
 import com.example.service.GroupCacheService;
 import com.example.service.ChatCacheService;
+import com.example.service.DistributedLockService;
 import com.example.utils.RedisKeys;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
@@ -16,7 +17,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.scheduling.annotation.Scheduled;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Supplier;
 
 @Service
@@ -24,6 +27,8 @@ public class CacheWarmupServiceImpl implements CacheWarmupService {
     
     private static final Logger logger = LoggerFactory.getLogger(CacheWarmupServiceImpl.class);
     private static final int MAX_RETRY_COUNT = 3;
+    private static final String WARMUP_LOCK_PREFIX = "warmup:";
+    private static final Duration WARMUP_LOCK_LEASE = Duration.ofSeconds(30);
     
     @Resource
     private CacheWarmupTaskMapper warmupTaskMapper;
@@ -36,6 +41,9 @@ public class CacheWarmupServiceImpl implements CacheWarmupService {
     
     @Autowired
     private ChatCacheService chatCacheService;
+
+    @Autowired
+    private DistributedLockService distributedLockService;
     
     @Override
     @Transactional
@@ -149,6 +157,27 @@ public class CacheWarmupServiceImpl implements CacheWarmupService {
      * 处理单个预热任务
      */
     private boolean processWarmupTask(CacheWarmupTask task) {
+        // 每个节点的定时任务都会取到同一批待处理任务，加锁保证同一缓存键只由一个节点预热
+        DistributedLockService.Lock lock = distributedLockService.tryLock(WARMUP_LOCK_PREFIX + task.getCacheKey(), WARMUP_LOCK_LEASE);
+        if (lock == null) {
+            logger.debug("其他实例正在处理预热任务: cacheKey={}", task.getCacheKey());
+            return false;
+        }
+        try {
+            // 加锁前其他实例可能已处理过该任务（状态或重试次数已变化）
+            CacheWarmupTask latest = warmupTaskMapper.selectById(task.getId());
+            if (latest == null || latest.getStatus() != task.getStatus()
+                    || !Objects.equals(latest.getRetryCount(), task.getRetryCount())) {
+                logger.debug("预热任务已被其他实例处理: cacheKey={}", task.getCacheKey());
+                return false;
+            }
+            return doProcessWarmupTask(task);
+        } finally {
+            distributedLockService.unlock(lock);
+        }
+    }
+
+    private boolean doProcessWarmupTask(CacheWarmupTask task) {
         try {
             // 标记为处理中
             task.markAsProcessing();
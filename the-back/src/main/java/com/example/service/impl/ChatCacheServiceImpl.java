@@ -8,14 +8,14 @@ import com.example.mapper.Private_messagesMapper;
 import com.example.service.ChatCacheService;
 import com.example.service.RedisService;
 import com.example.service.AccountService;
-import com.example.mapper.AccountMapper;
-import com.example.entity.dto.Account;
+import com.example.utils.ChatPartitionRouter;
 import com.example.utils.RedisKeys;
 import com.example.utils.Const;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -24,10 +24,14 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class ChatCacheServiceImpl implements ChatCacheService {
@@ -66,8 +70,101 @@ public class ChatCacheServiceImpl implements ChatCacheService {
         Long.class
     );
 
+    // 私聊列表最大长度，与实时写入时的 LTRIM 保持一致
+    private static final int PRIVATE_LIST_MAX_LEN = 1000;
+
+    // 用数据库结果重建用户私聊列表：一次脚本完成 DEL / 分批 RPUSH / LTRIM / EXPIRE
+    private static final RedisScript<Long> REBUILD_PRIVATE_LIST_SCRIPT = new DefaultRedisScript<>(
+        """
+        local key = KEYS[1]
+        local maxLen = tonumber(ARGV[1])
+        local ttl = tonumber(ARGV[2])
+        redis.call('DEL', key)
+        for i = 3, #ARGV, 500 do
+            redis.call('RPUSH', key, unpack(ARGV, i, math.min(i + 499, #ARGV)))
+        end
+        redis.call('LTRIM', key, -maxLen, -1)
+        redis.call('EXPIRE', key, ttl)
+        return redis.call('LLEN', key)
+        """,
+        Long.class
+    );
+
+    // 新消息写入群聊窗口：超出容量时淘汰最早的消息，并同步上移窗口下界
+    private static final RedisScript<Long> ADD_GROUP_MESSAGE_SCRIPT = new DefaultRedisScript<>(
+        """
+        local zsetKey = KEYS[1]
+        local floorKey = KEYS[2]
+        local maxSize = tonumber(ARGV[3])
+        local ttl = tonumber(ARGV[4])
+        redis.call('ZADD', zsetKey, ARGV[1], ARGV[2])
+        local card = redis.call('ZCARD', zsetKey)
+        local hasFloor = redis.call('EXISTS', floorKey) == 1
+        if card > maxSize then
+            redis.call('ZREMRANGEBYRANK', zsetKey, 0, card - maxSize - 1)
+            if hasFloor then
+                local lowest = redis.call('ZRANGE', zsetKey, 0, 0)[1]
+                redis.call('SET', floorKey, string.sub(lowest, 1, 20))
+            end
+        end
+        redis.call('EXPIRE', zsetKey, ttl)
+        if hasFloor then redis.call('EXPIRE', floorKey, ttl) end
+        return card
+        """,
+        Long.class
+    );
+
+    // 作废群聊窗口：同时删除有序集合和下界，下一次读取从数据库重新填充
+    private static final RedisScript<Long> INVALIDATE_GROUP_HISTORY_SCRIPT = new DefaultRedisScript<>(
+        """
+        redis.call('DEL', KEYS[1], KEYS[2])
+        return 1
+        """,
+        Long.class
+    );
+
+    // 用数据库结果填充群聊窗口（一次写入）：
+    // ARGV[4] 为空表示首次填充，要求下界不存在；否则为向下扩展，要求下界未变且扩展后不超过容量
+    private static final RedisScript<Long> FILL_GROUP_HISTORY_SCRIPT = new DefaultRedisScript<>(
+        """
+        local zsetKey = KEYS[1]
+        local floorKey = KEYS[2]
+        local newFloor = ARGV[1]
+        local maxSize = tonumber(ARGV[2])
+        local ttl = tonumber(ARGV[3])
+        local expectedFloor = ARGV[4]
+        local current = redis.call('GET', floorKey)
+        if expectedFloor == '' then
+            if current then return 0 end
+        else
+            if current ~= expectedFloor then return 0 end
+            if redis.call('ZCARD', zsetKey) + (#ARGV - 4) / 2 > maxSize then return 0 end
+        end
+        for i = 5, #ARGV, 2 do
+            redis.call('ZADD', zsetKey, ARGV[i], ARGV[i + 1])
+        end
+        local card = redis.call('ZCARD', zsetKey)
+        if card > maxSize then
+            redis.call('ZREMRANGEBYRANK', zsetKey, 0, card - maxSize - 1)
+            newFloor = string.sub(redis.call('ZRANGE', zsetKey, 0, 0)[1], 1, 20)
+        end
+        redis.call('SET', floorKey, newFloor, 'EX', ttl)
+        redis.call('EXPIRE', zsetKey, ttl)
+        return 1
+        """,
+        Long.class
+    );
+
+    // 成员前缀中消息ID的位数
+    private static final int MEMBER_ID_DIGITS = 20;
+    // 分数是 double，雪花ID超出其精确范围，相邻ID可能得到相同分数，按分数取数时多取一些再按精确ID过滤
+    private static final int SCORE_PRECISION_SLACK = 16;
+
     private static final Logger logger = LoggerFactory.getLogger(ChatCacheServiceImpl.class);
 
+    // 写入失败、窗口可能缺消息但还没能作废的群；在此集合中的群不从缓存读取，直到作废成功
+    private final Set<String> staleGroupWindows = ConcurrentHashMap.newKeySet();
+
     @Autowired
     private RedisService redisService;
 
@@ -80,66 +177,302 @@ public class ChatCacheServiceImpl implements ChatCacheService {
     @Autowired
     private AccountService accountService;
 
-    @Autowired
-    private AccountMapper accountMapper;
+
+    // 每个群缓存的最新消息数量上限
+    @Value("${chat.history.group.cache-size:1000}")
+    private int groupCacheSize;
+
+    // 缓存未命中时从数据库加载的消息数量
+    @Value("${chat.history.group.fill-size:200}")
+    private int groupFillSize;
+
+    // 私聊缓存未命中时从数据库加载的消息数量
+    @Value("${chat.history.private.fill-size:200}")
+    private int privateFillSize;
 
     @Override
-    public void cacheGroupMessage(String groupId, String messageJson) {
-        String key = RedisKeys.CHAT_GROUP + groupId;
-        // 保留最新1000条
-        redisService.pushList(key, messageJson, 1000, EXPIRE);
+    public void cacheGroupMessage(Group_message message) {
+        if (message.getId() == null) {
+            return;
+        }
+        List<String> keys = List.of(RedisKeys.CHAT_GROUP_HISTORY + message.getGroupId(),
+                RedisKeys.CHAT_GROUP_HISTORY_FLOOR + message.getGroupId());
+        Long card = null;
+        try {
+            card = redisService.executeScript(ADD_GROUP_MESSAGE_SCRIPT, keys,
+                    String.valueOf(message.getId()), toMember(message),
+                    String.valueOf(groupCacheSize), String.valueOf(EXPIRE.toSeconds()));
+        } finally {
+            if (card == null) {
+                markWindowStale(message);
+            }
+        }
+    }
+
+    /**
+     * 下界以上必须是连续的消息；写入失败的窗口会一直缺这条消息（每条新消息都会续期 TTL），必须作废
+     */
+    private void markWindowStale(Group_message message) {
+        logger.warn("群聊消息写入缓存窗口失败，作废该群窗口: groupId={}, messageId={}",
+                message.getGroupId(), message.getId());
+        staleGroupWindows.add(message.getGroupId());
+        invalidateStaleWindow(message.getGroupId());
+    }
+
+    /**
+     * 作废之前写入失败的群聊窗口
+     * @return 该群窗口可以正常使用时返回true；仍未能作废（Redis 不可用）时返回false，调用方应直接查数据库
+     */
+    private boolean invalidateStaleWindow(String groupId) {
+        if (!staleGroupWindows.contains(groupId)) {
+            return true;
+        }
+        Long result = redisService.executeScript(INVALIDATE_GROUP_HISTORY_SCRIPT,
+                List.of(RedisKeys.CHAT_GROUP_HISTORY + groupId, RedisKeys.CHAT_GROUP_HISTORY_FLOOR + groupId));
+        if (result == null) {
+            return false;
+        }
+        staleGroupWindows.remove(groupId);
+        logger.info("已作废群聊缓存窗口，下次读取从数据库重新填充: groupId={}", groupId);
+        return true;
     }
 
     @Override
-    
     public List<Group_message> getGroupChatHistory(String groupId, int limit) {
-        String key = RedisKeys.CHAT_GROUP + groupId;
-        
+        return getGroupChatHistoryBefore(groupId, null, limit);
+    }
+
+    @Override
+    public List<Group_message> getGroupChatHistoryBefore(String groupId, Long beforeId, int limit) {
         try {
-            // 🔧 HOTFIX: 简化缓存逻辑，优先保证数据一致性
-            // 先查询数据库获取最新数据
-            List<Group_message> dbList = group_messageMapper.selectList(
-                    Wrappers.<Group_message>query().eq("groupId", groupId).orderByAsc("Create_at")
-            );
-            
-            // 批量查询发送者名称，避免空列表导致 SQL 语法错误
-            List<Integer> senderIds = dbList.stream()
-                    .map(Group_message::getSenderId)
-                    .distinct()
+            List<Group_message> result = readGroupHistory(groupId, beforeId, limit);
+            fillSenderNames(result);
+            return result;
+        } catch (Exception e) {
+            logger.error("获取群组消息历史失败: groupId={}, beforeId={}", groupId, beforeId, e);
+            // 返回空列表而不是null，避免前端错误
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 群聊历史读取：
+     * Redis 中保存每个群最新的一段连续消息，下界 floor 以上的消息全部在缓存中。
+     * 1. 下界不存在（未缓存或已过期）：从数据库加载最新 fillSize 条，一次写入缓存
+     * 2. 请求范围在下界之上：直接从缓存返回
+     * 3. 缓存不够一页：只向数据库查询下界以下缺失的部分，并在容量允许时向下扩展缓存
+     */
+    private List<Group_message> readGroupHistory(String groupId, Long beforeId, int limit) {
+        String zsetKey = RedisKeys.CHAT_GROUP_HISTORY + groupId;
+        String floorKey = RedisKeys.CHAT_GROUP_HISTORY_FLOOR + groupId;
+
+        if (!invalidateStaleWindow(groupId)) {
+            return queryGroupHistory(groupId, beforeId, limit);
+        }
+        String floorValue = redisService.get(floorKey);
+        if (floorValue == null) {
+            List<Group_message> filled = fillGroupHistory(groupId, zsetKey, floorKey);
+            List<Group_message> page = filled.stream()
+                    .filter(m -> beforeId == null || m.getId() < beforeId)
                     .collect(Collectors.toList());
-            Map<Integer, String> nameMap = new HashMap<>();
-            if (!senderIds.isEmpty()) {
-                List<Account> accounts = accountMapper.selectBatchIds(senderIds);
-                nameMap = accounts.stream()
-                        .collect(Collectors.toMap(Account::getId, Account::getUsername));
+            boolean complete = filled.size() < groupFillSize;
+            if (page.size() >= limit || complete) {
+                return new ArrayList<>(page.subList(Math.max(0, page.size() - limit), page.size()));
             }
-            
-            // 设置发送者名称
-            for (Group_message gm : dbList) {
-                gm.setSenderName(nameMap.get(gm.getSenderId()));
+            // 首次填充的窗口不够一页，剩余部分直接从数据库补齐
+            List<Group_message> older = queryGroupHistory(groupId, filled.get(0).getId(), limit - page.size());
+            older.addAll(page);
+            return older;
+        }
+
+        long floor = Long.parseLong(floorValue);
+        if (beforeId != null && beforeId <= floor) {
+            // 请求范围完全在缓存窗口之下，直接查数据库
+            return queryGroupHistory(groupId, beforeId, limit);
+        }
+
+        // 从缓存中按ID倒序取本页
+        List<Group_message> cached = scanGroupWindow(zsetKey, beforeId, false, limit);
+        if (cached.size() >= limit || floor == 0) {
+            return cached;
+        }
+
+        // 缓存窗口不够一页：只查询下界以下缺失的部分
+        List<Group_message> older = queryGroupHistory(groupId, floor, limit - cached.size());
+        extendGroupHistory(zsetKey, floorKey, floorValue, older, limit - cached.size());
+        older.addAll(cached);
+        return older;
+    }
+
+    /**
+     * 增量读取：返回ID大于 afterId 的最多 limit 条消息（按ID升序）
+     * afterId 在缓存窗口之内时只读 Redis，否则按 (groupId, id) 索引正序查询数据库
+     */
+    @Override
+    public List<Group_message> getGroupChatHistoryAfter(String groupId, long afterId, int limit) {
+        try {
+            String zsetKey = RedisKeys.CHAT_GROUP_HISTORY + groupId;
+            String floorValue = invalidateStaleWindow(groupId)
+                    ? redisService.get(RedisKeys.CHAT_GROUP_HISTORY_FLOOR + groupId)
+                    : null;
+            List<Group_message> result;
+            if (floorValue != null && afterId >= Long.parseLong(floorValue)) {
+                result = scanGroupWindow(zsetKey, afterId, true, limit);
+            } else {
+                result = group_messageMapper.selectList(
+                        Wrappers.<Group_message>query()
+                                .eq("groupId", groupId)
+                                .gt("id", afterId)
+                                .orderByAsc("id")
+                                .last("LIMIT " + limit)
+                );
             }
-            
-            // 更新缓存（异步，不影响响应速度）
-            try {
-                for (Group_message gm : dbList) {
-                    String json = JSON.toJSONString(gm);
-                    redisService.pushList(key, json, 1000, EXPIRE);
+            fillSenderNames(result);
+            return result;
+        } catch (Exception e) {
+            logger.error("增量获取群组消息失败: groupId={}, afterId={}", groupId, afterId, e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public List<Group_message> getGroupChatHistoryBySeq(String groupId, long fromSeq, long toSeq) {
+        try {
+            List<Group_message> result = group_messageMapper.selectList(
+                    Wrappers.<Group_message>query()
+                            .eq("groupId", groupId)
+                            .between("seq", fromSeq, toSeq)
+                            .orderByAsc("seq")
+            );
+            fillSenderNames(result);
+            return result;
+        } catch (Exception e) {
+            logger.error("按序号获取群组消息失败: groupId={}, fromSeq={}, toSeq={}", groupId, fromSeq, toSeq, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 从缓存窗口中按ID顺序扫描，跳过 boundId 本身及另一侧的消息，返回按ID升序的最多 limit 条消息
+     * newer 为 true 时取 boundId 之后的消息，否则取 boundId 之前的消息（boundId 为 null 表示最新）
+     * 成员按分数排序、分数相同时按固定位数的ID前缀排序，因此扫描顺序就是精确的ID顺序，
+     * 分数相同的消息较多时分批继续向后取，直到凑满一页或窗口取完
+     */
+    private List<Group_message> scanGroupWindow(String zsetKey, Long boundId, boolean newer, int limit) {
+        List<Group_message> result = new ArrayList<>(limit);
+        int batch = limit + SCORE_PRECISION_SLACK;
+        long offset = 0;
+        // 同一ID的成员前缀相同、总是相邻；序列化格式变更前后写入的同一条消息只取一次
+        Long lastId = null;
+        while (result.size() < limit) {
+            Set<String> members = newer
+                    ? redisService.rangeByScore(zsetKey, boundId.doubleValue(), Double.POSITIVE_INFINITY, offset, batch)
+                    : redisService.reverseRangeByScore(zsetKey, Double.NEGATIVE_INFINITY,
+                            boundId != null ? boundId.doubleValue() : Double.POSITIVE_INFINITY, offset, batch);
+            for (String member : members) {
+                Group_message message = fromMember(member);
+                if (message == null || (boundId != null
+                        && (newer ? message.getId() <= boundId : message.getId() >= boundId))) {
+                    continue;
+                }
+                if (message.getId().equals(lastId)) {
+                    continue;
+                }
+                lastId = message.getId();
+                result.add(message);
+                if (result.size() >= limit) {
+                    break;
                 }
-            } catch (Exception cacheError) {
-                // 缓存失败不影响业务逻辑
-                logger.warn("缓存群组消息失败，但数据已正确返回: {}", cacheError.getMessage());
             }
-            
-            // 截取最后 limit 条
-            if (dbList.size() > limit) {
-                return dbList.subList(dbList.size() - limit, dbList.size());
+            if (members.size() < batch) {
+                break;
             }
-            return dbList;
-            
-        } catch (Exception e) {
-            logger.error("获取群组消息历史失败: groupId={}", groupId, e);
-            // 返回空列表而不是null，避免前端错误
-            return new ArrayList<>();
+            offset += members.size();
+        }
+        if (!newer) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    /**
+     * 缓存未命中：加载最新 fillSize 条消息并一次写入，返回按ID升序的消息
+     */
+    private List<Group_message> fillGroupHistory(String groupId, String zsetKey, String floorKey) {
+        List<Group_message> rows = queryGroupHistory(groupId, null, groupFillSize);
+        // 不足 fillSize 条说明已加载全部历史，下界记为0
+        String newFloor = rows.size() < groupFillSize ? "0" : String.valueOf(rows.get(0).getId());
+        writeGroupHistory(zsetKey, floorKey, newFloor, "", rows);
+        return rows;
+    }
+
+    /**
+     * 把下界以下刚查到的连续消息并入缓存窗口，下界在此期间被修改或超出容量时放弃
+     */
+    private void extendGroupHistory(String zsetKey, String floorKey, String expectedFloor,
+                                    List<Group_message> rows, int requested) {
+        String newFloor = rows.size() < requested ? "0" : String.valueOf(rows.get(0).getId());
+        writeGroupHistory(zsetKey, floorKey, newFloor, expectedFloor, rows);
+    }
+
+    private void writeGroupHistory(String zsetKey, String floorKey, String newFloor, String expectedFloor,
+                                   List<Group_message> rows) {
+        List<Object> args = new ArrayList<>(4 + rows.size() * 2);
+        args.add(newFloor);
+        args.add(String.valueOf(groupCacheSize));
+        args.add(String.valueOf(EXPIRE.toSeconds()));
+        args.add(expectedFloor);
+        for (Group_message row : rows) {
+            args.add(String.valueOf(row.getId()));
+            args.add(toMember(row));
+        }
+        redisService.executeScript(FILL_GROUP_HISTORY_SCRIPT, List.of(zsetKey, floorKey), args.toArray());
+    }
+
+    /**
+     * 数据库按 (groupId, id) 索引倒序取一页，返回按ID升序的消息
+     */
+    private List<Group_message> queryGroupHistory(String groupId, Long beforeId, int limit) {
+        List<Group_message> rows = group_messageMapper.selectList(
+                Wrappers.<Group_message>query()
+                        .eq("groupId", groupId)
+                        .lt(beforeId != null, "id", beforeId)
+                        .orderByDesc("id")
+                        .last("LIMIT " + limit)
+        );
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    /**
+     * 只为本页消息批量获取发送者名称，缓存中不保存名称，避免用户改名后显示旧名称
+     */
+    private void fillSenderNames(List<Group_message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> nameMap = accountService.getUsernames(
+                messages.stream().map(Group_message::getSenderId).collect(Collectors.toSet()));
+        for (Group_message gm : messages) {
+            gm.setSenderName(nameMap.get(gm.getSenderId()));
+        }
+    }
+
+    private static String toMember(Group_message message) {
+        String senderName = message.getSenderName();
+        message.setSenderName(null);
+        String json = JSON.toJSONString(message, "millis");
+        message.setSenderName(senderName);
+        // 固定位数的ID前缀：分数相同时按成员字典序排列，即按精确ID排列
+        return String.format("%0" + MEMBER_ID_DIGITS + "d|%s", message.getId(), json);
+    }
+
+    private Group_message fromMember(String member) {
+        try {
+            return JSON.parseObject(member.substring(MEMBER_ID_DIGITS + 1), Group_message.class);
+        } catch (JSONException e) {
+            logger.warn("群聊消息缓存解析失败，跳过: {}", member, e);
+            return null;
         }
     }
 
@@ -147,7 +480,7 @@ public class ChatCacheServiceImpl implements ChatCacheService {
     public void cachePrivateMessage(ChatMessage message) {
         int senderId = message.getSenderId();
         int receiverId = message.getReceiverId();
-        String dialogId = senderId < receiverId ? senderId + ":" + receiverId : receiverId + ":" + senderId;
+        String dialogId = ChatPartitionRouter.dialogId(senderId, receiverId);
         String msgJson = JSON.toJSONString(message);
         long timestamp = message.getTimestamp().getTime();
         String dialogKey = RedisKeys.DIALOG_PRIV + dialogId;
@@ -158,39 +491,29 @@ public class ChatCacheServiceImpl implements ChatCacheService {
         String listKeyReceiver = RedisKeys.CHAT_PRIVATE + receiverId;
         // FIRST_EDIT: 使用 Lua 脚本原子执行所有 Redis 操作
         List<String> keys = List.of(dialogKey, recentKeySender, recentKeyReceiver, unreadKey, listKeySender, listKeyReceiver);
-        Object[] args = new Object[]{msgJson, String.valueOf(timestamp), String.valueOf(EXPIRE.toSeconds()), "1000"};
+        Object[] args = new Object[]{msgJson, String.valueOf(timestamp), String.valueOf(EXPIRE.toSeconds()),
+                String.valueOf(PRIVATE_LIST_MAX_LEN)};
         redisService.executeScript(CACHE_PRIVATE_MESSAGE_SCRIPT, keys, args);
     }
 
     @Override
     public List<PrivateChatMessage> getPrivateChatHistory(int userId, int limit) {
         String key = RedisKeys.CHAT_PRIVATE + userId;
-        List<String> jsons = redisService.rangeList(key, 0, -1);
-        List<PrivateChatMessage> messages = new ArrayList<>();
+        // 列表按时间从旧到新排列，只读取最后 limit 条
+        List<String> jsons = redisService.rangeList(key, -limit, -1);
         if (jsons.isEmpty()) {
-            // 回落数据库
-            List<PrivateChatMessage> dbList = privateMessageMapper.selectList(
-                    Wrappers.<PrivateChatMessage>query()
-                            .eq("sender_id", userId)
-                            .or().eq("receiver_id", userId)
-                            .orderByDesc("created_at")
-            );
-            for (PrivateChatMessage pcm : dbList) {
-                String json = JSON.toJSONString(pcm);
-                redisService.pushList(key, json, 1000, EXPIRE);
-                messages.add(pcm);
-            }
-        } else {
-            for (String json : jsons) {
-                try {
-                    if (json.startsWith("[")) {
-                        messages.addAll(JSON.parseArray(json, PrivateChatMessage.class));
-                    } else {
-                        messages.add(JSON.parseObject(json, PrivateChatMessage.class));
-                    }
-                } catch (JSONException e) {
-                    // skip
+            return loadPrivateChatHistory(userId, limit);
+        }
+        List<PrivateChatMessage> messages = new ArrayList<>();
+        for (String json : jsons) {
+            try {
+                if (json.startsWith("[")) {
+                    messages.addAll(JSON.parseArray(json, PrivateChatMessage.class));
+                } else {
+                    messages.add(JSON.parseObject(json, PrivateChatMessage.class));
                 }
+            } catch (JSONException e) {
+                // skip
             }
         }
         // 保留最后 limit 条
@@ -200,6 +523,47 @@ public class ChatCacheServiceImpl implements ChatCacheService {
         return messages;
     }
 
+    /**
+     * 缓存未命中：按ID倒序只取最新 fillSize 条（不少于 limit），并一次写回缓存
+     * 发送和接收分别走 sender_id / receiver_id 索引，各自 LIMIT 后合并，不会加载用户的全部私聊记录
+     */
+    private List<PrivateChatMessage> loadPrivateChatHistory(int userId, int limit) {
+        int fill = Math.max(limit, privateFillSize);
+        List<PrivateChatMessage> rows = new ArrayList<>(privateMessageMapper.selectList(
+                Wrappers.<PrivateChatMessage>query()
+                        .eq("sender_id", userId)
+                        .orderByDesc("id")
+                        .last("LIMIT " + fill)
+        ));
+        rows.addAll(privateMessageMapper.selectList(
+                Wrappers.<PrivateChatMessage>query()
+                        .eq("receiver_id", userId)
+                        .ne("sender_id", userId)
+                        .orderByDesc("id")
+                        .last("LIMIT " + fill)
+        ));
+        // 合并后按ID升序取最新 fill 条，与实时写入的 RPUSH 顺序一致
+        rows.sort(Comparator.comparing(PrivateChatMessage::getId));
+        if (rows.size() > fill) {
+            rows = new ArrayList<>(rows.subList(rows.size() - fill, rows.size()));
+        }
+
+        if (!rows.isEmpty()) {
+            Object[] args = new Object[rows.size() + 2];
+            args[0] = String.valueOf(PRIVATE_LIST_MAX_LEN);
+            args[1] = String.valueOf(EXPIRE.toSeconds());
+            for (int i = 0; i < rows.size(); i++) {
+                args[i + 2] = JSON.toJSONString(rows.get(i));
+            }
+            redisService.executeScript(REBUILD_PRIVATE_LIST_SCRIPT, List.of(RedisKeys.CHAT_PRIVATE + userId), args);
+        }
+
+        if (rows.size() > limit) {
+            return new ArrayList<>(rows.subList(rows.size() - limit, rows.size()));
+        }
+        return rows;
+    }
+
     @Override
     public void clearUserChatCache(Integer userId) {
         try {
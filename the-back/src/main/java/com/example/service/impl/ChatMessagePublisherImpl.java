@@ -0,0 +1,166 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.entity.vo.response.MessageAck;
+import com.example.service.ChatMessagePublisher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带发布确认的异步发布器实现
+ * 1. 入站线程只把消息放入有界队列，立即返回
+ * 2. 后台线程一次取出一批，在同一个通道上连续发布（rabbitTemplate.invoke），减少通道获取和往返开销
+ * 3. 每条消息携带以 tempId 为ID的 CorrelationData，Broker nack 或消息被退回（无法路由）时向发送者回执失败
+ */
+@Service
+public class ChatMessagePublisherImpl implements ChatMessagePublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessagePublisherImpl.class);
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+
+    @Resource
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${chat.publisher.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.publisher.batch-size:100}")
+    private int batchSize;
+
+    private BlockingQueue<PendingPublish> pending;
+    private Thread drainer;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        pending = new ArrayBlockingQueue<>(queueCapacity);
+        drainer = new Thread(this::drainLoop, "chat-publisher");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        drainer.interrupt();
+        try {
+            drainer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前把剩余消息发布出去
+        List<PendingPublish> remaining = new ArrayList<>();
+        pending.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            publishBatch(remaining);
+        }
+    }
+
+    @Override
+    public void publish(String queue, ChatMessage message, String ackType) {
+        if (!pending.offer(new PendingPublish(queue, message, ackType))) {
+            // 队列已满说明 Broker 持续不可用或发布严重积压，直接失败，避免拖住入站线程
+            logger.warn("消息发布队列已满，拒绝发布: queue={}, tempId={}", queue, message.getTempId());
+            sendFailureAck(message, ackType, "服务繁忙，请稍后重试");
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingPublish first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+                publishBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("消息发布线程发生未知错误", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publishBatch(List<PendingPublish> batch) {
+        try {
+            // 整批消息在同一个通道上发布，确认异步回到各自的 CorrelationData
+            rabbitTemplate.invoke(operations -> {
+                for (PendingPublish item : batch) {
+                    operations.convertAndSend("", item.queue, item.message, item.correlationData);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("批量发布消息失败: count={}", batch.size(), e);
+            for (PendingPublish item : batch) {
+                sendFailureAck(item.message, item.ackType, "消息发送失败: " + e.getMessage());
+            }
+            return;
+        }
+        for (PendingPublish item : batch) {
+            item.correlationData.getFuture().whenComplete((confirm, ex) -> {
+                if (ex != null || confirm == null || !confirm.isAck()) {
+                    String reason = ex != null ? ex.getMessage() : confirm != null ? confirm.getReason() : null;
+                    logger.warn("消息未被Broker确认: queue={}, tempId={}, reason={}",
+                            item.queue, item.message.getTempId(), reason);
+                    sendFailureAck(item.message, item.ackType, "消息发送失败");
+                } else if (item.correlationData.getReturned() != null) {
+                    // 确认成功但消息被退回：目标队列不存在，消息实际已丢失
+                    logger.warn("消息无法路由被退回: queue={}, tempId={}, replyText={}",
+                            item.queue, item.message.getTempId(), item.correlationData.getReturned().getReplyText());
+                    sendFailureAck(item.message, item.ackType, "消息发送失败");
+                }
+            });
+        }
+    }
+
+    private void sendFailureAck(ChatMessage message, String ackType, String error) {
+        if (message.getTempId() == null) {
+            return;
+        }
+        MessageAck ack = MessageAck.failure(message.getTempId(), error, ackType);
+        messagingTemplate.convertAndSendToUser(
+            message.getSenderId().toString(),
+            "/queue/message-ack",
+            ack
+        );
+    }
+
+    private static class PendingPublish {
+        private final String queue;
+        private final ChatMessage message;
+        private final String ackType;
+        private final CorrelationData correlationData;
+
+        PendingPublish(String queue, ChatMessage message, String ackType) {
+            this.queue = queue;
+            this.message = message;
+            this.ackType = ackType;
+            // 以 tempId 关联确认结果，没有 tempId 时使用预分配的消息ID
+            this.correlationData = new CorrelationData(
+                    message.getTempId() != null ? message.getTempId() : message.getId());
+        }
+    }
+}
@@ -8,7 +8,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
-import com.alibaba.fastjson2.JSON;
 import java.util.concurrent.TimeUnit;
 import java.util.List;
 import com.example.service.AccountService;
@@ -24,17 +23,27 @@ import com.example.entity.dto.PrivateChatMessage;
 import com.example.mapper.Group_messageMapper;
 import com.example.utils.ConvertUtils;
 import java.util.ArrayList;
+import java.util.Comparator;
 import com.alibaba.fastjson2.*;
 import com.example.entity.vo.response.FriendsResponse;
 import com.example.entity.dto.Account;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Objects;
 import com.example.mapper.Private_messagesMapper;
 import com.example.entity.vo.response.ChatMessage;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import com.example.service.ChatCacheService;
 import com.example.service.OnlineStatusService;
+import com.example.service.IdGeneratorService;
+import com.example.service.ConversationBackfillService;
+import com.example.utils.ChatPartitionRouter;
+import org.springframework.dao.DuplicateKeyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.example.entity.vo.response.GroupHistoryPage;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 /**
  * 聊天服务实现类，使用Redis存储最近消息，可以根据需要扩展为数据库存储
@@ -63,6 +72,12 @@ public class ChatServiceImpl implements ChatService {
     private ChatCacheService chatCacheService;
     @Autowired
     private OnlineStatusService onlineStatusService;
+    @Autowired
+    private IdGeneratorService idGeneratorService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ConversationBackfillService conversationBackfillService;
 
     private static final Logger logger = LoggerFactory.getLogger(ChatServiceImpl.class);
 
@@ -76,8 +91,11 @@ public class ChatServiceImpl implements ChatService {
         Group_message dbMessage = null;
         try {
             // 步骤1：先保存到数据库（关键路径）
+            ensureMessageId(message);
             dbMessage = ConvertUtils.convertToGroupMessage(message);
+            long insertStart = System.nanoTime();
             group_messageMapper.insert(dbMessage);
+            recordInsertLatency("group", insertStart);
             logger.info("群组消息已保存到数据库: messageId={}, groupId={}, sender={}", 
                        dbMessage.getId(), message.getGroupId(), message.getSender());
             
@@ -85,6 +103,14 @@ public class ChatServiceImpl implements ChatService {
             asyncUpdateGroupMessageCache(dbMessage);
             return true;
             
+        } catch (DuplicateKeyException e) {
+            // ID在发布前已分配，主键冲突且已有记录就是这条消息时，说明之前的投递已保存过
+            if (!isSameGroupMessage(dbMessage)) {
+                return false;
+            }
+            // 之前的投递可能在写入缓存窗口前中断，ZADD 是幂等的，重新写入补上窗口
+            asyncUpdateGroupMessageCache(dbMessage);
+            return true;
         } catch (org.springframework.dao.DataAccessException e) {
             logger.error("群组消息数据库保存失败: groupId={}, sender={}", 
                         message.getGroupId(), message.getSender(), e);
@@ -102,8 +128,11 @@ public class ChatServiceImpl implements ChatService {
         Group_message dbMessage = null;
         try {
             // 步骤1：先保存到数据库
+            ensureMessageId(message);
             dbMessage = ConvertUtils.convertToGroupMessage(message);
+            long insertStart = System.nanoTime();
             group_messageMapper.insert(dbMessage);
+            recordInsertLatency("group", insertStart);
             logger.info("群组消息已保存到数据库: messageId={}, groupId={}, sender={}", 
                        dbMessage.getId(), message.getGroupId(), message.getSender());
             
@@ -111,6 +140,14 @@ public class ChatServiceImpl implements ChatService {
             asyncUpdateGroupMessageCache(dbMessage);
             return String.valueOf(dbMessage.getId());
             
+        } catch (DuplicateKeyException e) {
+            // ID在发布前已分配，主键冲突且已有记录就是这条消息时，说明之前的投递已保存过
+            if (!isSameGroupMessage(dbMessage)) {
+                return null;
+            }
+            // 之前的投递可能在写入缓存窗口前中断，ZADD 是幂等的，重新写入补上窗口
+            asyncUpdateGroupMessageCache(dbMessage);
+            return message.getId();
         } catch (org.springframework.dao.DataAccessException e) {
             logger.error("群组消息数据库保存失败: groupId={}, sender={}", 
                         message.getGroupId(), message.getSender(), e);
@@ -125,14 +162,48 @@ public class ChatServiceImpl implements ChatService {
         }
     }
 
+    @Override
+    public List<String> savePublicMessagesWithIds(List<ChatMessage> messages) {
+        List<String> savedIds = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return savedIds;
+        }
+        messages.forEach(this::ensureMessageId);
+        List<Group_message> dbMessages = messages.stream()
+                .map(ConvertUtils::convertToGroupMessage)
+                .collect(Collectors.toList());
+        try {
+            // 一条多行INSERT写入整批消息，只付出一次数据库往返和一次提交
+            long insertStart = System.nanoTime();
+            group_messageMapper.insertBatch(dbMessages);
+            recordInsertLatency("group", insertStart);
+            logger.info("群组消息批量保存到数据库: count={}", dbMessages.size());
+        } catch (org.springframework.dao.DataAccessException e) {
+            // 整批失败时逐条降级保存，避免单条异常数据拖垮整个批次
+            logger.error("群组消息批量保存失败，降级为逐条保存: count={}", messages.size(), e);
+            for (ChatMessage message : messages) {
+                savedIds.add(savePublicMessageWithId(message));
+            }
+            return savedIds;
+        }
+        for (Group_message dbMessage : dbMessages) {
+            asyncUpdateGroupMessageCache(dbMessage);
+            savedIds.add(dbMessage.getId() != null ? String.valueOf(dbMessage.getId()) : null);
+        }
+        return savedIds;
+    }
+
     @Override
     public boolean savePrivateMessage(ChatMessage message) {
         // P0优化：精确异常处理，分离数据库和缓存操作
         PrivateChatMessage dbMessage = null;
         try {
             // 步骤1：先保存到数据库（关键路径）
+            ensureMessageId(message);
             dbMessage = ConvertUtils.convertToPrivateChatMessage(message);
+            long insertStart = System.nanoTime();
             privateMessageMapper.insert(dbMessage);
+            recordInsertLatency("private", insertStart);
             logger.info("私聊消息已保存到数据库: messageId={}, from={}, to={}", 
                        dbMessage.getId(), message.getSenderId(), message.getReceiverId());
             
@@ -140,6 +211,9 @@ public class ChatServiceImpl implements ChatService {
             asyncUpdatePrivateMessageCache(message, dbMessage.getId());
             return true;
             
+        } catch (DuplicateKeyException e) {
+            // ID在发布前已分配，主键冲突且已有记录就是这条消息时，说明之前的投递已保存过
+            return isSamePrivateMessage(dbMessage);
         } catch (org.springframework.dao.DataAccessException e) {
             logger.error("私聊消息数据库保存失败: from={}, to={}", 
                         message.getSenderId(), message.getReceiverId(), e);
@@ -157,8 +231,11 @@ public class ChatServiceImpl implements ChatService {
         PrivateChatMessage dbMessage = null;
         try {
             // 步骤1：先保存到数据库
+            ensureMessageId(message);
             dbMessage = ConvertUtils.convertToPrivateChatMessage(message);
+            long insertStart = System.nanoTime();
             privateMessageMapper.insert(dbMessage);
+            recordInsertLatency("private", insertStart);
             logger.info("私聊消息已保存到数据库: messageId={}, from={}, to={}", 
                        dbMessage.getId(), message.getSenderId(), message.getReceiverId());
             
@@ -166,6 +243,9 @@ public class ChatServiceImpl implements ChatService {
             asyncUpdatePrivateMessageCache(message, dbMessage.getId());
             return String.valueOf(dbMessage.getId());
             
+        } catch (DuplicateKeyException e) {
+            // ID在发布前已分配，主键冲突且已有记录就是这条消息时，说明之前的投递已保存过
+            return isSamePrivateMessage(dbMessage) ? message.getId() : null;
         } catch (org.springframework.dao.DataAccessException e) {
             logger.error("私聊消息数据库保存失败: from={}, to={}", 
                         message.getSenderId(), message.getReceiverId(), e);
@@ -180,17 +260,116 @@ public class ChatServiceImpl implements ChatService {
         }
     }
     
+    @Override
+    public List<String> savePrivateMessagesWithIds(List<ChatMessage> messages) {
+        List<String> savedIds = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return savedIds;
+        }
+        messages.forEach(this::ensureMessageId);
+        List<PrivateChatMessage> dbMessages = messages.stream()
+                .map(ConvertUtils::convertToPrivateChatMessage)
+                .collect(Collectors.toList());
+        try {
+            // 一条多行INSERT写入整批消息，只付出一次数据库往返和一次提交
+            long insertStart = System.nanoTime();
+            privateMessageMapper.insertBatch(dbMessages);
+            recordInsertLatency("private", insertStart);
+            logger.info("私聊消息批量保存到数据库: count={}", dbMessages.size());
+        } catch (org.springframework.dao.DataAccessException e) {
+            // 整批失败时逐条降级保存，避免单条异常数据拖垮整个批次
+            logger.error("私聊消息批量保存失败，降级为逐条保存: count={}", messages.size(), e);
+            for (ChatMessage message : messages) {
+                savedIds.add(savePrivateMessageWithId(message));
+            }
+            return savedIds;
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Long id = dbMessages.get(i).getId();
+            asyncUpdatePrivateMessageCache(messages.get(i), id);
+            savedIds.add(String.valueOf(id));
+        }
+        return savedIds;
+    }
+
+    /**
+     * 记录一次成功写库的耗时，供监听容器自适应调节使用
+     */
+    private void recordInsertLatency(String type, long startNanos) {
+        meterRegistry.timer(INSERT_LATENCY_METRIC, "type", type)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 兼容未经过 ChatController 的消息（如旧队列中的残留消息），入库前补齐消息ID
+     */
+    private void ensureMessageId(ChatMessage message) {
+        if (message.getId() == null || message.getId().isEmpty()) {
+            message.setId(String.valueOf(idGeneratorService.nextId()));
+        }
+    }
+
+    /**
+     * 主键冲突时核对已有记录：发送者、群组、序号和内容都一致才是同一条消息的重复投递；
+     * 否则是两条不同的消息撞了ID，不能当作保存成功，否则新消息会被确认后丢失
+     */
+    private boolean isSameGroupMessage(Group_message incoming) {
+        Group_message existing;
+        try {
+            existing = group_messageMapper.selectById(incoming.getId());
+        } catch (org.springframework.dao.DataAccessException e) {
+            logger.error("主键冲突后读取已有消息失败: messageId={}", incoming.getId(), e);
+            return false;
+        }
+        boolean same = existing != null
+                && Objects.equals(existing.getSenderId(), incoming.getSenderId())
+                && Objects.equals(existing.getGroupId(), incoming.getGroupId())
+                && Objects.equals(existing.getSeq(), incoming.getSeq())
+                && Objects.equals(existing.getContent(), incoming.getContent());
+        if (same) {
+            logger.info("群组消息已存在，视为保存成功: messageId={}", incoming.getId());
+        } else {
+            logger.error("群组消息ID冲突，已有记录不是同一条消息: messageId={}, groupId={}, sender={}",
+                    incoming.getId(), incoming.getGroupId(), incoming.getSenderId());
+        }
+        return same;
+    }
+
+    /**
+     * 同 {@link #isSameGroupMessage}，按发送者、接收者、序号和内容核对私聊消息
+     */
+    private boolean isSamePrivateMessage(PrivateChatMessage incoming) {
+        PrivateChatMessage existing;
+        try {
+            existing = privateMessageMapper.selectById(incoming.getId());
+        } catch (org.springframework.dao.DataAccessException e) {
+            logger.error("主键冲突后读取已有消息失败: messageId={}", incoming.getId(), e);
+            return false;
+        }
+        boolean same = existing != null
+                && existing.getSenderId() == incoming.getSenderId()
+                && existing.getReceiverId() == incoming.getReceiverId()
+                && Objects.equals(existing.getSeq(), incoming.getSeq())
+                && Objects.equals(existing.getContent(), incoming.getContent());
+        if (same) {
+            logger.info("私聊消息已存在，视为保存成功: messageId={}", incoming.getId());
+        } else {
+            logger.error("私聊消息ID冲突，已有记录不是同一条消息: messageId={}, from={}, to={}",
+                    incoming.getId(), incoming.getSenderId(), incoming.getReceiverId());
+        }
+        return same;
+    }
+
     /**
      * 异步更新群组消息缓存
      */
     private void asyncUpdateGroupMessageCache(Group_message dbMessage) {
         try {
-            String messageJson = JSON.toJSONString(dbMessage);
-            chatCacheService.cacheGroupMessage(dbMessage.getGroupId(), messageJson);
+            chatCacheService.cacheGroupMessage(dbMessage);
             logger.debug("群组消息缓存更新成功: messageId={}", dbMessage.getId());
         } catch (Exception e) {
+            // 缓存服务已作废该群的窗口，下次读取从数据库重新填充
             logger.warn("群组消息缓存更新失败，但消息已保存: messageId={}", dbMessage.getId(), e);
-            // 可以考虑加入重试队列或者触发缓存重建任务
         }
     }
     
@@ -223,24 +402,20 @@ public class ChatServiceImpl implements ChatService {
         List<Friends> friendsList = getFriendsByUserId(userId);
         System.out.println("用户" + userId + "的好友列表：" + friendsList);
         if (friendsList != null && !friendsList.isEmpty()) {
-                friendsResponseList = friendsList.stream()
-                    .map(friend -> {
-                        FriendsResponse response = ConvertUtils.convertToFriendsResponse(friend, accountService);
-                        
-                        // 获取好友ID
-                        String friendId;
-                        if (userId.equals(response.getFirstUserId())) {
-                            friendId = response.getSecondUserId();
-                        } else {
-                            friendId = response.getFirstUserId();
-                        }
-                        
-                        // 查询在线状态
-                        response.setOnline(onlineStatusService.isOnline(friendId));
-                        
-                        return response;
-                    })
-                    .collect(Collectors.toList());  
+                // 用户名一次批量查询
+                friendsResponseList = ConvertUtils.convertToFriendsResponses(friendsList, accountService);
+                for (FriendsResponse response : friendsResponseList) {
+                    // 获取好友ID
+                    String friendId;
+                    if (userId.equals(response.getFirstUserId())) {
+                        friendId = response.getSecondUserId();
+                    } else {
+                        friendId = response.getFirstUserId();
+                    }
+                    
+                    // 查询在线状态
+                    response.setOnline(onlineStatusService.isOnline(friendId));
+                }
         }
         return friendsResponseList != null ? friendsResponseList : new ArrayList<>(); // 保证始终返回 List
     }
@@ -250,9 +425,7 @@ public class ChatServiceImpl implements ChatService {
         List<FriendsResponse> friendsResponseList = new ArrayList<>();
         List<Friends> friendsList = getFriendRequestsByUserId(userId);
         if (friendsList != null && !friendsList.isEmpty()) {
-            friendsResponseList = friendsList.stream()
-                .map(friend -> ConvertUtils.convertToFriendsResponse(friend, accountService))
-                .collect(Collectors.toList());  
+            friendsResponseList = ConvertUtils.convertToFriendsResponses(friendsList, accountService);
         }
         return friendsResponseList != null ? friendsResponseList : new ArrayList<>(); // 保证始终返回 List
     }
@@ -522,32 +695,28 @@ public class ChatServiceImpl implements ChatService {
     @Override
     public List<PrivateChatMessage> getPrivateChatHistoryByUserIdAndFriendId(int userId, int friendId, int limit, String oldestMessageId) {
         try {
-            //直接从数据库中获取私聊消息
-            int id = Integer.parseInt(oldestMessageId);
-            List<PrivateChatMessage> privateChatMessages = privateMessageMapper.selectList(
-                Wrappers.<PrivateChatMessage>lambdaQuery()
-                    // 条件1：A发给B的消息
-                    .and(wq -> wq
-                        .eq(PrivateChatMessage::getSenderId, userId)
-                        .eq(PrivateChatMessage::getReceiverId, friendId)
-                    )
-                    // 条件2：或B发给A的消息
-                    .or(wq -> wq
-                        .eq(PrivateChatMessage::getSenderId, friendId)
-                        .eq(PrivateChatMessage::getReceiverId, userId)
-                    )
+            //直接从数据库中获取私聊消息，按ID做键集分页：id < oldestMessageId ORDER BY id DESC LIMIT n
+            long id = Long.parseLong(oldestMessageId);
+            LambdaQueryWrapper<PrivateChatMessage> query = Wrappers.lambdaQuery();
+            if (conversationBackfillService.isComplete()) {
+                // 会话ID回填完成后，直接在 (conversation_id, id) 索引上做一次范围扫描
+                query.eq(PrivateChatMessage::getConversationId, ChatPartitionRouter.dialogId(userId, friendId));
+            } else {
+                // 回填完成前仍按收发双方过滤：A发给B 或 B发给A
+                query.and(wq -> wq
+                        .nested(a -> a
+                                .eq(PrivateChatMessage::getSenderId, userId)
+                                .eq(PrivateChatMessage::getReceiverId, friendId))
+                        .or(b -> b
+                                .eq(PrivateChatMessage::getSenderId, friendId)
+                                .eq(PrivateChatMessage::getReceiverId, userId)));
+            }
+            return privateMessageMapper.selectList(query
                     // 只查询比oldestMessageId更早的消息
                     .lt(PrivateChatMessage::getId, id)
-                    // 按创建时间降序
-                    .orderByDesc(PrivateChatMessage::getCreatedAt)
-                    // 限制条数
-                    .last("LIMIT " + limit)
-            );
-            if(privateChatMessages.size() < limit){
-                return privateChatMessages;
-            }
-            privateChatMessages = privateChatMessages.subList(0, limit);
-            return privateChatMessages;
+                    // ID趋势递增，按ID降序即按时间降序
+                    .orderByDesc(PrivateChatMessage::getId)
+                    .last("LIMIT " + limit));
         } catch (Exception e) {
             logger.error("获取私聊消息失败", e);
             return new ArrayList<>();
@@ -560,6 +729,93 @@ public class ChatServiceImpl implements ChatService {
         return chatCacheService.getGroupChatHistory(groupId, limit);
     }
 
+    @Override
+    public List<Group_message> getGroupChatHistoryBySeq(String groupId, long fromSeq, long toSeq) {
+        return chatCacheService.getGroupChatHistoryBySeq(groupId, fromSeq, toSeq);
+    }
+
+    @Override
+    public List<PrivateChatMessage> getPrivateChatHistoryBySeq(int userId, int friendId, long fromSeq, long toSeq) {
+        try {
+            // 带序号的消息都是新写入的，一定带有会话ID，直接走 (conversation_id, seq) 索引
+            return privateMessageMapper.selectList(
+                    Wrappers.<PrivateChatMessage>lambdaQuery()
+                            .eq(PrivateChatMessage::getConversationId, ChatPartitionRouter.dialogId(userId, friendId))
+                            .between(PrivateChatMessage::getSeq, fromSeq, toSeq)
+                            .orderByAsc(PrivateChatMessage::getSeq));
+        } catch (Exception e) {
+            logger.error("按序号获取私聊消息失败: userId={}, friendId={}", userId, friendId, e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public List<Group_message> getGroupChatHistoryAfter(String groupId, long afterId, int limit) {
+        return chatCacheService.getGroupChatHistoryAfter(groupId, afterId, limit);
+    }
+
+    @Override
+    public List<PrivateChatMessage> getPrivateChatHistoryAfter(int userId, long afterId, int limit) {
+        try {
+            // 发送和接收分别走 sender_id / receiver_id 索引（二级索引隐含主键，id 范围扫描有序），再合并取前 limit 条
+            List<PrivateChatMessage> messages = new ArrayList<>(privateMessageMapper.selectList(
+                Wrappers.<PrivateChatMessage>lambdaQuery()
+                    .eq(PrivateChatMessage::getSenderId, userId)
+                    .gt(PrivateChatMessage::getId, afterId)
+                    .orderByAsc(PrivateChatMessage::getId)
+                    .last("LIMIT " + limit)
+            ));
+            messages.addAll(privateMessageMapper.selectList(
+                Wrappers.<PrivateChatMessage>lambdaQuery()
+                    .eq(PrivateChatMessage::getReceiverId, userId)
+                    .ne(PrivateChatMessage::getSenderId, userId)
+                    .gt(PrivateChatMessage::getId, afterId)
+                    .orderByAsc(PrivateChatMessage::getId)
+                    .last("LIMIT " + limit)
+            ));
+            messages.sort(Comparator.comparing(PrivateChatMessage::getId));
+            return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+        } catch (Exception e) {
+            logger.error("增量获取私聊消息失败: userId={}, afterId={}", userId, afterId, e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public GroupHistoryPage getGroupChatHistoryPage(String groupId, Long beforeId, String cursor, int limit) {
+        if (cursor != null && !cursor.isEmpty()) {
+            beforeId = decodeHistoryCursor(cursor);
+        }
+        // 多取一条用于判断是否还有更早的消息
+        List<Group_message> messages = chatCacheService.getGroupChatHistoryBefore(groupId, beforeId, limit + 1);
+        boolean hasMore = messages.size() > limit;
+        if (hasMore) {
+            // 结果按ID升序排列，多出的一条是最早的那条
+            messages = new ArrayList<>(messages.subList(1, messages.size()));
+        }
+
+        GroupHistoryPage page = new GroupHistoryPage();
+        page.setMessages(messages);
+        page.setHasMore(hasMore);
+        page.setNextCursor(hasMore && !messages.isEmpty() ? encodeHistoryCursor(messages.get(0).getId()) : null);
+        return page;
+    }
+
+    /**
+     * 游标对客户端不透明，内容为本页最早一条消息的ID
+     */
+    private static String encodeHistoryCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Long decodeHistoryCursor(String cursor) {
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
     @Override
     public boolean removeFriend(int userId1, int userId2) {
         try {
@@ -0,0 +1,360 @@
+package com.example.service.impl;
+
+import com.example.entity.dto.Group_member;
+import com.example.entity.dto.Group_message;
+import com.example.entity.dto.PrivateChatMessage;
+import com.example.entity.vo.request.SyncRequest;
+import com.example.entity.vo.response.FriendsResponse;
+import com.example.entity.vo.response.PrivateMessageView;
+import com.example.entity.vo.response.SyncResponse;
+import com.example.service.AccountService;
+import com.example.service.ChatService;
+import com.example.service.ChatSyncService;
+import com.example.service.IdGeneratorService;
+import com.example.utils.ConvertUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 增量同步实现
+ * 消息按会话高水位增量查询（群聊优先读 Redis 窗口），某个会话积压超过上限时改为返回最新一页并标记替换，
+ * 避免长时间离线的客户端一次拉取过多历史；实体列表按摘要比对，未变化时不返回。
+ * 好友、好友请求、群组、私聊和每个群的消息相互独立，在有界线程池上并行加载，整体耗时接近最慢的单个查询；
+ * 超过请求截止时间仍未完成的分段记录在 partialSections 中，并回传客户端原有的高水位/摘要，客户端保留本地数据。
+ * 消息ID在入库前分配，经重试队列、Streams 重投等路径的消息会晚于ID更大的消息入库，
+ * 因此返回的高水位不超过 chat.sync.settle-millis 之前的ID，窗口内的消息下次同步重复下发，由客户端按ID去重
+ */
+@Service
+public class ChatSyncServiceImpl implements ChatSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSyncServiceImpl.class);
+
+    // 分段名称
+    private static final String SECTION_FRIENDS = "friends";
+    private static final String SECTION_FRIEND_REQUESTS = "friendRequests";
+    private static final String SECTION_GROUPS = "groups";
+    private static final String SECTION_GROUP_MESSAGES = "groupMessages";
+    private static final String SECTION_PRIVATE_MESSAGES = "privateMessages";
+
+    @Resource
+    private ChatService chatService;
+
+    @Resource
+    private AccountService accountService;
+
+    @Resource
+    private IdGeneratorService idGeneratorService;
+
+    // 每个会话单次同步返回的最大消息数
+    @Value("${chat.sync.max-messages:100}")
+    private int maxMessages;
+
+    // 单次同步的截止时间，超时的分段标记为不完整后直接返回
+    @Value("${chat.sync.deadline-ms:2000}")
+    private long deadlineMs;
+
+    // 并行加载线程数，所有请求共享
+    @Value("${chat.sync.pool-size:32}")
+    private int poolSize;
+
+    // 等待队列容量，队列满时由请求线程自己执行（退化为串行，不丢任务）
+    @Value("${chat.sync.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 高水位回退窗口：比该时长更新的消息可能还有更小ID的消息尚未入库，高水位不越过这段时间
+    @Value("${chat.sync.settle-millis:60000}")
+    private long settleMillis;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "chat-sync-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 单个会话的增量结果
+    private record MessageDelta<T>(List<T> messages, boolean reset) {
+    }
+
+    @Override
+    public SyncResponse sync(String userId, String username, SyncRequest request) {
+        if (request == null || !userId.equals(request.getUserId())) {
+            // 首次加载，或高水位属于其他用户（同一浏览器切换账号），按全量处理
+            request = new SyncRequest();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        int uid = Integer.parseInt(userId);
+        Map<String, String> groupMarks = request.getGroupAfterIds() != null
+                ? request.getGroupAfterIds() : Collections.emptyMap();
+        Long privateAfterId = parseMark(request.getPrivateAfterId());
+        // 本次可返回的最大高水位
+        long settledMark = idGeneratorService.minIdAt(System.currentTimeMillis() - settleMillis) - 1;
+
+        // 1. 相互独立的查询同时发起
+        CompletableFuture<List<FriendsResponse>> friendsFuture = submit(() -> chatService.getFriends(userId));
+        CompletableFuture<List<FriendsResponse>> friendRequestsFuture = submit(() -> chatService.getFriendRequests(userId));
+        CompletableFuture<List<Group_member>> groupsFuture = submit(() -> chatService.getGroups(userId));
+        CompletableFuture<MessageDelta<PrivateChatMessage>> privateFuture = submit(() -> loadPrivateDelta(uid, privateAfterId));
+
+        // 2. 群列表返回后为每个群发起消息查询
+        List<Group_member> groups = await(groupsFuture, deadline, SECTION_GROUPS);
+        Map<String, CompletableFuture<MessageDelta<Group_message>>> groupFutures = new LinkedHashMap<>();
+        if (groups != null) {
+            for (Group_member group : groups) {
+                String groupId = group.getGroupId();
+                Long afterId = parseMark(groupMarks.get(groupId));
+                groupFutures.put(groupId, submit(() -> loadGroupDelta(groupId, afterId)));
+            }
+        }
+
+        // 3. 按截止时间收集结果
+        SyncResponse response = new SyncResponse();
+        response.setUserId(userId);
+        response.setUsername(username);
+        List<String> partialSections = new ArrayList<>();
+
+        List<FriendsResponse> friends = await(friendsFuture, deadline, SECTION_FRIENDS);
+        if (friends == null) {
+            partialSections.add(SECTION_FRIENDS);
+            response.setFriendsDigest(request.getFriendsDigest());
+        } else {
+            response.setFriendsDigest(friendsDigest(friends));
+            if (!response.getFriendsDigest().equals(request.getFriendsDigest())) {
+                response.setFriends(friends);
+            }
+        }
+
+        List<FriendsResponse> friendRequests = await(friendRequestsFuture, deadline, SECTION_FRIEND_REQUESTS);
+        if (friendRequests == null) {
+            partialSections.add(SECTION_FRIEND_REQUESTS);
+            response.setFriendRequestsDigest(request.getFriendRequestsDigest());
+        } else {
+            response.setFriendRequestsDigest(friendsDigest(friendRequests));
+            if (!response.getFriendRequestsDigest().equals(request.getFriendRequestsDigest())) {
+                response.setFriendRequests(friendRequests);
+            }
+        }
+
+        if (groups == null) {
+            partialSections.add(SECTION_GROUPS);
+            response.setGroupsDigest(request.getGroupsDigest());
+        } else {
+            response.setGroupsDigest(digest(groups.stream()
+                    .map(g -> g.getGroupId() + "|" + g.getGroupName() + "|" + g.getRole())));
+            if (!response.getGroupsDigest().equals(request.getGroupsDigest())) {
+                response.setGroups(groups);
+            }
+        }
+
+        collectGroupMessages(groups, groupFutures, groupMarks, settledMark, deadline, response, partialSections);
+        collectPrivateMessages(privateFuture, request.getPrivateAfterId(), settledMark, deadline, response, partialSections);
+
+        response.setPartialSections(partialSections);
+        if (!partialSections.isEmpty()) {
+            logger.warn("增量同步未在截止时间内完成: userId={}, partialSections={}, incompleteGroups={}",
+                    userId, partialSections, response.getIncompleteGroups());
+        }
+        return response;
+    }
+
+    private void collectGroupMessages(List<Group_member> groups,
+                                      Map<String, CompletableFuture<MessageDelta<Group_message>>> groupFutures,
+                                      Map<String, String> groupMarks, long settledMark, long deadline,
+                                      SyncResponse response, List<String> partialSections) {
+        Map<String, List<Group_message>> groupMessages = new HashMap<>();
+        List<String> resetGroups = new ArrayList<>();
+        List<String> incompleteGroups = new ArrayList<>();
+        Map<String, String> highWaterMarks = new HashMap<>();
+
+        if (groups == null) {
+            // 群列表未加载完成，无法确定需要同步的群，原样保留客户端的高水位
+            partialSections.add(SECTION_GROUP_MESSAGES);
+            highWaterMarks.putAll(groupMarks);
+        } else {
+            for (Map.Entry<String, CompletableFuture<MessageDelta<Group_message>>> entry : groupFutures.entrySet()) {
+                String groupId = entry.getKey();
+                MessageDelta<Group_message> delta = await(entry.getValue(), deadline, SECTION_GROUP_MESSAGES);
+                if (delta == null) {
+                    incompleteGroups.add(groupId);
+                    if (groupMarks.get(groupId) != null) {
+                        highWaterMarks.put(groupId, groupMarks.get(groupId));
+                    }
+                    continue;
+                }
+
+                Long highWaterMark = parseMark(groupMarks.get(groupId));
+                for (Group_message message : delta.messages()) {
+                    ConvertUtils.fillGroupMessageType(message);
+                    if (highWaterMark == null || message.getId() > highWaterMark) {
+                        highWaterMark = message.getId();
+                    }
+                }
+                if (!delta.messages().isEmpty()) {
+                    groupMessages.put(groupId, delta.messages());
+                }
+                if (delta.reset()) {
+                    resetGroups.add(groupId);
+                }
+                highWaterMark = holdBack(highWaterMark, settledMark);
+                if (highWaterMark != null) {
+                    highWaterMarks.put(groupId, String.valueOf(highWaterMark));
+                }
+            }
+            if (!incompleteGroups.isEmpty()) {
+                partialSections.add(SECTION_GROUP_MESSAGES);
+            }
+        }
+
+        response.setGroupMessages(groupMessages);
+        response.setResetGroups(resetGroups);
+        response.setIncompleteGroups(incompleteGroups);
+        response.setGroupHighWaterMarks(highWaterMarks);
+    }
+
+    private void collectPrivateMessages(CompletableFuture<MessageDelta<PrivateChatMessage>> privateFuture,
+                                        String privateMark, long settledMark, long deadline,
+                                        SyncResponse response, List<String> partialSections) {
+        MessageDelta<PrivateChatMessage> delta = await(privateFuture, deadline, SECTION_PRIVATE_MESSAGES);
+        if (delta == null) {
+            partialSections.add(SECTION_PRIVATE_MESSAGES);
+            response.setPrivateMessages(new ArrayList<>());
+            response.setPrivateReset(false);
+            response.setPrivateHighWaterMark(privateMark);
+            return;
+        }
+
+        Long highWaterMark = parseMark(privateMark);
+        for (PrivateChatMessage message : delta.messages()) {
+            if (highWaterMark == null || message.getId() > highWaterMark) {
+                highWaterMark = message.getId();
+            }
+        }
+        highWaterMark = holdBack(highWaterMark, settledMark);
+        List<PrivateMessageView> views = ConvertUtils.convertToPrivateMessageViews(delta.messages(), accountService);
+        response.setPrivateMessages(views);
+        response.setPrivateReset(delta.reset());
+        response.setPrivateHighWaterMark(highWaterMark != null ? String.valueOf(highWaterMark) : null);
+    }
+
+    private MessageDelta<Group_message> loadGroupDelta(String groupId, Long afterId) {
+        if (afterId != null) {
+            // 多取一条，用于判断积压是否超过上限
+            List<Group_message> messages = chatService.getGroupChatHistoryAfter(groupId, afterId, maxMessages + 1);
+            if (messages.size() <= maxMessages) {
+                return new MessageDelta<>(messages, false);
+            }
+        }
+        return new MessageDelta<>(chatService.getGroupChatHistoryByGroupId(groupId, maxMessages), true);
+    }
+
+    private MessageDelta<PrivateChatMessage> loadPrivateDelta(int userId, Long afterId) {
+        if (afterId != null) {
+            List<PrivateChatMessage> messages = chatService.getPrivateChatHistoryAfter(userId, afterId, maxMessages + 1);
+            if (messages.size() <= maxMessages) {
+                return new MessageDelta<>(messages, false);
+            }
+        }
+        return new MessageDelta<>(chatService.getPrivateChatHistory(userId, maxMessages), true);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> loader) {
+        return CompletableFuture.supplyAsync(loader, executor);
+    }
+
+    /**
+     * 在截止时间内等待结果，超时或失败返回 null（任务继续在后台完成，结果丢弃）
+     */
+    private <T> T await(CompletableFuture<T> future, long deadline, String section) {
+        long remaining = deadline - System.nanoTime();
+        try {
+            if (remaining <= 0) {
+                return future.getNow(null);
+            }
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            logger.error("增量同步加载失败: section={}", section, e);
+            return null;
+        }
+    }
+
+    /**
+     * 解析客户端回传的高水位，格式不正确时视为没有高水位
+     */
+    private static Long parseMark(String mark) {
+        if (mark == null || mark.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(mark);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 高水位不越过 settledMark，之后才入库的较小ID消息在下次同步时仍会被查到
+     */
+    private static Long holdBack(Long mark, long settledMark) {
+        return mark != null && mark > settledMark ? settledMark : mark;
+    }
+
+    /**
+     * 好友列表摘要只覆盖好友关系本身；在线状态由 /user/queue/online 实时推送，
+     * 若计入摘要，好友上下线都会让整份列表在下次同步时重新下发
+     */
+    private static String friendsDigest(List<FriendsResponse> friends) {
+        return digest(friends.stream()
+                .map(f -> f.getFirstUserId() + "|" + f.getSecondUserId() + "|" + f.getFirstUsername() + "|"
+                        + f.getSecondUsername() + "|" + f.getStatus()));
+    }
+
+    /**
+     * 与顺序无关的列表摘要
+     */
+    private static String digest(Stream<String> entries) {
+        String joined = entries.sorted().collect(Collectors.joining("\n"));
+        return DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.service.impl;
+
+import com.example.mapper.Private_messagesMapper;
+import com.example.service.ConversationBackfillService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 私聊消息会话ID回填
+ * 每次调度只处理一批（默认500条），批次之间按固定间隔休眠，避免长事务和主从延迟；
+ * 通过 Redis 租约保证集群内同一时间只有一个节点在回填，全部完成后写入完成标记，各节点据此切换到新的查询方式
+ */
+@Service
+public class ConversationBackfillServiceImpl implements ConversationBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationBackfillServiceImpl.class);
+
+    private static final Duration LEASE_TTL = Duration.ofSeconds(60);
+
+    // 仅当租约仍归本节点所有时才释放
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """,
+            Long.class);
+
+    @Resource
+    private Private_messagesMapper privateMessageMapper;
+
+    @Resource
+    private RedisService redisService;
+
+    @Value("${chat.conversation-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.conversation-backfill.batch-size:500}")
+    private int batchSize;
+
+    // 本节点实例标识，作为租约的持有者凭证
+    private final String instanceToken = UUID.randomUUID().toString();
+
+    private volatile boolean complete = false;
+
+    @Override
+    public boolean isComplete() {
+        if (!complete && redisService.exists(RedisKeys.CONVERSATION_BACKFILL_DONE)) {
+            complete = true;
+        }
+        return complete;
+    }
+
+    @Override
+    public int backfillBatch() {
+        List<Long> ids = privateMessageMapper.selectIdsWithoutConversation(batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return privateMessageMapper.backfillConversationId(ids.get(0), ids.get(ids.size() - 1));
+    }
+
+    /**
+     * 定时回填，每次只执行一批
+     */
+    @Scheduled(initialDelay = 30000, fixedDelayString = "${chat.conversation-backfill.interval-millis:1000}")
+    public void scheduledBackfill() {
+        if (!enabled || isComplete()) {
+            return;
+        }
+        if (!redisService.setIfAbsent(RedisKeys.CONVERSATION_BACKFILL_LEASE, instanceToken, LEASE_TTL)) {
+            return;
+        }
+        try {
+            int updated = backfillBatch();
+            if (updated == 0 && privateMessageMapper.selectIdsWithoutConversation(1).isEmpty()) {
+                redisService.set(RedisKeys.CONVERSATION_BACKFILL_DONE, "1", null);
+                complete = true;
+                logger.info("私聊消息会话ID回填完成");
+            } else {
+                logger.debug("私聊消息会话ID回填一批: {} 行", updated);
+            }
+        } catch (Exception e) {
+            logger.error("私聊消息会话ID回填失败", e);
+        } finally {
+            redisService.executeScript(RELEASE_LEASE_SCRIPT,
+                    List.of(RedisKeys.CONVERSATION_BACKFILL_LEASE), instanceToken);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.service.impl;
+
+import com.example.service.DistributedLockService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Redis 分布式锁实现
+ * 加锁、续期、释放、带令牌写入各是一段 Lua 脚本，保证“检查凭证 + 操作”的原子性
+ */
+@Service
+public class DistributedLockServiceImpl implements DistributedLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedLockServiceImpl.class);
+
+    // 防护令牌计数器的有效期，每次加锁刷新；过期重置后令牌从 1 重新开始，此时旧持有者早已失去锁
+    private static final Duration FENCE_TTL = Duration.ofDays(1);
+
+    // 加锁成功返回新的防护令牌，失败返回 0
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+                local fence = redis.call('INCR', KEYS[2])
+                redis.call('PEXPIRE', KEYS[2], ARGV[3])
+                return fence
+            end
+            return 0
+            """,
+            Long.class);
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """,
+            Long.class);
+
+    // 仅当锁仍归本持有者所有时才释放
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """,
+            Long.class);
+
+    // 令牌不小于已写入的最大令牌时才写入，并推进已写入令牌
+    private static final RedisScript<Long> FENCED_SET_SCRIPT = new DefaultRedisScript<>(
+            """
+            local applied = tonumber(redis.call('GET', KEYS[2]) or '0')
+            if tonumber(ARGV[1]) < applied then
+                return 0
+            end
+            redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[4])
+            redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """,
+            Long.class);
+
+    @Resource
+    private RedisService redisService;
+
+    // 看门狗续期线程数；续期只执行一次 Lua 脚本，少量线程即可
+    @Value("${cache.lock.watchdog-pool-size:2}")
+    private int watchdogPoolSize;
+
+    // 看门狗专用调度器：共享调度器被定时任务或心跳占满时续期会延后，锁在持有期间过期
+    private ThreadPoolTaskScheduler watchdogScheduler;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 持有者凭证 -> 看门狗续期任务
+    private final Map<String, ScheduledFuture<?>> watchdogs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        watchdogScheduler = new ThreadPoolTaskScheduler();
+        watchdogScheduler.setPoolSize(watchdogPoolSize);
+        watchdogScheduler.setThreadNamePrefix("lock-watchdog-");
+        watchdogScheduler.setDaemon(true);
+        watchdogScheduler.initialize();
+    }
+
+    @Override
+    public Lock tryLock(String name, Duration lease) {
+        String owner = nodeId + ":" + UUID.randomUUID();
+        Long fence = redisService.executeScript(ACQUIRE_SCRIPT,
+                List.of(RedisKeys.DISTRIBUTED_LOCK + name, RedisKeys.DISTRIBUTED_LOCK_FENCE + name),
+                owner, String.valueOf(lease.toMillis()), String.valueOf(FENCE_TTL.toMillis()));
+        if (fence == null || fence == 0L) {
+            return null;
+        }
+        Lock lock = new Lock(name, owner, fence);
+        Duration period = Duration.ofMillis(Math.max(100, lease.toMillis() / 3));
+        watchdogs.put(owner, watchdogScheduler.scheduleWithFixedDelay(() -> renew(lock, lease), Instant.now().plus(period), period));
+        logger.debug("已获取分布式锁: {}, fencingToken={}", name, fence);
+        return lock;
+    }
+
+    @Override
+    public void unlock(Lock lock) {
+        if (lock == null) {
+            return;
+        }
+        stopWatchdog(lock);
+        Long released = redisService.executeScript(RELEASE_SCRIPT,
+                List.of(RedisKeys.DISTRIBUTED_LOCK + lock.name()), lock.owner());
+        if (released == null || released == 0L) {
+            logger.warn("释放分布式锁时锁已不属于本持有者: {}, fencingToken={}", lock.name(), lock.fencingToken());
+        }
+    }
+
+    @Override
+    public boolean fencedSet(Lock lock, String key, String value, Duration ttl) {
+        Long result = redisService.executeScript(FENCED_SET_SCRIPT,
+                List.of(key, RedisKeys.DISTRIBUTED_LOCK_FENCE_APPLIED + lock.name()),
+                String.valueOf(lock.fencingToken()), value,
+                String.valueOf(ttl.toMillis()), String.valueOf(FENCE_TTL.toMillis()));
+        if (result == null || result == 0L) {
+            logger.warn("防护令牌已落后，放弃写入: key={}, fencingToken={}", key, lock.fencingToken());
+            return false;
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdogs.values().forEach(future -> future.cancel(false));
+        watchdogs.clear();
+        watchdogScheduler.shutdown();
+    }
+
+    private void renew(Lock lock, Duration lease) {
+        Long renewed = redisService.executeScript(RENEW_SCRIPT,
+                List.of(RedisKeys.DISTRIBUTED_LOCK + lock.name()), lock.owner(), String.valueOf(lease.toMillis()));
+        if (renewed != null && renewed == 0L) {
+            // 锁已过期并可能被他人取得，停止续期；之后的 fencedSet 会因令牌落后被拒绝
+            logger.warn("分布式锁续期失败，锁已丢失: {}, fencingToken={}", lock.name(), lock.fencingToken());
+            stopWatchdog(lock);
+        }
+    }
+
+    private void stopWatchdog(Lock lock) {
+        ScheduledFuture<?> watchdog = watchdogs.remove(lock.owner());
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.entity.vo.response.MessageAck;
+import com.example.service.ChatService;
+import com.example.service.ChatTransport;
+import com.example.service.MessageWalService;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内传输通道（单节点部署）
+ * 使用 Disruptor 环形缓冲区代替 RabbitMQ：槽位对象在启动时预分配，发布时只写入引用，
+ * 单个消费线程按批次处理，批次结束（endOfBatch）或攒满 batchSize 时分别对群聊、私聊做一次多行INSERT。
+ * 单消费线程天然保证同一对话内的消息顺序。进程崩溃时缓冲区内未入库的消息会丢失，多节点部署请使用 amqp 模式
+ */
+@Service
+@ConditionalOnProperty(name = "chat.transport.mode", havingValue = "embedded")
+public class EmbeddedChatTransport implements ChatTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddedChatTransport.class);
+
+    @Resource
+    private ChatService chatService;
+
+    @Resource
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private MessageWalService messageWalService;
+
+    // 环形缓冲区大小，必须是2的幂
+    @Value("${chat.transport.embedded.ring-size:8192}")
+    private int ringSize;
+
+    @Value("${chat.transport.embedded.batch-size:100}")
+    private int batchSize;
+
+    private Disruptor<ChatMessageEvent> disruptor;
+    private RingBuffer<ChatMessageEvent> ringBuffer;
+    private Timer persistLatency;
+
+    @PostConstruct
+    public void start() {
+        persistLatency = meterRegistry.timer(PERSIST_LATENCY_METRIC, "transport", "embedded");
+        disruptor = new Disruptor<>(ChatMessageEvent::new, ringSize, DaemonThreadFactory.INSTANCE,
+                ProducerType.MULTI, new BlockingWaitStrategy());
+        disruptor.handleEventsWith(new PersistHandler());
+        ringBuffer = disruptor.start();
+        logger.info("进程内聊天消息通道已启动: ringSize={}, batchSize={}", ringSize, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            // 等待缓冲区内的消息处理完毕后再关闭
+            disruptor.shutdown(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.error("进程内聊天消息通道关闭超时，可能有消息未入库", e);
+        }
+    }
+
+    @Override
+    public void sendGroupMessage(ChatMessage message) {
+        publish(message, false);
+    }
+
+    @Override
+    public void sendPrivateMessage(ChatMessage message) {
+        publish(message, true);
+    }
+
+    private void publish(ChatMessage message, boolean privateMessage) {
+        boolean published = ringBuffer.tryPublishEvent((event, sequence) -> {
+            event.message = message;
+            event.privateMessage = privateMessage;
+        });
+        if (!published) {
+            // 缓冲区已满说明数据库持续跟不上，直接回执失败，避免阻塞入站线程
+            logger.warn("进程内聊天消息通道已满，拒绝消息: tempId={}", message.getTempId());
+            sendAck(message, privateMessage, null, "服务繁忙，请稍后重试");
+        }
+    }
+
+    /**
+     * 批量入库处理器：事件先按类型暂存，批次结束或攒满后整批写库
+     */
+    private class PersistHandler implements EventHandler<ChatMessageEvent> {
+
+        private final List<ChatMessage> groupBatch = new ArrayList<>();
+        private final List<ChatMessage> privateBatch = new ArrayList<>();
+
+        @Override
+        public void onEvent(ChatMessageEvent event, long sequence, boolean endOfBatch) {
+            if (event.privateMessage) {
+                privateBatch.add(event.message);
+            } else {
+                groupBatch.add(event.message);
+            }
+            // 释放槽位对消息的引用，避免环形缓冲区长期持有已处理的消息
+            event.message = null;
+
+            if (groupBatch.size() >= batchSize || (endOfBatch && !groupBatch.isEmpty())) {
+                flush(groupBatch, false);
+            }
+            if (privateBatch.size() >= batchSize || (endOfBatch && !privateBatch.isEmpty())) {
+                flush(privateBatch, true);
+            }
+        }
+
+        private void flush(List<ChatMessage> batch, boolean privateMessage) {
+            // 降级期间、或入库失败且数据库不可达时写入本地预写日志，由后台回放入库
+            if (messageWalService.isDegraded() && messageWalService.append(batch, privateMessage)) {
+                ackAppended(batch, privateMessage);
+                return;
+            }
+            List<String> savedIds;
+            try {
+                savedIds = privateMessage
+                        ? chatService.savePrivateMessagesWithIds(batch)
+                        : chatService.savePublicMessagesWithIds(batch);
+            } catch (Exception e) {
+                logger.error("进程内通道批量入库失败: count={}", batch.size(), e);
+                if (messageWalService.appendIfDatabaseUnavailable(batch, privateMessage)) {
+                    ackAppended(batch, privateMessage);
+                    return;
+                }
+                for (ChatMessage message : batch) {
+                    sendAck(message, privateMessage, null, "处理消息时发生错误: " + e.getMessage());
+                }
+                batch.clear();
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                ChatMessage message = batch.get(i);
+                String savedId = savedIds.get(i);
+                if (savedId != null) {
+                    recordLatency(message);
+                    sendAck(message, privateMessage, savedId, null);
+                } else if (messageWalService.appendIfDatabaseUnavailable(Collections.singletonList(message), privateMessage)) {
+                    sendAck(message, privateMessage, message.getId(), null);
+                } else {
+                    sendAck(message, privateMessage, null, "数据库保存失败");
+                }
+            }
+            batch.clear();
+        }
+
+        private void ackAppended(List<ChatMessage> batch, boolean privateMessage) {
+            for (ChatMessage message : batch) {
+                sendAck(message, privateMessage, message.getId(), null);
+            }
+            batch.clear();
+        }
+    }
+
+    private void recordLatency(ChatMessage message) {
+        if (message.getTimestamp() != null) {
+            persistLatency.record(System.currentTimeMillis() - message.getTimestamp().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendAck(ChatMessage message, boolean privateMessage, String savedId, String error) {
+        if (message.getTempId() == null) {
+            return;
+        }
+        String type = privateMessage ? "private" : "group";
+        MessageAck ack = savedId != null
+                ? MessageAck.success(message.getTempId(), savedId, type)
+                : MessageAck.failure(message.getTempId(), error, type);
+        ack.setSeq(message.getSeq());
+        messagingTemplate.convertAndSendToUser(
+            message.getSenderId().toString(),
+            "/queue/message-ack",
+            ack
+        );
+    }
+
+    /**
+     * 环形缓冲区槽位，启动时一次性预分配
+     */
+    private static class ChatMessageEvent {
+        private ChatMessage message;
+        private boolean privateMessage;
+    }
+}
@@ -2,13 +2,13 @@ package com.example.service.impl;
 
 import com.example.entity.dto.Group_member;
 import com.example.entity.dto.Group;
-import com.example.entity.dto.Account;
 import com.example.mapper.Group_memberMapper;
 import com.example.mapper.GroupMapper;
-import com.example.mapper.AccountMapper;
+import com.example.service.AccountService;
 import com.example.service.GroupCacheService;
 import com.example.service.RedisService;
 import com.example.service.SmartCacheService;
+import com.example.service.BloomFilterService;
 import com.example.utils.RedisKeys;
 import com.example.entity.vo.response.GroupDetailResponse;
 import com.example.entity.vo.response.GroupMemberResponse;
@@ -23,6 +23,10 @@ import org.slf4j.LoggerFactory;
 import java.time.Duration;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class GroupCacheServiceImpl implements GroupCacheService {
@@ -40,35 +44,28 @@ public class GroupCacheServiceImpl implements GroupCacheService {
     private GroupMapper groupMapper;
 
     @Autowired
-    private AccountMapper accountMapper;
+    private AccountService accountService;
     
     // P2优化：集成智能缓存服务
     @Autowired
     private SmartCacheService smartCacheService;
 
+    @Autowired
+    private BloomFilterService bloomFilterService;
+
     @Override
     public List<Group_member> getUserGroups(int userId) {
         String key = RedisKeys.USER_GROUPS + userId;
         
-        // P2优化：对于复杂泛型，使用传统方式结合智能失效
+        // P2优化：软过期后返回旧值并后台刷新，热点用户的群组列表不会因过期集中回源
         try {
-            String cached = redisService.get(key);
-            if (cached != null && !"NULL".equals(cached)) {
-                return JSON.parseArray(cached, Group_member.class);
-            }
-            
-            // 查询数据库
-            QueryWrapper<Group_member> qw = new QueryWrapper<>();
-            qw.eq("user_id", userId);
-            List<Group_member> members = groupMemberMapper.selectList(qw);
-            
-            // 缓存结果
-            if (members != null) {
-                redisService.set(key, JSON.toJSONString(members), CACHE_TTL);
-                smartCacheService.addToFilter(key);
-            }
-            
-            return members;
+            List<Group_member> members = smartCacheService.getWithRefresh(key, () -> {
+                QueryWrapper<Group_member> qw = new QueryWrapper<>();
+                qw.eq("user_id", userId);
+                return groupMemberMapper.selectList(qw);
+            }, List.class, raw -> JSON.parseArray(raw, Group_member.class), CACHE_TTL);
+            // 布隆过滤器判定用户不存在时为 null；返回副本，避免调用方修改本地缓存中的列表
+            return members == null ? new ArrayList<>() : new ArrayList<>(members);
         } catch (Exception e) {
             // 降级到直接查询数据库
             QueryWrapper<Group_member> qw = new QueryWrapper<>();
@@ -79,8 +76,11 @@ public class GroupCacheServiceImpl implements GroupCacheService {
 
     @Override
     public GroupDetailResponse getGroupDetail(String groupId) {
-        // 🔧 HOTFIX: 临时降级到直接数据库查询，确保数据一致性
-        // 解决缓存不一致导致的"群组不存在"问题
+        // 不存在的群组ID直接返回；过滤器漏判的情况已在 mightContain 内查库确认
+        if (!bloomFilterService.mightContain(BloomFilterService.GROUP, groupId)) {
+            logger.debug("布隆过滤器判断群组不存在: groupId={}", groupId);
+            return null;
+        }
         try {
             return buildGroupDetailResponse(groupId);
         } catch (Exception e) {
@@ -108,9 +108,14 @@ public class GroupCacheServiceImpl implements GroupCacheService {
         response.setCreatorId(group.getCreatorId());
         response.setMemberCount(members.size());
         
-        Account creator = accountMapper.selectById(group.getCreatorId());
-        if (creator != null) {
-            response.setCreatorName(creator.getUsername());
+        // 创建者和所有成员的用户名一次批量获取
+        Set<Integer> userIds = members.stream().map(Group_member::getUserId).collect(Collectors.toCollection(HashSet::new));
+        userIds.add(group.getCreatorId());
+        Map<Integer, String> usernames = accountService.getUsernames(userIds);
+
+        String creatorName = usernames.get(group.getCreatorId());
+        if (creatorName != null) {
+            response.setCreatorName(creatorName);
             Group_member creatorMember = members.stream()
                     .filter(m -> m.getUserId() == group.getCreatorId())
                     .findFirst().orElse(null);
@@ -129,9 +134,9 @@ public class GroupCacheServiceImpl implements GroupCacheService {
             mr.setUserId(member.getUserId());
             mr.setRole(member.getRole());
             mr.setJoinedAt(member.getJoinedAt());
-            Account acc = accountMapper.selectById(member.getUserId());
-            if (acc != null) {
-                mr.setUsername(acc.getUsername());
+            String username = usernames.get(member.getUserId());
+            if (username != null) {
+                mr.setUsername(username);
                 mr.setAvatar(null);
             }
             memberResponses.add(mr);
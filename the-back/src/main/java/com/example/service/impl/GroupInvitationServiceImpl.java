@@ -1,11 +1,10 @@
 package com.example.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
-import com.example.entity.dto.Account;
 import com.example.entity.dto.Group;
 import com.example.entity.dto.GroupInvitation;
 import com.example.entity.vo.response.GroupInvitationResponse;
-import com.example.mapper.AccountMapper;
+import com.example.service.AccountService;
 import com.example.mapper.GroupInvitationMapper;
 import com.example.mapper.GroupMapper;
 import com.example.service.GroupInvitationService;
@@ -24,6 +23,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 @Service
 public class GroupInvitationServiceImpl implements GroupInvitationService {
@@ -37,7 +38,7 @@ public class GroupInvitationServiceImpl implements GroupInvitationService {
     private GroupMapper groupMapper;
 
     @Resource
-    private AccountMapper accountMapper;
+    private AccountService accountService;
 
     @Resource
     private GroupService groupService;
@@ -197,6 +198,13 @@ public class GroupInvitationServiceImpl implements GroupInvitationService {
     // 转换为响应VO
     private List<GroupInvitationResponse> convertToResponseList(List<GroupInvitation> invitations) {
         List<GroupInvitationResponse> responses = new ArrayList<>();
+        // 邀请者和被邀请者的用户名一次批量获取
+        Set<Integer> userIds = new HashSet<>();
+        for (GroupInvitation invitation : invitations) {
+            userIds.add(invitation.getInviterId());
+            userIds.add(invitation.getInviteeId());
+        }
+        Map<Integer, String> usernames = accountService.getUsernames(userIds);
         
         for (GroupInvitation invitation : invitations) {
             GroupInvitationResponse response = new GroupInvitationResponse();
@@ -213,17 +221,9 @@ public class GroupInvitationServiceImpl implements GroupInvitationService {
                 response.setGroupName(group.getName());
             }
             
-            // 获取邀请者姓名
-            Account inviter = accountMapper.selectById(invitation.getInviterId());
-            if (inviter != null) {
-                response.setInviterName(inviter.getUsername());
-            }
-            
-            // 获取被邀请者姓名
-            Account invitee = accountMapper.selectById(invitation.getInviteeId());
-            if (invitee != null) {
-                response.setInviteeName(invitee.getUsername());
-            }
+            // 邀请者和被邀请者姓名
+            response.setInviterName(usernames.get(invitation.getInviterId()));
+            response.setInviteeName(usernames.get(invitation.getInviteeId()));
             
             responses.add(response);
         }
@@ -22,6 +22,8 @@ import com.example.utils.RedisKeys;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import com.example.service.RedisService;
+import com.example.service.LocalCacheService;
+import com.example.service.BloomFilterService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.slf4j.Logger;
@@ -53,6 +55,10 @@ public class GroupServiceImpl implements GroupService {
     @Autowired
     private RedisService redisService;
     @Autowired
+    private LocalCacheService localCacheService;
+    @Autowired
+    private BloomFilterService bloomFilterService;
+    @Autowired
     private GroupCacheService groupCacheService;
     @Autowired
     private OutboxEventService outboxEventService;
@@ -85,6 +91,8 @@ public class GroupServiceImpl implements GroupService {
             if (groupInserted <= 0) {
                 throw new RuntimeException("创建群聊失败");
             }
+            // 新群组登记到布隆过滤器，否则在下次重建前会被判定为不存在
+            bloomFilterService.add(BloomFilterService.GROUP, newGroup.getGroupId());
 
             // 将创建者添加为群成员
             Group_member creatorMember = new Group_member();
@@ -198,6 +206,8 @@ public class GroupServiceImpl implements GroupService {
         String cacheKey = RedisKeys.USER_GROUPS + userId;
         try {
             Boolean deleted = redisService.delete(cacheKey);
+            // 同时清除各节点的本地缓存
+            localCacheService.invalidate(cacheKey);
             if (Boolean.TRUE.equals(deleted)) {
                 logger.info("Successfully deleted group cache for user {} after operation.", userId);
             } else {
@@ -0,0 +1,182 @@
+package com.example.service.impl;
+
+import com.example.service.IdGeneratorService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Snowflake风格ID生成器
+ * 结构：41位毫秒时间戳 | 10位workerId | 12位序列号
+ * workerId 通过 Redis 租约（SET NX + 定时续期）在集群内分配，避免多节点冲突
+ * 未持有租约（或本地估计的租约已到期）时拒绝发号，不同节点永远不会用同一个 workerId 生成ID
+ */
+@Service
+public class IdGeneratorServiceImpl implements IdGeneratorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorServiceImpl.class);
+
+    // 与 MyBatis-Plus ASSIGN_ID 使用相同的起始时间，新ID与表中已有的雪花ID保持同一量级且继续递增
+    private static final long EPOCH = 1288834974657L;
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    private static final Duration LEASE_TTL = Duration.ofSeconds(60);
+    // 单次申请最多尝试的 workerId 数量，避免 Redis 故障时一次性打出上千次请求
+    private static final int MAX_ACQUIRE_ATTEMPTS = 64;
+    // 本地判断租约到期时预留的余量，抵消 Redis 往返和两端时钟误差
+    private static final long LEASE_SAFETY_MARGIN_MILLIS = 5000;
+
+    // 仅当租约仍归本节点所有时才续期
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """,
+            Long.class);
+
+    // 仅当租约仍归本节点所有时才释放
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """,
+            Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    // 本节点实例标识，作为租约的持有者凭证
+    private final String instanceToken = UUID.randomUUID().toString();
+
+    private volatile int workerId = -1;
+    private volatile boolean leaseHeld = false;
+    // 本节点认为租约仍然有效的截止时间，以发出 SET/PEXPIRE 之前的本地时间为起点计算
+    private volatile long leaseValidUntil = 0L;
+
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    @PostConstruct
+    public void init() {
+        try {
+            if (acquireLease()) {
+                return;
+            }
+        } catch (Exception e) {
+            logger.error("申请ID生成器workerId租约失败", e);
+        }
+        // Redis 不可用时不阻塞启动，但在取得租约之前拒绝发号，由续期任务继续尝试
+        logger.warn("未能获取ID生成器workerId租约，取得租约前暂停发号");
+    }
+
+    @Override
+    public synchronized long nextId() {
+        long timestamp = System.currentTimeMillis();
+        if (!leaseHeld || timestamp >= leaseValidUntil) {
+            // 租约可能已被其他节点接手，继续使用旧 workerId 会生成重复ID
+            throw new IllegalStateException("ID生成器未持有workerId租约，暂停发号");
+        }
+        // 时钟回拨时沿用上一次的时间戳，保证ID单调递增
+        if (timestamp < lastTimestamp) {
+            timestamp = lastTimestamp;
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 当前毫秒序列号用尽，借用下一毫秒
+                timestamp = lastTimestamp + 1;
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+        return ((timestamp - EPOCH) << TIMESTAMP_SHIFT)
+                | ((long) workerId << WORKER_ID_SHIFT)
+                | sequence;
+    }
+
+    @Override
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    @Override
+    public long minIdAt(long timestampMillis) {
+        return Math.max(0L, timestampMillis - EPOCH) << TIMESTAMP_SHIFT;
+    }
+
+    /**
+     * 定时续期 workerId 租约，租约丢失时重新申请
+     * 每20秒执行一次（租约有效期60秒）
+     */
+    @Scheduled(fixedDelay = 20000)
+    public void renewLease() {
+        try {
+            if (leaseHeld) {
+                long requestedAt = System.currentTimeMillis();
+                Long renewed = redisService.executeScript(RENEW_LEASE_SCRIPT,
+                        List.of(RedisKeys.ID_WORKER_LEASE + workerId),
+                        instanceToken, String.valueOf(LEASE_TTL.toMillis()));
+                if (renewed != null && renewed == 1L) {
+                    leaseValidUntil = requestedAt + LEASE_TTL.toMillis() - LEASE_SAFETY_MARGIN_MILLIS;
+                    return;
+                }
+                logger.warn("ID生成器workerId租约已丢失: workerId={}", workerId);
+                leaseHeld = false;
+            }
+            acquireLease();
+        } catch (Exception e) {
+            logger.error("续期ID生成器workerId租约失败: workerId={}", workerId, e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (leaseHeld) {
+            leaseHeld = false;
+            redisService.executeScript(RELEASE_LEASE_SCRIPT,
+                    List.of(RedisKeys.ID_WORKER_LEASE + workerId), instanceToken);
+        }
+    }
+
+    /**
+     * 从随机位置开始依次尝试 SET NX 抢占一个空闲的 workerId
+     */
+    private boolean acquireLease() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_WORKER_ID + 1);
+        for (int i = 0; i < MAX_ACQUIRE_ATTEMPTS; i++) {
+            int candidate = (start + i) & MAX_WORKER_ID;
+            long requestedAt = System.currentTimeMillis();
+            if (redisService.setIfAbsent(RedisKeys.ID_WORKER_LEASE + candidate, instanceToken, LEASE_TTL)) {
+                workerId = candidate;
+                leaseValidUntil = requestedAt + LEASE_TTL.toMillis() - LEASE_SAFETY_MARGIN_MILLIS;
+                leaseHeld = true;
+                logger.info("ID生成器获取workerId租约成功: workerId={}", candidate);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.service.impl;
+
+import com.example.config.LocalCacheProperties;
+import com.example.service.LocalCacheService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 按 RedisKeys 前缀划分命名空间的 Caffeine 本地缓存（默认 W-TinyLFU 淘汰）
+ * 每个命名空间独立的容量和有效期；键按最长前缀匹配命名空间，未配置的命名空间不做本地缓存。
+ * 失效消息带上本节点ID，收到自己发出的广播时直接忽略
+ */
+@Service
+public class LocalCacheServiceImpl implements LocalCacheService, MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCacheServiceImpl.class);
+
+    @Resource
+    private LocalCacheProperties properties;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 按前缀长度降序排列，保证 chat:group:history: 这类更长的前缀优先匹配
+    private final List<Namespace> namespaces = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            logger.info("本地一级缓存未启用");
+            return;
+        }
+        for (Map.Entry<String, LocalCacheProperties.Namespace> entry : properties.getNamespaces().entrySet()) {
+            String prefix = resolvePrefix(entry.getKey());
+            if (prefix == null) {
+                logger.warn("本地缓存命名空间在 RedisKeys 中不存在，已忽略: {}", entry.getKey());
+                continue;
+            }
+            LocalCacheProperties.Namespace config = entry.getValue();
+            Cache<String, Object> cache = Caffeine.newBuilder()
+                    .maximumSize(config.getMaxSize())
+                    .expireAfterWrite(Duration.ofSeconds(config.getTtlSeconds()))
+                    .build();
+            namespaces.add(new Namespace(prefix, cache));
+            logger.info("本地缓存命名空间已启用: {} ({}), maxSize={}, ttlSeconds={}",
+                    entry.getKey(), prefix, config.getMaxSize(), config.getTtlSeconds());
+        }
+        namespaces.sort(Comparator.comparingInt((Namespace ns) -> ns.prefix().length()).reversed());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeys.CACHE_INVALIDATION_CHANNEL));
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> type) {
+        Cache<String, Object> cache = cacheFor(key);
+        if (cache == null) {
+            return null;
+        }
+        Object value = cache.getIfPresent(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        Cache<String, Object> cache = cacheFor(key);
+        if (cache != null && value != null) {
+            cache.put(key, value);
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        Cache<String, Object> cache = cacheFor(key);
+        if (cache == null) {
+            return;
+        }
+        cache.invalidate(key);
+        redisService.publish(RedisKeys.CACHE_INVALIDATION_CHANNEL, nodeId + "|" + key);
+    }
+
+    /**
+     * 收到其他节点的失效广播
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        String key = body.substring(separator + 1);
+        Cache<String, Object> cache = cacheFor(key);
+        if (cache != null) {
+            cache.invalidate(key);
+            logger.debug("收到缓存失效广播: {}", key);
+        }
+    }
+
+    private Cache<String, Object> cacheFor(String key) {
+        for (Namespace namespace : namespaces) {
+            if (key.startsWith(namespace.prefix())) {
+                return namespace.cache();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把配置中的命名空间（如 user-groups）解析为 RedisKeys 中对应常量（USER_GROUPS）的前缀
+     */
+    private static String resolvePrefix(String namespace) {
+        try {
+            String constantName = namespace.toUpperCase(Locale.ROOT).replace('-', '_');
+            Object value = RedisKeys.class.getField(constantName).get(null);
+            return value instanceof String ? (String) value : null;
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private record Namespace(String prefix, Cache<String, Object> cache) {
+    }
+}
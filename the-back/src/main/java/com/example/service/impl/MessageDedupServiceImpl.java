@@ -0,0 +1,139 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.MessageDedupService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消息去重服务实现
+ * 1. 本地：有界的时间窗口缓存，同一节点上的重复投递无需访问Redis
+ * 2. Redis：SET NX 占用去重键，跨节点判重；入库成功后写入真实消息ID
+ * Redis 不可用时放行，由预分配消息ID的主键约束兜底
+ */
+@Service
+public class MessageDedupServiceImpl implements MessageDedupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDedupServiceImpl.class);
+
+    // 仅当仍处于处理中状态时才删除，避免误删已入库的记录
+    private static final RedisScript<Long> RELEASE_PENDING_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """,
+            Long.class);
+
+    @Autowired
+    private RedisService redisService;
+
+    @Value("${chat.dedup.window-seconds:600}")
+    private long windowSeconds;
+
+    @Value("${chat.dedup.pending-seconds:60}")
+    private long pendingSeconds;
+
+    @Value("${chat.dedup.local-max-size:10000}")
+    private int localMaxSize;
+
+    // 按插入顺序淘汰的本地缓存，超过容量时移除最早的键
+    private final Map<String, LocalEntry> localCache = new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+            return size() > localMaxSize;
+        }
+    };
+
+    @Override
+    public String dedupKey(ChatMessage message) {
+        if (message.getTempId() == null || message.getTempId().isEmpty()) {
+            return null;
+        }
+        return message.getSenderId() + ":" + message.getTempId();
+    }
+
+    @Override
+    public String tryClaim(String dedupKey) {
+        String local = getLocal(dedupKey);
+        if (local != null) {
+            return local;
+        }
+
+        String redisKey = RedisKeys.MESSAGE_DEDUP + dedupKey;
+        if (redisService.setIfAbsent(redisKey, PENDING, Duration.ofSeconds(pendingSeconds))) {
+            putLocal(dedupKey, PENDING, pendingSeconds);
+            return null;
+        }
+
+        String existing = redisService.get(redisKey);
+        if (existing == null) {
+            // Redis 不可用或键恰好过期：放行，重复插入由主键冲突兜底
+            logger.warn("消息去重键占用失败且无记录，放行处理: key={}", dedupKey);
+            return null;
+        }
+        if (!PENDING.equals(existing)) {
+            putLocal(dedupKey, existing, windowSeconds);
+        }
+        return existing;
+    }
+
+    @Override
+    public void markSaved(String dedupKey, String savedMessageId) {
+        putLocal(dedupKey, savedMessageId, windowSeconds);
+        redisService.set(RedisKeys.MESSAGE_DEDUP + dedupKey, savedMessageId, Duration.ofSeconds(windowSeconds));
+    }
+
+    @Override
+    public void release(String dedupKey) {
+        synchronized (localCache) {
+            localCache.remove(dedupKey);
+        }
+        redisService.executeScript(RELEASE_PENDING_SCRIPT, List.of(RedisKeys.MESSAGE_DEDUP + dedupKey), PENDING);
+    }
+
+    private String getLocal(String dedupKey) {
+        synchronized (localCache) {
+            LocalEntry entry = localCache.get(dedupKey);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                localCache.remove(dedupKey);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private void putLocal(String dedupKey, String value, long ttlSeconds) {
+        synchronized (localCache) {
+            // 先移除再放入，使更新后的键排到队尾，按最新写入时间淘汰
+            localCache.remove(dedupKey);
+            localCache.put(dedupKey, new LocalEntry(value, System.currentTimeMillis() + ttlSeconds * 1000));
+        }
+    }
+
+    private static class LocalEntry {
+        private final String value;
+        private final long expireAt;
+
+        LocalEntry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
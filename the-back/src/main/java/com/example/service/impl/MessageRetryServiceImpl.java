@@ -0,0 +1,139 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.MessageRetryService;
+import com.example.utils.ChatRetryRouter;
+import com.example.utils.Const;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class MessageRetryServiceImpl implements MessageRetryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageRetryServiceImpl.class);
+
+    // 写入消息头的错误信息最大长度
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Resource
+    private RabbitTemplate rabbitTemplate;
+
+    @Resource
+    private ChatRetryRouter retryRouter;
+
+    @Override
+    public boolean retryOrPark(ChatMessage message, String sourceQueue, int retryCount, String errorMessage) {
+        if (retryCount < retryRouter.getMaxRetries()) {
+            int nextRetryCount = retryCount + 1;
+            String retryQueue = retryRouter.retryQueue(sourceQueue, nextRetryCount);
+            rabbitTemplate.convertAndSend(retryQueue, message, m -> {
+                m.getMessageProperties().setHeader(Const.MESSAGE_RETRY_COUNT_HEADER, nextRetryCount);
+                return m;
+            });
+            logger.info("消息入库失败，投递到重试队列: queue={}, retry={}, messageId={}",
+                    retryQueue, nextRetryCount, message.getId());
+            return true;
+        }
+
+        String error = errorMessage != null && errorMessage.length() > MAX_ERROR_LENGTH
+                ? errorMessage.substring(0, MAX_ERROR_LENGTH) : errorMessage;
+        rabbitTemplate.convertAndSend(ChatRetryRouter.PARKING_LOT_QUEUE, message, m -> {
+            m.getMessageProperties().setHeader(Const.MESSAGE_RETRY_COUNT_HEADER, retryCount);
+            m.getMessageProperties().setHeader(ChatRetryRouter.ORIGINAL_QUEUE_HEADER, sourceQueue);
+            m.getMessageProperties().setHeader(ChatRetryRouter.LAST_ERROR_HEADER, error);
+            m.getMessageProperties().setHeader(ChatRetryRouter.PARKED_AT_HEADER, System.currentTimeMillis());
+            return m;
+        });
+        logger.error("消息超过最大重试次数，进入停车场: queue={}, messageId={}, error={}",
+                sourceQueue, message.getId(), error);
+        return false;
+    }
+
+    @Override
+    public void defer(ChatMessage message, String sourceQueue, int retryCount) {
+        String retryQueue = retryRouter.retryQueue(sourceQueue, 1);
+        rabbitTemplate.convertAndSend(retryQueue, message, m -> {
+            m.getMessageProperties().setHeader(Const.MESSAGE_RETRY_COUNT_HEADER, retryCount);
+            return m;
+        });
+        logger.info("消息正在其他投递中处理，推迟到重试队列: queue={}, messageId={}", retryQueue, message.getId());
+    }
+
+    @Override
+    public List<Map<String, Object>> peekParked(int limit) {
+        return rabbitTemplate.execute(channel -> {
+            List<Map<String, Object>> result = new ArrayList<>();
+            long lastDeliveryTag = -1;
+            // 取出的消息在通道上保持未确认状态，最后统一放回队列，保证不会重复读到同一条
+            for (int i = 0; i < limit; i++) {
+                GetResponse response = channel.basicGet(ChatRetryRouter.PARKING_LOT_QUEUE, false);
+                if (response == null) {
+                    break;
+                }
+                lastDeliveryTag = response.getEnvelope().getDeliveryTag();
+                Map<String, Object> item = new HashMap<>();
+                item.put("headers", stringifyHeaders(response.getProps().getHeaders()));
+                item.put("body", new String(response.getBody(), StandardCharsets.UTF_8));
+                result.add(item);
+            }
+            if (lastDeliveryTag >= 0) {
+                channel.basicNack(lastDeliveryTag, true, true);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public int replayParked(int limit) {
+        Integer replayed = rabbitTemplate.execute(channel -> {
+            int count = 0;
+            for (int i = 0; i < limit; i++) {
+                GetResponse response = channel.basicGet(ChatRetryRouter.PARKING_LOT_QUEUE, false);
+                if (response == null) {
+                    break;
+                }
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                Map<String, Object> headers = response.getProps().getHeaders() == null
+                        ? new HashMap<>() : new HashMap<>(response.getProps().getHeaders());
+                Object originalQueue = headers.get(ChatRetryRouter.ORIGINAL_QUEUE_HEADER);
+                if (originalQueue == null) {
+                    // 缺少原始队列信息的消息无法重放，放回停车场
+                    logger.warn("停车场消息缺少原始队列信息，跳过重放: deliveryTag={}", deliveryTag);
+                    channel.basicNack(deliveryTag, false, true);
+                    continue;
+                }
+                headers.remove(Const.MESSAGE_RETRY_COUNT_HEADER);
+                headers.remove(ChatRetryRouter.ORIGINAL_QUEUE_HEADER);
+                headers.remove(ChatRetryRouter.LAST_ERROR_HEADER);
+                headers.remove(ChatRetryRouter.PARKED_AT_HEADER);
+                AMQP.BasicProperties props = response.getProps().builder().headers(headers).build();
+                channel.basicPublish("", originalQueue.toString(), props, response.getBody());
+                channel.basicAck(deliveryTag, false);
+                count++;
+            }
+            return count;
+        });
+        logger.info("停车场消息重放完成: count={}", replayed);
+        return replayed == null ? 0 : replayed;
+    }
+
+    private Map<String, Object> stringifyHeaders(Map<String, Object> headers) {
+        Map<String, Object> result = new HashMap<>();
+        if (headers != null) {
+            // AMQP 字符串头是 LongString 类型，转为普通字符串便于序列化
+            headers.forEach((key, value) -> result.put(key, value instanceof Number ? value : String.valueOf(value)));
+        }
+        return result;
+    }
+}
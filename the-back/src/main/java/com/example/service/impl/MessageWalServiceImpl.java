@@ -0,0 +1,567 @@
+package com.example.service.impl;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.ChatService;
+import com.example.service.MessageWalService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.sql.DataSource;
+
+/**
+ * 基于内存映射文件的分段预写日志
+ * 文件布局：日志目录下按序号滚动的段文件 segment-<序号>.wal，每段固定 segmentBytes 字节（预先映射，未写入部分为0）；
+ * 记录格式：[int 长度][int CRC32][byte 类型][长度字节的JSON]，CRC覆盖类型和JSON，长度为0表示段内数据结束。
+ * checkpoint 文件记录已回放到的位置（段序号 + 段内偏移），回放完的段直接删除。
+ * 启动时从检查点开始逐条校验，遇到第一条损坏的记录（进程崩溃时写了一半）即截断，之后的追加从该位置开始覆盖。
+ * 回放时数据库可达但仍写入失败、或无法解析的记录追加到 quarantine.jsonl（每行一条，保留原始JSON），由人工处理
+ */
+@Service
+public class MessageWalServiceImpl implements MessageWalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWalServiceImpl.class);
+
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 1;
+    private static final byte TYPE_GROUP = 0;
+    private static final byte TYPE_PRIVATE = 1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String QUARANTINE_FILE = "quarantine.jsonl";
+
+    @Resource
+    private ChatService chatService;
+
+    @Resource
+    private DataSource dataSource;
+
+    @Value("${chat.wal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.wal.dir:./data/chat-wal}")
+    private String dir;
+
+    @Value("${chat.wal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${chat.wal.replay-batch-size:500}")
+    private int replayBatchSize;
+
+    // 单次回放任务最多执行的时间，避免长时间占用调度线程
+    @Value("${chat.wal.replay-max-millis:10000}")
+    private long replayMaxMillis;
+
+    // 数据库可达性探测：连接校验超时时间，以及探测结果的复用时间（避免每条失败消息都探测一次）
+    @Value("${chat.wal.probe-timeout-seconds:2}")
+    private int probeTimeoutSeconds;
+
+    @Value("${chat.wal.probe-cache-millis:1000}")
+    private long probeCacheMillis;
+
+    private final Object lock = new Object();
+
+    private Path walDir;
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private long readSegment;
+    private int readOffset;
+    private volatile boolean degraded = false;
+    private volatile long probedAt;
+    private volatile boolean databaseAvailable = true;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            walDir = Paths.get(dir);
+            Files.createDirectories(walDir);
+            loadCheckpoint();
+            recover();
+        } catch (IOException | RuntimeException e) {
+            // 日志目录不可用不应阻止启动：关闭预写日志，入库失败照常走重试/停车场流程
+            enabled = false;
+            logger.error("预写日志初始化失败，已禁用预写日志: dir={}", dir, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (lock) {
+            if (writeBuffer != null) {
+                writeBuffer.force();
+            }
+        }
+    }
+
+    @Override
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    @Override
+    public boolean append(List<ChatMessage> messages, boolean privateMessage) {
+        if (!enabled || messages.isEmpty()) {
+            return false;
+        }
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            if (message.getId() == null) {
+                return false; // 没有预分配ID无法先回执，交给原有重试流程
+            }
+            payloads.add(JSON.toJSONString(message, "millis").getBytes(StandardCharsets.UTF_8));
+        }
+        byte type = privateMessage ? TYPE_PRIVATE : TYPE_GROUP;
+        synchronized (lock) {
+            try {
+                int start = writeBuffer.position();
+                for (byte[] payload : payloads) {
+                    int recordBytes = RECORD_HEADER_BYTES + payload.length;
+                    if (recordBytes > segmentBytes) {
+                        logger.error("消息过大，无法写入预写日志: bytes={}", recordBytes);
+                        return false;
+                    }
+                    if (writeBuffer.remaining() < recordBytes) {
+                        writeBuffer.force(start, writeBuffer.position() - start);
+                        rollSegment();
+                        start = 0;
+                    }
+                    writeRecord(writeBuffer, type, payload);
+                }
+                // 整批只刷一次盘
+                writeBuffer.force(start, writeBuffer.position() - start);
+                if (!degraded) {
+                    logger.warn("数据库写入失败，聊天消息转入本地预写日志");
+                }
+                degraded = true;
+                return true;
+            } catch (IOException e) {
+                logger.error("写入预写日志失败", e);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean appendIfDatabaseUnavailable(List<ChatMessage> messages, boolean privateMessage) {
+        if (!enabled || messages.isEmpty() || isDatabaseAvailable()) {
+            return false;
+        }
+        return append(messages, privateMessage);
+    }
+
+    /**
+     * 探测数据库是否可达：能在超时内拿到有效连接即视为可达；结果在 probeCacheMillis 内复用
+     */
+    private boolean isDatabaseAvailable() {
+        long now = System.currentTimeMillis();
+        if (now - probedAt < probeCacheMillis) {
+            return databaseAvailable;
+        }
+        boolean available;
+        try (Connection connection = dataSource.getConnection()) {
+            available = connection.isValid(probeTimeoutSeconds);
+        } catch (SQLException e) {
+            available = false;
+        }
+        databaseAvailable = available;
+        probedAt = System.currentTimeMillis();
+        if (!available) {
+            logger.warn("数据库不可达");
+        }
+        return available;
+    }
+
+    /**
+     * 定时回放日志
+     */
+    @Scheduled(fixedDelayString = "${chat.wal.replay-interval-millis:5000}")
+    public void scheduledReplay() {
+        if (enabled) {
+            replay();
+        }
+    }
+
+    @Override
+    public int replay() {
+        if (!enabled) {
+            return 0;
+        }
+        int replayed = 0;
+        long deadline = System.currentTimeMillis() + replayMaxMillis;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                ReplayBatch batch = readBatch();
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (!save(batch, batch.groupMessages, false) || !save(batch, batch.privateMessages, true)) {
+                    // 数据库仍不可达，保持检查点不动，下次从同一位置重试（重复写入由主键冲突判定为已保存）
+                    logger.warn("预写日志回放失败，数据库仍不可达，稍后重试");
+                    break;
+                }
+                // 整批有了结果再隔离，避免检查点未推进时同一条记录被重复隔离
+                for (Rejected rejected : batch.rejected) {
+                    quarantine(rejected);
+                }
+                replayed += batch.size();
+                commit(batch.endSegment, batch.endOffset);
+            }
+        } catch (IOException e) {
+            logger.error("预写日志回放出错", e);
+        }
+        if (replayed > 0) {
+            logger.info("预写日志回放完成: count={}, degraded={}", replayed, degraded);
+        }
+        return replayed;
+    }
+
+    /**
+     * 回放一批同类消息
+     * @return false 表示数据库不可达，检查点应保持不动；数据库可达时写不进去的消息记入 batch.rejected 后返回true
+     */
+    private boolean save(ReplayBatch batch, List<ChatMessage> messages, boolean privateMessage) {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        List<String> savedIds = null;
+        try {
+            savedIds = privateMessage
+                    ? chatService.savePrivateMessagesWithIds(messages)
+                    : chatService.savePublicMessagesWithIds(messages);
+        } catch (Exception e) {
+            logger.error("预写日志回放写库失败: count={}", messages.size(), e);
+        }
+        if (savedIds != null && !savedIds.contains(null)) {
+            return true;
+        }
+        if (!isDatabaseAvailable()) {
+            return false;
+        }
+        // 数据库可达：失败的消息再单独写一次，仍失败说明是消息本身的问题，隔离后继续回放
+        for (int i = 0; i < messages.size(); i++) {
+            if (savedIds != null && savedIds.get(i) != null) {
+                continue;
+            }
+            ChatMessage message = messages.get(i);
+            String savedId;
+            try {
+                savedId = privateMessage
+                        ? chatService.savePrivateMessageWithId(message)
+                        : chatService.savePublicMessageWithId(message);
+            } catch (Exception e) {
+                logger.error("预写日志回放单条写库失败: messageId={}", message.getId(), e);
+                savedId = null;
+            }
+            if (savedId != null) {
+                continue;
+            }
+            if (!isDatabaseAvailable()) {
+                return false;
+            }
+            batch.rejected.add(new Rejected(privateMessage ? TYPE_PRIVATE : TYPE_GROUP,
+                    JSON.toJSONString(message, "millis"), "数据库写入失败"));
+        }
+        return true;
+    }
+
+    /**
+     * 把无法回放的记录追加到隔离文件并刷盘，之后检查点可以越过这条记录
+     */
+    private void quarantine(Rejected rejected) throws IOException {
+        JSONObject line = new JSONObject();
+        line.put("type", rejected.type == TYPE_PRIVATE ? "private" : "group");
+        line.put("reason", rejected.reason);
+        line.put("quarantinedAt", System.currentTimeMillis());
+        line.put("payload", rejected.payload);
+        byte[] bytes = (line.toJSONString() + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            try (FileChannel channel = FileChannel.open(walDir.resolve(QUARANTINE_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+        }
+        logger.error("预写日志记录无法回放，已转入隔离文件: file={}, reason={}", QUARANTINE_FILE, rejected.reason);
+    }
+
+    /**
+     * 从检查点开始读取一批记录（只复制数据，不移动检查点）
+     */
+    private ReplayBatch readBatch() throws IOException {
+        synchronized (lock) {
+            ReplayBatch batch = new ReplayBatch();
+            long segment = readSegment;
+            int offset = readOffset;
+            while (batch.size() < replayBatchSize) {
+                ByteBuffer buffer = segment == writeSegment
+                        ? writeBuffer.duplicate().limit(writeBuffer.position())
+                        : mapSegment(segment, FileChannel.MapMode.READ_ONLY);
+                buffer.position(offset);
+                while (batch.size() < replayBatchSize) {
+                    Record record = readRecord(buffer);
+                    if (record == null) {
+                        break;
+                    }
+                    String payload = new String(record.payload, StandardCharsets.UTF_8);
+                    ChatMessage message;
+                    try {
+                        message = JSON.parseObject(payload, ChatMessage.class);
+                    } catch (Exception e) {
+                        // 校验通过但无法解析（如消息结构不兼容），转入隔离文件，避免阻塞后续回放
+                        logger.error("预写日志记录解析失败: segment={}, position={}", segment, buffer.position(), e);
+                        batch.rejected.add(new Rejected(record.type, payload, "解析失败"));
+                        continue;
+                    }
+                    if (record.type == TYPE_PRIVATE) {
+                        batch.privateMessages.add(message);
+                    } else {
+                        batch.groupMessages.add(message);
+                    }
+                }
+                offset = buffer.position();
+                if (batch.size() >= replayBatchSize || segment == writeSegment) {
+                    break;
+                }
+                // 当前段已读完，进入下一段
+                segment++;
+                offset = 0;
+            }
+            batch.endSegment = segment;
+            batch.endOffset = offset;
+            return batch;
+        }
+    }
+
+    /**
+     * 回放成功后推进检查点，删除已回放完的段；追上写入位置时退出降级状态
+     */
+    private void commit(long segment, int offset) throws IOException {
+        synchronized (lock) {
+            long previousSegment = readSegment;
+            readSegment = segment;
+            readOffset = offset;
+            saveCheckpoint();
+            for (long s = previousSegment; s < segment; s++) {
+                Files.deleteIfExists(segmentPath(s));
+            }
+            if (readSegment == writeSegment && readOffset == writeBuffer.position()) {
+                degraded = false;
+            }
+        }
+    }
+
+    /**
+     * 启动恢复：校验检查点之后的所有记录，截断最后一条完整记录之后的数据
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> segments = listSegments();
+        // 删除检查点之前残留的段
+        for (Long segment : segments.headMap(readSegment).keySet()) {
+            Files.deleteIfExists(segments.get(segment));
+        }
+        long lastSegment = segments.isEmpty() ? readSegment : Math.max(readSegment, segments.lastKey());
+        long pending = 0;
+        for (long segment = readSegment; segment <= lastSegment; segment++) {
+            MappedByteBuffer buffer = mapSegment(segment, FileChannel.MapMode.READ_WRITE);
+            buffer.position(segment == readSegment ? readOffset : 0);
+            while (readRecord(buffer) != null) {
+                pending++;
+            }
+            int validEnd = buffer.position();
+            if (segment < lastSegment) {
+                continue;
+            }
+            // 最后一段：清零有效数据之后的内容，避免半条记录被误读
+            truncate(buffer, validEnd);
+            writeSegment = segment;
+            writeBuffer = buffer;
+            writeBuffer.position(validEnd);
+        }
+        if (pending > 0) {
+            // 回放完之前新消息继续写入日志，保持与积压消息的先后顺序
+            degraded = true;
+            logger.warn("预写日志中有未回放的消息，将在后台回放: count={}", pending);
+        }
+        logger.info("预写日志已就绪: dir={}, segment={}, position={}", walDir, writeSegment, writeBuffer.position());
+    }
+
+    private void truncate(MappedByteBuffer buffer, int from) {
+        int end = buffer.capacity();
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) != 0) {
+                for (int j = i; j < end; j++) {
+                    buffer.put(j, (byte) 0);
+                }
+                buffer.force();
+                logger.warn("预写日志截断损坏的尾部数据: position={}", from);
+                return;
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        writeSegment++;
+        writeBuffer = mapSegment(writeSegment, FileChannel.MapMode.READ_WRITE);
+        logger.info("预写日志滚动到新段: segment={}", writeSegment);
+    }
+
+    private void writeRecord(ByteBuffer buffer, byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        int start = buffer.position();
+        // 先写内容再写长度，长度非0即表示记录完整
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+        int end = buffer.position();
+        buffer.putInt(start, payload.length);
+        buffer.position(end);
+    }
+
+    /**
+     * 读取一条记录并校验，数据结束或记录损坏时返回null且不移动位置
+     */
+    private Record readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length <= 0 || length > buffer.limit() - start - RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int expectedCrc = buffer.getInt(start + 4);
+        byte type = buffer.get(start + 8);
+        byte[] payload = new byte[length];
+        buffer.get(start + RECORD_HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            logger.error("预写日志记录校验失败: position={}", start);
+            return null;
+        }
+        buffer.position(start + RECORD_HEADER_BYTES + length);
+        return new Record(type, payload);
+    }
+
+    private MappedByteBuffer mapSegment(long segment, FileChannel.MapMode mode) throws IOException {
+        Path path = segmentPath(segment);
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            long size = mode == FileChannel.MapMode.READ_ONLY ? channel.size() : segmentBytes;
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return walDir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(walDir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                }
+            });
+        }
+        return segments;
+    }
+
+    private void loadCheckpoint() throws IOException {
+        Path path = walDir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            readSegment = 0;
+            readOffset = 0;
+            return;
+        }
+        String[] parts = Files.readString(path).trim().split(" ");
+        readSegment = Long.parseLong(parts[0]);
+        readOffset = Integer.parseInt(parts[1]);
+    }
+
+    private void saveCheckpoint() throws IOException {
+        // 先写临时文件再原子替换，避免崩溃时检查点文件写坏
+        Path tmp = walDir.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.writeString(tmp, readSegment + " " + readOffset);
+        Files.move(tmp, walDir.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Record {
+        private final byte type;
+        private final byte[] payload;
+
+        Record(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    private static class Rejected {
+        private final byte type;
+        private final String payload;
+        private final String reason;
+
+        Rejected(byte type, String payload, String reason) {
+            this.type = type;
+            this.payload = payload;
+            this.reason = reason;
+        }
+    }
+
+    private static class ReplayBatch {
+        private final List<ChatMessage> groupMessages = new ArrayList<>();
+        private final List<ChatMessage> privateMessages = new ArrayList<>();
+        private final List<Rejected> rejected = new ArrayList<>();
+        private long endSegment;
+        private int endOffset;
+
+        int size() {
+            return groupMessages.size() + privateMessages.size();
+        }
+
+        boolean isEmpty() {
+            // 只含无法解析记录的批次也要提交，否则检查点停在这些记录之前
+            return size() == 0 && rejected.isEmpty();
+        }
+    }
+}
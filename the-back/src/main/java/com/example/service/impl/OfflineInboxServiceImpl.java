@@ -0,0 +1,91 @@
+package com.example.service.impl;
+
+import com.alibaba.fastjson2.JSON;
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.OfflineInboxService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于 Redis ZSET 的离线收件箱，格式 chat:inbox:<userId>
+ * 分数为消息ID，成员为 固定位数ID前缀|消息JSON（与群聊历史缓存相同的编码，分数精度不足时按前缀排序）；
+ * 写入时一并裁剪到最大条数并刷新过期时间，长期不上线的用户收件箱自动过期
+ */
+@Service
+public class OfflineInboxServiceImpl implements OfflineInboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineInboxServiceImpl.class);
+
+    private static final int MEMBER_ID_DIGITS = 20;
+
+    // ZADD + 按排名裁掉最早的消息 + 续期，一次往返
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>(
+            """
+            redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[3]) + 1))
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """,
+            Long.class);
+
+    @Resource
+    private RedisService redisService;
+
+    // 每个用户收件箱保留的最大消息数，离线期间超出部分由重连后的增量同步补齐
+    @Value("${chat.inbox.max-size:500}")
+    private int maxSize;
+
+    @Value("${chat.inbox.ttl-hours:72}")
+    private long ttlHours;
+
+    @Override
+    public void append(int userId, ChatMessage message) {
+        Long id = parseId(message.getId());
+        if (id == null) {
+            return;
+        }
+        String member = String.format("%0" + MEMBER_ID_DIGITS + "d|%s", id, JSON.toJSONString(message, "millis"));
+        redisService.executeScript(APPEND_SCRIPT, List.of(RedisKeys.CHAT_INBOX + userId),
+                String.valueOf(id), member, String.valueOf(maxSize), String.valueOf(ttlHours * 3600_000L));
+    }
+
+    @Override
+    public List<ChatMessage> readAfter(int userId, long lastAckId) {
+        // 分数是 double，ID 大于 lastAckId 的消息分数一定不小于 (double) lastAckId，取出后再按精确ID过滤
+        Set<String> members = redisService.rangeByScore(RedisKeys.CHAT_INBOX + userId,
+                (double) lastAckId, Double.POSITIVE_INFINITY);
+        List<ChatMessage> result = new ArrayList<>();
+        for (String member : members) {
+            try {
+                if (Long.parseLong(member.substring(0, MEMBER_ID_DIGITS)) > lastAckId) {
+                    result.add(JSON.parseObject(member.substring(MEMBER_ID_DIGITS + 1), ChatMessage.class));
+                }
+            } catch (RuntimeException e) {
+                logger.warn("收件箱消息解析失败，跳过: userId={}, member={}", userId, member, e);
+            }
+        }
+        return result;
+    }
+
+    private static Long parseId(String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
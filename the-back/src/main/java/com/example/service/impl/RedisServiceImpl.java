@@ -3,14 +3,30 @@ package com.example.service.impl;
 import com.example.service.RedisService;
 import org.springframework.stereotype.Service;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.Resource;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -19,6 +35,27 @@ public class RedisServiceImpl implements RedisService {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisServiceImpl.class);
 
+    // XADD 带近似裁剪：ARGV[1] 为最大长度，其余参数为 field/value 交替排列
+    private static final RedisScript<String> STREAM_ADD_SCRIPT = new DefaultRedisScript<>(
+            """
+            local fields = {}
+            for i = 2, #ARGV do
+                fields[#fields + 1] = ARGV[i]
+            end
+            return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', unpack(fields))
+            """,
+            String.class);
+
+    // XAUTOCLAIM 返回 {被转移的消息列表（每项为 {id, {field, value, ...}}）, 已被裁剪的消息ID列表}，需要 Redis 6.2+
+    // Redis 7 起已裁剪的消息单独列在第三项并从待确认列表中移除；6.2 中它们出现在消息列表里，内容为空
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> STREAM_AUTOCLAIM_SCRIPT = new DefaultRedisScript<>(
+            """
+            local result = redis.call('XAUTOCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3], '0-0', 'COUNT', ARGV[4])
+            return {result[2], result[3] or {}}
+            """,
+            List.class);
+
     @Resource(name = "stringRedisTemplate")
     private StringRedisTemplate redisTemplate;
 
@@ -45,6 +82,35 @@ public class RedisServiceImpl implements RedisService {
         }
     }
 
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(keys);
+            if (values != null) {
+                return values;
+            }
+        } catch (Exception e) {
+            logger.error("Error multi-getting {} keys", keys.size(), e);
+        }
+        return new ArrayList<>(Collections.nCopies(keys.size(), null));
+    }
+
+    @Override
+    public void multiSet(Map<String, String> values, Duration ttl) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                values.forEach((key, value) -> stringConnection.setEx(key, ttl.getSeconds(), value));
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Error multi-setting {} keys", values.size(), e);
+        }
+    }
+
     @Override
     public boolean delete(String key) {
         try {
@@ -65,6 +131,19 @@ public class RedisServiceImpl implements RedisService {
         }
     }
 
+    @Override
+    public boolean setIfAbsent(String key, String value, Duration ttl) {
+        try {
+            Boolean result = (ttl != null && !ttl.isZero())
+                    ? redisTemplate.opsForValue().setIfAbsent(key, value, ttl.toMillis(), TimeUnit.MILLISECONDS)
+                    : redisTemplate.opsForValue().setIfAbsent(key, value);
+            return Boolean.TRUE.equals(result);
+        } catch (Exception e) {
+            logger.error("Error setting value if absent for key: " + key, e);
+            return false;
+        }
+    }
+
     @Override
     public void pushList(String key, String value, int maxLen, Duration ttl) {
         try {
@@ -115,6 +194,28 @@ public class RedisServiceImpl implements RedisService {
         }
     }
 
+    @Override
+    public Set<String> rangeByScore(String key, double min, double max, long offset, long count) {
+        try {
+            Set<String> set = redisTemplate.opsForZSet().rangeByScore(key, min, max, offset, count);
+            return set != null ? set : Collections.emptySet();
+        } catch (Exception e) {
+            logger.error("Error getting range by score for key: " + key, e);
+            return Collections.emptySet();
+        }
+    }
+
+    @Override
+    public Set<String> reverseRangeByScore(String key, double min, double max, long offset, long count) {
+        try {
+            Set<String> set = redisTemplate.opsForZSet().reverseRangeByScore(key, min, max, offset, count);
+            return set != null ? set : Collections.emptySet();
+        } catch (Exception e) {
+            logger.error("Error getting reverse range by score for key: " + key, e);
+            return Collections.emptySet();
+        }
+    }
+
     @Override
     public void hashIncrement(String key, String field, long delta, Duration ttl) {
         try {
@@ -127,6 +228,15 @@ public class RedisServiceImpl implements RedisService {
         }
     }
 
+    @Override
+    public void publish(String channel, String message) {
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (Exception e) {
+            logger.error("Error publishing to channel: " + channel, e);
+        }
+    }
+
     @Override
     public <T> T executeScript(RedisScript<T> script, List<String> keys, Object... args) {
         try {
@@ -136,4 +246,128 @@ public class RedisServiceImpl implements RedisService {
             return null;
         }
     }
-} 
\ No newline at end of file
+
+    @Override
+    public String streamAdd(String key, Map<String, String> fields, long maxLen) {
+        try {
+            List<Object> args = new ArrayList<>(fields.size() * 2 + 1);
+            args.add(String.valueOf(maxLen));
+            fields.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            return redisTemplate.execute(STREAM_ADD_SCRIPT, Collections.singletonList(key), args.toArray());
+        } catch (Exception e) {
+            logger.error("Error adding to stream: " + key, e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean streamCreateGroup(String key, String group) {
+        try {
+            redisTemplate.opsForStream().createGroup(key, ReadOffset.from("0"), group);
+            return true;
+        } catch (Exception e) {
+            // 消费组已存在
+            if (e.getMessage() != null && e.getMessage().contains("BUSYGROUP")
+                    || e.getCause() != null && String.valueOf(e.getCause().getMessage()).contains("BUSYGROUP")) {
+                return true;
+            }
+            logger.error("Error creating stream group: " + key + ", group: " + group, e);
+            return false;
+        }
+    }
+
+    @Override
+    public List<MapRecord<String, Object, Object>> streamReadGroup(String key, String group, String consumer, int count, Duration block) {
+        try {
+            List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                    Consumer.from(group, consumer),
+                    StreamReadOptions.empty().count(count).block(block),
+                    StreamOffset.create(key, ReadOffset.lastConsumed()));
+            return records != null ? records : Collections.emptyList();
+        } catch (Exception e) {
+            logger.error("Error reading stream group: " + key + ", group: " + group, e);
+            return null;
+        }
+    }
+
+    @Override
+    public long streamAck(String key, String group, List<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try {
+            Long acked = redisTemplate.opsForStream().acknowledge(key, group, ids.toArray(new String[0]));
+            return acked != null ? acked : 0;
+        } catch (Exception e) {
+            logger.error("Error acknowledging stream: " + key + ", group: " + group, e);
+            return 0;
+        }
+    }
+
+    @Override
+    public List<MapRecord<String, Object, Object>> streamAutoClaim(String key, String group, String consumer, Duration minIdle, int count) {
+        try {
+            List<?> result = redisTemplate.execute(STREAM_AUTOCLAIM_SCRIPT, Collections.singletonList(key),
+                    group, consumer, String.valueOf(minIdle.toMillis()), String.valueOf(count));
+            if (result == null || result.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<?> entries = (List<?>) result.get(0);
+            List<MapRecord<String, Object, Object>> records = new ArrayList<>(entries.size());
+            for (Object entry : entries) {
+                List<?> pair = (List<?>) entry;
+                List<?> flatFields = (List<?>) pair.get(1);
+                if (flatFields == null) {
+                    // 消息已被裁剪，以空内容的记录返回，由调用方确认并处理
+                    records.add(trimmedRecord(key, pair.get(0)));
+                    continue;
+                }
+                Map<Object, Object> fields = new LinkedHashMap<>();
+                for (int i = 0; i + 1 < flatFields.size(); i += 2) {
+                    fields.put(flatFields.get(i), flatFields.get(i + 1));
+                }
+                records.add(StreamRecords.newRecord()
+                        .in(key)
+                        .withId(RecordId.of(String.valueOf(pair.get(0))))
+                        .ofMap(fields));
+            }
+            if (result.size() > 1) {
+                for (Object deletedId : (List<?>) result.get(1)) {
+                    records.add(trimmedRecord(key, deletedId));
+                }
+            }
+            return records;
+        } catch (Exception e) {
+            logger.error("Error auto claiming stream: " + key + ", group: " + group, e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static MapRecord<String, Object, Object> trimmedRecord(String key, Object id) {
+        return StreamRecords.newRecord()
+                .in(key)
+                .withId(RecordId.of(String.valueOf(id)))
+                .ofMap(Collections.emptyMap());
+    }
+
+    @Override
+    public Map<String, Long> streamPendingDeliveries(String key, String group, Duration minIdle, int count) {
+        Map<String, Long> deliveries = new LinkedHashMap<>();
+        try {
+            PendingMessages pending = redisTemplate.opsForStream().pending(key, group, Range.unbounded(), count);
+            if (pending != null) {
+                for (PendingMessage message : pending) {
+                    if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                        deliveries.put(message.getIdAsString(), message.getTotalDeliveryCount());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error reading stream pending entries: " + key + ", group: " + group, e);
+        }
+        return deliveries;
+    }
+}
@@ -0,0 +1,480 @@
+package com.example.service.impl;
+
+import com.alibaba.fastjson2.JSON;
+import com.example.entity.vo.response.ChatMessage;
+import com.example.entity.vo.response.MessageAck;
+import com.example.service.ChatService;
+import com.example.service.ChatTransport;
+import com.example.service.MessageDedupService;
+import com.example.service.RedisService;
+import com.example.utils.RedisKeys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis Streams 的传输通道
+ * 群聊、私聊各一条流，所有节点加入同一个消费组：
+ * 1. 发布：XADD MAXLEN ~ 追加，流长度近似裁剪到 maxLen
+ * 2. 消费：每条流一个读取线程，XREADGROUP 一次最多读取 batchSize 条，整批多行INSERT后 XACK
+ * 3. 回收：定时 XAUTOCLAIM 接管空闲超过 claimIdle 的待确认消息（消费者崩溃或入库失败），
+ *    投递次数超过 maxDeliveries 的消息确认丢弃并向发送者回执失败
+ * 4. 裁剪：MAXLEN ~ 可能在入库前就裁掉消息内容。追加时在同一脚本里把回执所需的发送者信息记入索引哈希，
+ *    确认时一并删除；已被裁剪的消息（回收时发现，或从未被读取）按索引向发送者回执失败并确认
+ * 消息ID在发布前已预分配，跨节点并行消费时历史记录仍按ID保持发送顺序
+ */
+@Service
+@ConditionalOnProperty(name = "chat.transport.mode", havingValue = "streams")
+public class RedisStreamChatTransport implements ChatTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisStreamChatTransport.class);
+
+    private static final String CONSUMER_GROUP = "chat-persist";
+    private static final String FIELD_PAYLOAD = "payload";
+    // 读取失败或非阻塞地返回空结果时的退避时间
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    // 每次清理从索引哈希中扫描的条数
+    private static final int SWEEP_SCAN_COUNT = 500;
+
+    // 追加消息，并记下回执所需的发送者信息（ARGV[3] 为空表示无需回执）
+    private static final RedisScript<String> APPEND_SCRIPT = new DefaultRedisScript<>(
+            """
+            local id = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', 'payload', ARGV[2])
+            if ARGV[3] ~= '' then
+                redis.call('HSET', KEYS[2], id, ARGV[3])
+            end
+            return id
+            """,
+            String.class);
+
+    // 确认消息并删除对应的回执索引
+    private static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+            """
+            local ids = {}
+            for i = 2, #ARGV do
+                ids[#ids + 1] = ARGV[i]
+            end
+            local acked = redis.call('XACK', KEYS[1], ARGV[1], unpack(ids))
+            redis.call('HDEL', KEYS[2], unpack(ids))
+            return acked
+            """,
+            Long.class);
+
+    // 取出并删除指定消息的回执索引，返回与ID一一对应的发送者信息，没有索引时为空字符串
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_ACK_INFO_SCRIPT = new DefaultRedisScript<>(
+            """
+            local result = {}
+            for i = 1, #ARGV do
+                result[i] = redis.call('HGET', KEYS[1], ARGV[i]) or ''
+                redis.call('HDEL', KEYS[1], ARGV[i])
+            end
+            return result
+            """,
+            List.class);
+
+    // 扫描一段回执索引，取出早于流中第一条消息、且追加时间早于 ARGV[3] 的条目（已被裁剪、从未入库），
+    // 返回 {下一个游标, {id, 发送者信息, ...}}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SWEEP_TRIMMED_SCRIPT = new DefaultRedisScript<>(
+            """
+            local function older(a, b)
+                local am, as = string.match(a, '(%d+)-(%d+)')
+                local bm, bs = string.match(b, '(%d+)-(%d+)')
+                am, as, bm, bs = tonumber(am), tonumber(as), tonumber(bm), tonumber(bs)
+                return am < bm or (am == bm and as < bs)
+            end
+            local first = redis.call('XRANGE', KEYS[1], '-', '+', 'COUNT', 1)[1]
+            local cutoff = ARGV[3] .. '-0'
+            local scan = redis.call('HSCAN', KEYS[2], ARGV[1], 'COUNT', ARGV[2])
+            local gone = {}
+            for i = 1, #scan[2], 2 do
+                local id = scan[2][i]
+                if older(id, cutoff) and (first == nil or older(id, first[1])) then
+                    gone[#gone + 1] = id
+                    gone[#gone + 1] = scan[2][i + 1]
+                    redis.call('HDEL', KEYS[2], id)
+                end
+            end
+            return {scan[1], gone}
+            """,
+            List.class);
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private ChatService chatService;
+
+    @Resource
+    private MessageDedupService messageDedupService;
+
+    @Resource
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.transport.streams.max-len:100000}")
+    private long maxLen;
+
+    @Value("${chat.transport.streams.batch-size:100}")
+    private int batchSize;
+
+    @Value("${chat.transport.streams.block-millis:2000}")
+    private long blockMillis;
+
+    @Value("${chat.transport.streams.claim-idle-millis:30000}")
+    private long claimIdleMillis;
+
+    @Value("${chat.transport.streams.max-deliveries:5}")
+    private int maxDeliveries;
+
+    // 消费者名称：进程标识 + 随机后缀，重启后以新消费者身份加入，旧消费者的待确认消息由回收任务接管
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    private final List<Thread> readers = new ArrayList<>();
+    // 每条流清理回执索引时的 HSCAN 游标
+    private final Map<String, String> sweepCursors = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private Timer persistLatency;
+
+    @PostConstruct
+    public void start() {
+        persistLatency = meterRegistry.timer(PERSIST_LATENCY_METRIC, "transport", "streams");
+        redisService.streamCreateGroup(RedisKeys.STREAM_CHAT_GROUP, CONSUMER_GROUP);
+        redisService.streamCreateGroup(RedisKeys.STREAM_CHAT_PRIVATE, CONSUMER_GROUP);
+        startReader(RedisKeys.STREAM_CHAT_GROUP, false);
+        startReader(RedisKeys.STREAM_CHAT_PRIVATE, true);
+        logger.info("Redis Streams 聊天消息通道已启动: consumer={}", consumerName);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread reader : readers) {
+            try {
+                reader.join(blockMillis + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void sendGroupMessage(ChatMessage message) {
+        append(RedisKeys.STREAM_CHAT_GROUP, message, false);
+    }
+
+    @Override
+    public void sendPrivateMessage(ChatMessage message) {
+        append(RedisKeys.STREAM_CHAT_PRIVATE, message, true);
+    }
+
+    private void append(String stream, ChatMessage message, boolean privateMessage) {
+        // 时间戳按毫秒数序列化，保留精度
+        String payload = JSON.toJSONString(message, "millis");
+        String recordId = redisService.executeScript(APPEND_SCRIPT, List.of(stream, ackIndexKey(stream)),
+                String.valueOf(maxLen), payload, ackInfo(message));
+        if (recordId == null) {
+            sendAck(message, privateMessage, null, "消息发送失败");
+        }
+    }
+
+    private void startReader(String stream, boolean privateMessage) {
+        Thread reader = new Thread(() -> {
+            long backoff = 0;
+            while (running) {
+                try {
+                    long startedAt = System.currentTimeMillis();
+                    List<MapRecord<String, Object, Object>> records = redisService.streamReadGroup(
+                            stream, CONSUMER_GROUP, consumerName, batchSize, Duration.ofMillis(blockMillis));
+                    if (records == null) {
+                        // 读取失败：Redis 不可用，或消费组已不存在（如 FLUSHALL 后的 NOGROUP），退避后重建消费组
+                        backoff = sleepBackoff(backoff);
+                        redisService.streamCreateGroup(stream, CONSUMER_GROUP);
+                    } else if (records.isEmpty()) {
+                        // 阻塞读取提前返回空结果说明连接异常，同样退避，避免空转
+                        backoff = System.currentTimeMillis() - startedAt < blockMillis / 2 ? sleepBackoff(backoff) : 0;
+                    } else {
+                        backoff = 0;
+                        handleRecords(stream, records, privateMessage);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    logger.error("读取聊天消息流失败: stream={}", stream, e);
+                }
+            }
+        }, "chat-stream-reader-" + (privateMessage ? "private" : "group"));
+        reader.setDaemon(true);
+        reader.start();
+        readers.add(reader);
+    }
+
+    /**
+     * 按指数退避休眠，返回本次休眠的时长
+     */
+    private static long sleepBackoff(long previous) throws InterruptedException {
+        long backoff = previous == 0 ? MIN_BACKOFF_MILLIS : Math.min(previous * 2, MAX_BACKOFF_MILLIS);
+        Thread.sleep(backoff);
+        return backoff;
+    }
+
+    /**
+     * 定时回收空闲过久的待确认消息
+     */
+    @Scheduled(fixedDelayString = "${chat.transport.streams.claim-interval-millis:15000}")
+    public void reclaimPending() {
+        reclaim(RedisKeys.STREAM_CHAT_GROUP, false);
+        reclaim(RedisKeys.STREAM_CHAT_PRIVATE, true);
+    }
+
+    private void reclaim(String stream, boolean privateMessage) {
+        try {
+            Duration minIdle = Duration.ofMillis(claimIdleMillis);
+            List<MapRecord<String, Object, Object>> claimed = redisService.streamAutoClaim(
+                    stream, CONSUMER_GROUP, consumerName, minIdle, batchSize);
+            // 内容已被裁剪的消息无法入库，按回执索引通知发送者并确认
+            List<String> trimmed = new ArrayList<>();
+            claimed = claimed.stream().filter(record -> {
+                if (record.getValue().isEmpty()) {
+                    trimmed.add(record.getId().getValue());
+                    return false;
+                }
+                return true;
+            }).toList();
+            if (!trimmed.isEmpty()) {
+                failTrimmed(stream, privateMessage, trimmed);
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+            logger.info("回收待确认的聊天消息: stream={}, count={}", stream, claimed.size());
+
+            // XAUTOCLAIM 会增加投递次数，超过上限的视为毒消息，确认丢弃并回执失败
+            Map<String, Long> deliveries = redisService.streamPendingDeliveries(
+                    stream, CONSUMER_GROUP, Duration.ZERO, batchSize * 10);
+            List<MapRecord<String, Object, Object>> retry = new ArrayList<>(claimed.size());
+            List<String> dropped = new ArrayList<>();
+            for (MapRecord<String, Object, Object> record : claimed) {
+                Long count = deliveries.get(record.getId().getValue());
+                if (count != null && count > maxDeliveries) {
+                    ChatMessage message = parse(record);
+                    logger.error("聊天消息超过最大投递次数，放弃入库: stream={}, recordId={}", stream, record.getId());
+                    if (message != null) {
+                        sendAck(message, privateMessage, null, "数据库保存失败");
+                    }
+                    dropped.add(record.getId().getValue());
+                } else {
+                    retry.add(record);
+                }
+            }
+            ackRecords(stream, dropped);
+            if (!retry.isEmpty()) {
+                handleRecords(stream, retry, privateMessage);
+            }
+        } catch (Exception e) {
+            logger.error("回收待确认的聊天消息失败: stream={}", stream, e);
+        }
+        sweepTrimmed(stream, privateMessage);
+    }
+
+    /**
+     * 已被裁剪的待确认消息：取出回执索引向发送者回执失败，并确认以移出待确认列表
+     */
+    private void failTrimmed(String stream, boolean privateMessage, List<String> recordIds) {
+        List<?> infos = redisService.executeScript(TAKE_ACK_INFO_SCRIPT, List.of(ackIndexKey(stream)),
+                recordIds.toArray());
+        if (infos == null) {
+            return; // Redis 不可用，保留在待确认列表中，下次回收时再处理
+        }
+        logger.error("聊天消息入库前已被流裁剪: stream={}, recordIds={}", stream, recordIds);
+        for (Object info : infos) {
+            notifyTrimmed(info, privateMessage);
+        }
+        redisService.streamAck(stream, CONSUMER_GROUP, recordIds);
+    }
+
+    /**
+     * 分段扫描回执索引，处理从未被读取就已被裁剪的消息（不在待确认列表中，回收任务看不到）
+     */
+    private void sweepTrimmed(String stream, boolean privateMessage) {
+        try {
+            String cursor = sweepCursors.getOrDefault(stream, "0");
+            // 只处理追加时间早于回收空闲时间的条目，避免与正在入库的消息冲突
+            long cutoff = System.currentTimeMillis() - claimIdleMillis;
+            List<?> result = redisService.executeScript(SWEEP_TRIMMED_SCRIPT,
+                    List.of(stream, ackIndexKey(stream)), cursor, String.valueOf(SWEEP_SCAN_COUNT), String.valueOf(cutoff));
+            if (result == null) {
+                return;
+            }
+            sweepCursors.put(stream, String.valueOf(result.get(0)));
+            List<?> gone = (List<?>) result.get(1);
+            if (gone.isEmpty()) {
+                return;
+            }
+            List<String> recordIds = new ArrayList<>(gone.size() / 2);
+            for (int i = 0; i + 1 < gone.size(); i += 2) {
+                recordIds.add(String.valueOf(gone.get(i)));
+                notifyTrimmed(gone.get(i + 1), privateMessage);
+            }
+            logger.error("聊天消息未被读取就已被流裁剪: stream={}, recordIds={}", stream, recordIds);
+            redisService.streamAck(stream, CONSUMER_GROUP, recordIds);
+        } catch (Exception e) {
+            logger.error("清理已裁剪的聊天消息失败: stream={}", stream, e);
+        }
+    }
+
+    private void notifyTrimmed(Object info, boolean privateMessage) {
+        if (info == null || info.toString().isEmpty()) {
+            return;
+        }
+        sendAck(JSON.parseObject(info.toString(), ChatMessage.class), privateMessage, null, "消息发送失败，请重新发送");
+    }
+
+    private void ackRecords(String stream, List<String> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>(recordIds.size() + 1);
+        args.add(CONSUMER_GROUP);
+        args.addAll(recordIds);
+        redisService.executeScript(ACK_SCRIPT, List.of(stream, ackIndexKey(stream)), args.toArray());
+    }
+
+    private static String ackIndexKey(String stream) {
+        return stream + RedisKeys.STREAM_ACK_INDEX_SUFFIX;
+    }
+
+    /**
+     * 回执所需的最少字段：发送者、临时ID和序号；没有临时ID的消息不需要回执
+     */
+    private static String ackInfo(ChatMessage message) {
+        if (message.getTempId() == null) {
+            return "";
+        }
+        ChatMessage info = new ChatMessage();
+        info.setSenderId(message.getSenderId());
+        info.setTempId(message.getTempId());
+        info.setSeq(message.getSeq());
+        return JSON.toJSONString(info);
+    }
+
+    /**
+     * 整批入库并确认；入库失败的消息不确认，留在待确认列表中等待回收重试
+     */
+    private void handleRecords(String stream, List<MapRecord<String, Object, Object>> records, boolean privateMessage) {
+        List<ChatMessage> messages = new ArrayList<>(records.size());
+        List<String> recordIds = new ArrayList<>(records.size());
+        List<String> dedupKeys = new ArrayList<>(records.size());
+        List<String> ackIds = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            ChatMessage message = parse(record);
+            if (message == null) {
+                ackIds.add(record.getId().getValue()); // 无法解析的消息直接确认丢弃
+                continue;
+            }
+            // 回收的消息可能已经被其他消费者入库，先判重
+            String dedupKey = messageDedupService.dedupKey(message);
+            if (dedupKey != null) {
+                String existing = messageDedupService.tryClaim(dedupKey);
+                if (existing != null && !MessageDedupService.PENDING.equals(existing)) {
+                    sendAck(message, privateMessage, existing, null);
+                    ackIds.add(record.getId().getValue());
+                    continue;
+                }
+            }
+            messages.add(message);
+            recordIds.add(record.getId().getValue());
+            dedupKeys.add(dedupKey);
+        }
+
+        if (!messages.isEmpty()) {
+            List<String> savedIds;
+            try {
+                savedIds = privateMessage
+                        ? chatService.savePrivateMessagesWithIds(messages)
+                        : chatService.savePublicMessagesWithIds(messages);
+            } catch (Exception e) {
+                logger.error("聊天消息流批量入库失败，等待回收重试: stream={}, count={}", stream, messages.size(), e);
+                savedIds = null;
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                String savedId = savedIds != null ? savedIds.get(i) : null;
+                String dedupKey = dedupKeys.get(i);
+                if (savedId != null) {
+                    if (dedupKey != null) {
+                        messageDedupService.markSaved(dedupKey, savedId);
+                    }
+                    recordLatency(messages.get(i));
+                    sendAck(messages.get(i), privateMessage, savedId, null);
+                    ackIds.add(recordIds.get(i));
+                } else if (dedupKey != null) {
+                    messageDedupService.release(dedupKey);
+                }
+            }
+        }
+        ackRecords(stream, ackIds);
+    }
+
+    private ChatMessage parse(MapRecord<String, Object, Object> record) {
+        Object payload = record.getValue().get(FIELD_PAYLOAD);
+        if (payload == null) {
+            logger.warn("聊天消息流记录缺少内容: recordId={}", record.getId());
+            return null;
+        }
+        try {
+            return JSON.parseObject(payload.toString(), ChatMessage.class);
+        } catch (Exception e) {
+            logger.error("聊天消息流记录解析失败: recordId={}", record.getId(), e);
+            return null;
+        }
+    }
+
+    private void recordLatency(ChatMessage message) {
+        if (message.getTimestamp() != null) {
+            persistLatency.record(System.currentTimeMillis() - message.getTimestamp().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendAck(ChatMessage message, boolean privateMessage, String savedId, String error) {
+        if (message.getTempId() == null) {
+            return;
+        }
+        String type = privateMessage ? "private" : "group";
+        MessageAck ack = savedId != null
+                ? MessageAck.success(message.getTempId(), savedId, type)
+                : MessageAck.failure(message.getTempId(), error, type);
+        ack.setSeq(message.getSeq());
+        messagingTemplate.convertAndSendToUser(
+            message.getSenderId().toString(),
+            "/queue/message-ack",
+            ack
+        );
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.example.entity.dto.Group_message;
+import com.example.entity.dto.PrivateChatMessage;
+import com.example.mapper.Group_messageMapper;
+import com.example.mapper.Private_messagesMapper;
+import com.example.service.RedisService;
+import com.example.service.SequenceService;
+import com.example.utils.ChatPartitionRouter;
+import com.example.utils.RedisKeys;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Redis INCRBY 的会话序号分配
+ * 每个节点按会话一次预占一段序号（chat.sequence.block-size），段内分配只在本地加锁自增，不产生网络往返；
+ * 段用完或本地缓存淘汰后再向 Redis 申请下一段。
+ * 注意：段大于1时，多个节点同时向同一会话发消息，各节点的段交错使用，序号在本节点内严格递增、在集群内唯一但不保证全局有序，
+ * 所以多节点传输模式下默认段大小为1；
+ * 节点重启或段被淘汰时未用完的序号会被跳过，客户端补拉这段区间时服务端返回空即可确认不是丢消息
+ */
+@Service
+public class SequenceServiceImpl implements SequenceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SequenceServiceImpl.class);
+
+    // 计数器不存在时返回-1，由调用方从数据库取当前最大序号后再带着下限重试；SET NX 防止并发初始化互相覆盖
+    private static final RedisScript<Long> ALLOCATE_BLOCK_SCRIPT = new DefaultRedisScript<>(
+            """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                if ARGV[2] == '' then
+                    return -1
+                end
+                redis.call('SET', KEYS[1], ARGV[2], 'NX')
+            end
+            return redis.call('INCRBY', KEYS[1], ARGV[1])
+            """,
+            Long.class);
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private Group_messageMapper group_messageMapper;
+
+    @Resource
+    private Private_messagesMapper privateMessageMapper;
+
+    // 每次向 Redis 预占的序号个数，为1时每条消息都访问一次 Redis，但多节点下序号连续且全局有序；
+    // 未配置时按传输模式取默认值：多节点模式（amqp、streams）为1，单节点的 embedded 模式为20
+    @Value("${chat.sequence.block-size:0}")
+    private int blockSize;
+
+    @Value("${chat.transport.mode:amqp}")
+    private String transportMode;
+
+    @Value("${chat.sequence.local-max-size:10000}")
+    private long localMaxSize;
+
+    // 会话空闲超过该时间后丢弃本地段，剩余序号作废
+    @Value("${chat.sequence.idle-seconds:600}")
+    private long idleSeconds;
+
+    // 会话键 -> 本节点当前持有的序号段
+    private Cache<String, Block> blocks;
+
+    @PostConstruct
+    public void initBlocks() {
+        if (blockSize <= 0) {
+            // 多节点下各节点的段交错使用，客户端会把段之间的跳跃当成缺口去补拉，因此默认每条消息单独分配
+            blockSize = "embedded".equals(transportMode) ? 20 : 1;
+        }
+        logger.info("会话序号分配: transport={}, blockSize={}", transportMode, blockSize);
+        blocks = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+    }
+
+    @Override
+    public Long nextGroupSeq(String groupId) {
+        return next(RedisKeys.CHAT_SEQ_GROUP + groupId, () -> maxGroupSeq(groupId));
+    }
+
+    @Override
+    public Long nextPrivateSeq(int userId1, int userId2) {
+        String dialogId = ChatPartitionRouter.dialogId(userId1, userId2);
+        return next(RedisKeys.CHAT_SEQ_PRIVATE + dialogId, () -> maxPrivateSeq(dialogId));
+    }
+
+    private Long next(String key, Supplier<Long> floorLoader) {
+        Block block = blocks.get(key, k -> new Block());
+        synchronized (block) {
+            if (block.next > block.end) {
+                Long end = allocateBlock(key, floorLoader);
+                if (end == null) {
+                    return null;
+                }
+                block.next = end - blockSize + 1;
+                block.end = end;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * 向 Redis 预占一段序号，返回段内最后一个序号
+     * 计数器丢失（首次使用或 Redis 数据被清空）时以数据库中已有的最大序号为下限重新初始化，避免序号回退
+     */
+    private Long allocateBlock(String key, Supplier<Long> floorLoader) {
+        Long end = redisService.executeScript(ALLOCATE_BLOCK_SCRIPT, List.of(key), String.valueOf(blockSize), "");
+        if (end != null && end == -1L) {
+            long floor;
+            try {
+                Long max = floorLoader.get();
+                floor = max != null ? max : 0L;
+            } catch (Exception e) {
+                logger.error("读取会话最大序号失败，暂不分配序号: key={}", key, e);
+                return null;
+            }
+            end = redisService.executeScript(ALLOCATE_BLOCK_SCRIPT, List.of(key), String.valueOf(blockSize), String.valueOf(floor));
+        }
+        if (end == null || end < 0) {
+            logger.warn("分配会话序号失败: key={}", key);
+            return null;
+        }
+        return end;
+    }
+
+    private Long maxGroupSeq(String groupId) {
+        List<Object> max = group_messageMapper.selectObjs(
+                Wrappers.<Group_message>query().select("MAX(seq)").eq("groupId", groupId));
+        return max.isEmpty() || max.get(0) == null ? null : ((Number) max.get(0)).longValue();
+    }
+
+    private Long maxPrivateSeq(String dialogId) {
+        List<Object> max = privateMessageMapper.selectObjs(
+                Wrappers.<PrivateChatMessage>query().select("MAX(seq)").eq("conversation_id", dialogId));
+        return max.isEmpty() || max.get(0) == null ? null : ((Number) max.get(0)).longValue();
+    }
+
+    /**
+     * 本节点持有的一段序号 [next, end]
+     */
+    private static class Block {
+        long next = 1;
+        long end = 0;
+    }
+}
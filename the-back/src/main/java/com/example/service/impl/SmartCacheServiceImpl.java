@@ -2,208 +2,485 @@ package com.example.service.impl;
 
 import com.example.service.SmartCacheService;
 import com.example.service.RedisService;
+import com.example.service.LocalCacheService;
+import com.example.service.BloomFilterService;
+import com.example.service.DistributedLockService;
+import com.example.utils.CacheEnvelope;
+import com.example.utils.RedisKeys;
 import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
  * 智能缓存服务实现 - P2级别优化
+ * 缓存未命中时两级合并加载：同一节点内并发请求共享一个 CompletableFuture（single-flight），
+ * 跨节点由 Redis 租约保证每个键只有一个节点查询数据库，其余节点等待 Pub/Sub 加载完成通知后直接读 Redis。
+ * 缓存值以 CacheEnvelope 存储：软过期（或按 XFetch 提前）后继续返回旧值并在后台刷新一次，硬过期后才回源
  */
 @Service
-public class SmartCacheServiceImpl implements SmartCacheService {
-    
+public class SmartCacheServiceImpl implements SmartCacheService, MessageListener {
+
     private static final Logger logger = LoggerFactory.getLogger(SmartCacheServiceImpl.class);
-    private static final String CACHE_LOCK_PREFIX = "cache_lock:";
-    private static final Duration LOCK_TIMEOUT = Duration.ofMinutes(2);
+    private static final String CACHE_LOCK_PREFIX = "cache:";
     private static final Duration DEFAULT_TTL = Duration.ofHours(1);
-    
+    private static final Duration NULL_TTL = Duration.ofMinutes(5);
+    private static final String LOAD_METRIC = "cache.load";
+
+    // 把条目标记为软过期并保留剩余的硬过期时间，返回条目记录的软过期时长；不是包装条目时直接删除并返回 0
+    private static final RedisScript<Long> MARK_STALE_SCRIPT = new DefaultRedisScript<>(
+            """
+            local raw = redis.call('GET', KEYS[1])
+            if not raw then
+                return 0
+            end
+            local ok, entry = pcall(cjson.decode, raw)
+            if not ok or type(entry) ~= 'table' or entry['env'] ~= 1 then
+                redis.call('DEL', KEYS[1])
+                return 0
+            end
+            local ttl = redis.call('PTTL', KEYS[1])
+            if ttl > 0 then
+                entry['softExpireAt'] = 0
+                redis.call('SET', KEYS[1], cjson.encode(entry), 'PX', ttl)
+            end
+            return entry['softTtlMillis'] or 0
+            """,
+            Long.class);
+
+    // 缓存键前缀 -> 布隆过滤器命名空间，前缀后的部分即实体ID
+    private static final Map<String, String> FILTER_NAMESPACES = Map.of(
+            RedisKeys.USER_GROUPS, BloomFilterService.USER,
+            RedisKeys.GROUP_DETAIL, BloomFilterService.GROUP);
+
     @Autowired
     private RedisService redisService;
-    
-    // 简单的内存布隆过滤器模拟（生产环境建议使用Guava BloomFilter或Redis BloomFilter）
-    private final ConcurrentHashMap<String, Boolean> bloomFilter = new ConcurrentHashMap<>();
-    
+
+    @Autowired
+    private LocalCacheService localCacheService;
+
+    @Autowired
+    private BloomFilterService bloomFilterService;
+
+    @Autowired
+    private DistributedLockService distributedLockService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+
+    // 跨节点加载锁的租约，持有期间自动续期，持有者宕机后其他节点最多等这么久就能接手
+    @Value("${cache.single-flight.lease-millis:10000}")
+    private long leaseMillis;
+
+    // 同节点或跨节点等待他人加载结果的最长时间，超时后自行查询数据库
+    @Value("${cache.single-flight.wait-millis:3000}")
+    private long waitMillis;
+
+    // 软过期之后还能返回旧值的时长（硬过期 = 软过期 + 该时长），刷新持续失败时最多返回这么久的旧值
+    @Value("${cache.refresh.stale-grace-seconds:600}")
+    private long staleGraceSeconds;
+
+    // XFetch 提前刷新系数，越大越早刷新，0 表示只在软过期后刷新
+    @Value("${cache.refresh.beta:1.0}")
+    private double refreshBeta;
+
+    // 后台刷新线程数与等待队列容量；队列满时放弃本次刷新，调用方照常拿到旧值，下次读取再触发
+    @Value("${cache.refresh.pool-size:4}")
+    private int refreshPoolSize;
+
+    @Value("${cache.refresh.queue-capacity:200}")
+    private int refreshQueueCapacity;
+
+    // 后台刷新专用线程池，与 WebSocket 心跳和定时任务共用的调度器隔离，慢查询只会堆积在这里
+    private ThreadPoolExecutor refreshExecutor;
+
+    // 本节点正在进行的加载，键为缓存键
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // 等待其他节点加载完成通知的键
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> remoteLoads = new ConcurrentHashMap<>();
+
+    // 本节点已提交后台刷新的键，同一键同一时间只提交一次
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    // 合并加载统计：leader 为本节点实际执行加载，coalesced 为同节点合并，
+    // remote 为等到其他节点加载完成，fallback 为等待超时后自行查询
+    private Counter leaderLoads;
+    private Counter coalescedLoads;
+    private Counter remoteLoadsHit;
+    private Counter fallbackLoads;
+
+    // 返回旧值并触发后台刷新的次数：stale 为软过期后，early 为 XFetch 提前
+    private Counter staleRefreshes;
+    private Counter earlyRefreshes;
+
+    @PostConstruct
+    public void init() {
+        leaderLoads = meterRegistry.counter(LOAD_METRIC, "result", "leader");
+        coalescedLoads = meterRegistry.counter(LOAD_METRIC, "result", "coalesced");
+        remoteLoadsHit = meterRegistry.counter(LOAD_METRIC, "result", "remote");
+        fallbackLoads = meterRegistry.counter(LOAD_METRIC, "result", "fallback");
+        staleRefreshes = meterRegistry.counter("cache.refresh", "trigger", "stale");
+        earlyRefreshes = meterRegistry.counter("cache.refresh", "trigger", "early");
+        // 合并率 = 未查询数据库的未命中 / 全部未命中
+        meterRegistry.gauge("cache.load.coalescing.ratio", this, SmartCacheServiceImpl::coalescingRatio);
+        meterRegistry.gauge("cache.load.in.flight", inFlight, Map::size);
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisKeys.CACHE_LOADED_CHANNEL));
+        AtomicInteger threadIndex = new AtomicInteger();
+        refreshExecutor = new ThreadPoolExecutor(refreshPoolSize, refreshPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshQueueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "cache-refresh-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        refreshExecutor.allowCoreThreadTimeOut(true);
+        meterRegistry.gauge("cache.refresh.queue.size", refreshExecutor, e -> e.getQueue().size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
     @Override
     public void smartInvalidateAndWarmup(String cacheKey, Supplier<Object> dataLoader) {
         try {
-            // 步骤1：立即删除旧缓存
-            redisService.delete(cacheKey);
-            logger.debug("缓存已删除: {}", cacheKey);
-            
-            // 步骤2：异步预热新缓存
-            asyncWarmupCache(cacheKey, dataLoader, DEFAULT_TTL);
-            
+            // 步骤1：把 Redis 中的条目标记为过期（不删除，刷新完成前读者仍拿到旧值而不是回源），再清除各节点的本地缓存
+            Long softTtlMillis = redisService.executeScript(MARK_STALE_SCRIPT, List.of(cacheKey));
+            localCacheService.invalidate(cacheKey);
+            logger.debug("缓存已标记过期: {}", cacheKey);
+
+            // 步骤2：立即在后台刷新，沿用条目原来的软过期时长
+            Duration softTtl = softTtlMillis != null && softTtlMillis > 0 ? Duration.ofMillis(softTtlMillis) : DEFAULT_TTL;
+            triggerRefresh(cacheKey, dataLoader, softTtl, 0);
+
         } catch (Exception e) {
             logger.error("智能缓存失效失败: {}", cacheKey, e);
         }
     }
-    
+
     @Override
     public <T> T getWithProtection(String cacheKey, Supplier<T> dbQuery, Class<T> clazz, Duration ttl) {
+        return getWithRefresh(cacheKey, dbQuery, clazz, raw -> JSON.parseObject(raw, clazz), ttl);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getWithRefresh(String cacheKey, Supplier<T> dbQuery, Class<?> localType,
+                                Function<String, T> parser, Duration softTtl) {
         try {
-            // 步骤1：先查缓存
+            // 步骤1：先查本地缓存，再查 Redis
+            Object local = localCacheService.get(cacheKey, localType);
+            if (local != null) {
+                return (T) local;
+            }
             String cached = redisService.get(cacheKey);
-            if (cached != null && !"NULL".equals(cached)) {
-                T result = JSON.parseObject(cached, clazz);
+            if ("NULL".equals(cached)) {
+                return null;
+            }
+            if (cached != null) {
+                CacheEnvelope envelope = CacheEnvelope.parse(cached);
+                T result = parser.apply(envelope.getData());
+                long now = System.currentTimeMillis();
+                if (envelope.isStale(now)) {
+                    // 已软过期：返回旧值，由一个请求在后台刷新；旧值不进本地缓存
+                    staleRefreshes.increment();
+                    triggerRefresh(cacheKey, dbQuery::get, softTtl, envelope.getSoftExpireAt());
+                } else {
+                    if (envelope.shouldRefreshEarly(now, refreshBeta)) {
+                        earlyRefreshes.increment();
+                        triggerRefresh(cacheKey, dbQuery::get, softTtl, envelope.getSoftExpireAt());
+                    }
+                    localCacheService.put(cacheKey, result);
+                }
                 logger.debug("缓存命中: {}", cacheKey);
                 return result;
             }
-            
+
             // 步骤2：布隆过滤器检查（防止缓存穿透）
             if (!mightExist(cacheKey)) {
                 logger.debug("布隆过滤器判断数据不存在: {}", cacheKey);
                 return null;
             }
-            
-            // 步骤3：分布式锁保护数据库查询
-            String lockKey = CACHE_LOCK_PREFIX + cacheKey;
-            return executeWithLock(lockKey, () -> {
-                // 双重检查
-                String recheck = redisService.get(cacheKey);
-                if (recheck != null && !"NULL".equals(recheck)) {
-                    return JSON.parseObject(recheck, clazz);
-                }
-                
-                // 查询数据库
-                T data = dbQuery.get();
-                if (data != null) {
-                    // 缓存数据并添加到布隆过滤器
-                    redisService.set(cacheKey, JSON.toJSONString(data), ttl);
-                    addToFilter(cacheKey);
-                    logger.debug("数据已缓存: {}", cacheKey);
-                } else {
-                    // 缓存空值，防止穿透
-                    redisService.set(cacheKey, "NULL", Duration.ofMinutes(5));
-                    logger.debug("缓存空值: {}", cacheKey);
-                }
-                return data;
-            });
-            
+
+            // 步骤3：同节点合并、跨节点租约保护数据库查询
+            return singleFlight(cacheKey, () -> loadWithLease(cacheKey, dbQuery, parser, softTtl));
+
         } catch (Exception e) {
             logger.error("保护性缓存读取失败: {}", cacheKey, e);
             // 降级到直接查询数据库
             return dbQuery.get();
         }
     }
-    
+
     @Override
     @Async
     public void asyncWarmupCache(String cacheKey, Supplier<Object> dataLoader, Duration ttl) {
-        String lockKey = CACHE_LOCK_PREFIX + cacheKey;
-        
-        try {
-            // 尝试获取分布式锁
-            boolean acquired = acquireLock(lockKey);
-            if (!acquired) {
-                logger.debug("其他实例正在预热缓存: {}", cacheKey);
+        refresh(cacheKey, dataLoader, ttl, 0);
+    }
+
+    @Override
+    public boolean mightExist(String cacheKey) {
+        // 只有能对应到实体ID的缓存键才经过布隆过滤器，其余一律放行
+        for (Map.Entry<String, String> entry : FILTER_NAMESPACES.entrySet()) {
+            if (cacheKey.startsWith(entry.getKey())) {
+                return bloomFilterService.mightContain(entry.getValue(), cacheKey.substring(entry.getKey().length()));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void addToFilter(String cacheKey) {
+        for (Map.Entry<String, String> entry : FILTER_NAMESPACES.entrySet()) {
+            if (cacheKey.startsWith(entry.getKey())) {
+                bloomFilterService.add(entry.getValue(), cacheKey.substring(entry.getKey().length()));
+                logger.debug("已添加到布隆过滤器: {}", cacheKey);
                 return;
             }
-            
-            // 双重检查：可能其他实例已经预热了
-            if (redisService.exists(cacheKey)) {
-                logger.debug("缓存已被其他实例预热: {}", cacheKey);
+        }
+    }
+
+    /**
+     * 收到其他节点的加载完成通知，唤醒本节点等待该键的请求
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CompletableFuture<Void> waiter = remoteLoads.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+    /**
+     * 提交后台刷新，本节点内同一键同一时间只提交一次
+     * @param observedSoftExpireAt 触发时读到的软过期时间，执行时发现条目已被他人刷新则跳过
+     */
+    private void triggerRefresh(String cacheKey, Supplier<Object> dataLoader, Duration softTtl, long observedSoftExpireAt) {
+        if (!refreshing.add(cacheKey)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh(cacheKey, dataLoader, softTtl, observedSoftExpireAt);
+                } finally {
+                    refreshing.remove(cacheKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(cacheKey);
+            logger.debug("缓存刷新队列已满，本次跳过: {}", cacheKey);
+        }
+    }
+
+    /**
+     * 持锁重建缓存条目；与未命中加载共用同一把锁，集群内同一键同一时间只有一个节点查询数据库
+     */
+    private void refresh(String cacheKey, Supplier<Object> dataLoader, Duration softTtl, long observedSoftExpireAt) {
+        // 尝试获取分布式锁
+        DistributedLockService.Lock lock = distributedLockService.tryLock(CACHE_LOCK_PREFIX + cacheKey, Duration.ofMillis(leaseMillis));
+        if (lock == null) {
+            logger.debug("其他实例正在刷新缓存: {}", cacheKey);
+            return;
+        }
+
+        try {
+            // 双重检查：可能其他实例已经刷新了
+            String current = redisService.get(cacheKey);
+            if (current != null && !"NULL".equals(current)
+                    && CacheEnvelope.parse(current).getSoftExpireAt() > observedSoftExpireAt) {
+                logger.debug("缓存已被其他实例刷新: {}", cacheKey);
                 return;
             }
-            
-            // 加载数据并缓存
+
+            // 加载数据并缓存，锁丢失后被他人取得时放弃写入
+            long start = System.currentTimeMillis();
             Object data = dataLoader.get();
-            if (data != null) {
-                redisService.set(cacheKey, JSON.toJSONString(data), ttl);
+            long computeMillis = System.currentTimeMillis() - start;
+            if (data == null) {
+                // 实体已不存在，不能继续返回旧值
+                distributedLockService.fencedSet(lock, cacheKey, "NULL", NULL_TTL);
+                localCacheService.invalidate(cacheKey);
+                return;
+            }
+            String value = CacheEnvelope.wrap(JSON.toJSONString(data), softTtl, computeMillis);
+            if (distributedLockService.fencedSet(lock, cacheKey, value, hardTtl(softTtl))) {
                 addToFilter(cacheKey);
-                logger.info("缓存预热完成: {}", cacheKey);
+                // 让各节点丢弃本地缓存中刷新前的值
+                localCacheService.invalidate(cacheKey);
+                redisService.publish(RedisKeys.CACHE_LOADED_CHANNEL, cacheKey);
+                logger.debug("缓存刷新完成: {}, 耗时={}ms", cacheKey, computeMillis);
             }
-            
+
         } catch (Exception e) {
-            logger.error("缓存预热失败: {}", cacheKey, e);
+            logger.error("缓存刷新失败: {}", cacheKey, e);
         } finally {
             // 释放锁
-            releaseLock(lockKey);
+            distributedLockService.unlock(lock);
         }
     }
-    
-    @Override
-    public boolean mightExist(String cacheKey) {
-        // 🔧 HOTFIX: 放宽布隆过滤器检查，解决群组访问失败问题
-        // 对于群组相关的缓存键，总是允许查询数据库
-        if (cacheKey.contains("group") || cacheKey.contains("GROUP")) {
-            return true; // 群组相关缓存总是允许查询
-        }
-        
-        // 简单的内存布隆过滤器实现
-        // 生产环境建议使用更高效的实现
-        return bloomFilter.containsKey(cacheKey) || 
-               cacheKey.contains("system") || 
-               cacheKey.contains("default") ||
-               cacheKey.contains("user"); // 也放宽用户相关检查
-    }
-    
-    @Override
-    public void addToFilter(String cacheKey) {
-        bloomFilter.put(cacheKey, true);
-        logger.debug("已添加到布隆过滤器: {}", cacheKey);
+
+    /**
+     * 同一缓存键的并发未命中只执行一次 loader，其余线程等待同一个结果
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T singleFlight(String cacheKey, Supplier<T> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(cacheKey, mine);
+        if (existing != null) {
+            coalescedLoads.increment();
+            try {
+                return (T) existing.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("操作被中断", e);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new RuntimeException("等待缓存加载失败: " + cacheKey, e);
+            }
+        }
+        try {
+            T data = loader.get();
+            mine.complete(data);
+            return data;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
     }
-    
+
     /**
-     * 使用分布式锁执行操作
+     * 抢到租约的节点查询数据库并回填缓存，其余节点等待加载完成通知后读 Redis
      */
-    private <T> T executeWithLock(String lockKey, Supplier<T> action) {
-        boolean acquired = false;
+    private <T> T loadWithLease(String cacheKey, Supplier<T> dbQuery, Function<String, T> parser, Duration softTtl) {
+        DistributedLockService.Lock lock = distributedLockService.tryLock(CACHE_LOCK_PREFIX + cacheKey, Duration.ofMillis(leaseMillis));
+        if (lock != null) {
+            leaderLoads.increment();
+            try {
+                return loadAndCache(cacheKey, dbQuery, parser, softTtl, lock);
+            } finally {
+                distributedLockService.unlock(lock);
+            }
+        }
+
+        // 先登记等待再复查缓存，避免在两步之间错过通知
+        CompletableFuture<Void> waiter = remoteLoads.computeIfAbsent(cacheKey, k -> new CompletableFuture<>());
         try {
-            acquired = acquireLock(lockKey);
-            if (acquired) {
-                return action.get();
-            } else {
-                // 等待其他线程完成
-                Thread.sleep(100);
-                return action.get(); // 简化处理，可以递归重试
+            String cached = redisService.get(cacheKey);
+            if (cached == null) {
+                waiter.get(waitMillis, TimeUnit.MILLISECONDS);
+                cached = redisService.get(cacheKey);
+            }
+            if (cached != null) {
+                remoteLoadsHit.increment();
+                if ("NULL".equals(cached)) {
+                    return null;
+                }
+                T result = parser.apply(CacheEnvelope.parse(cached).getData());
+                localCacheService.put(cacheKey, result);
+                return result;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("操作被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("等待其他节点加载超时: {}", cacheKey);
         } finally {
-            if (acquired) {
-                releaseLock(lockKey);
-            }
+            remoteLoads.remove(cacheKey, waiter);
         }
+
+        // 持有租约的节点超时未完成（可能已宕机），自行查询
+        fallbackLoads.increment();
+        return loadAndCache(cacheKey, dbQuery, parser, softTtl, null);
     }
-    
+
     /**
-     * 获取分布式锁
+     * 查询数据库并回填缓存；持有锁时按防护令牌写入，锁已被他人接手时不覆盖对方的结果
      */
-    private boolean acquireLock(String lockKey) {
-        try {
-            // 使用Redis实现分布式锁
-            String lockValue = String.valueOf(System.currentTimeMillis());
-            // 简化实现，生产环境建议使用Redisson等专业库
-            String existing = redisService.get(lockKey);
-            if (existing == null) {
-                redisService.set(lockKey, lockValue, LOCK_TIMEOUT);
-                return true;
-            }
-            return false;
-        } catch (Exception e) {
-            logger.error("获取分布式锁失败: {}", lockKey, e);
-            return false;
+    private <T> T loadAndCache(String cacheKey, Supplier<T> dbQuery, Function<String, T> parser, Duration softTtl,
+                               DistributedLockService.Lock lock) {
+        // 双重检查
+        String recheck = redisService.get(cacheKey);
+        if ("NULL".equals(recheck)) {
+            return null;
+        }
+        if (recheck != null) {
+            T result = parser.apply(CacheEnvelope.parse(recheck).getData());
+            localCacheService.put(cacheKey, result);
+            return result;
         }
+
+        // 查询数据库，记录耗时供 XFetch 使用
+        long start = System.currentTimeMillis();
+        T data = dbQuery.get();
+        long computeMillis = System.currentTimeMillis() - start;
+        if (data != null) {
+            // 缓存数据并添加到布隆过滤器
+            cacheValue(cacheKey, CacheEnvelope.wrap(JSON.toJSONString(data), softTtl, computeMillis), hardTtl(softTtl), lock);
+            localCacheService.put(cacheKey, data);
+            addToFilter(cacheKey);
+            logger.debug("数据已缓存: {}", cacheKey);
+        } else {
+            // 缓存空值，防止穿透
+            cacheValue(cacheKey, "NULL", NULL_TTL, lock);
+            logger.debug("缓存空值: {}", cacheKey);
+        }
+        redisService.publish(RedisKeys.CACHE_LOADED_CHANNEL, cacheKey);
+        return data;
     }
-    
-    /**
-     * 释放分布式锁
-     */
-    private void releaseLock(String lockKey) {
-        try {
-            redisService.delete(lockKey);
-            logger.debug("分布式锁已释放: {}", lockKey);
-        } catch (Exception e) {
-            logger.error("释放分布式锁失败: {}", lockKey, e);
+
+    private void cacheValue(String cacheKey, String value, Duration ttl, DistributedLockService.Lock lock) {
+        if (lock != null) {
+            distributedLockService.fencedSet(lock, cacheKey, value, ttl);
+        } else {
+            redisService.set(cacheKey, value, ttl);
         }
     }
-} 
\ No newline at end of file
+
+    private Duration hardTtl(Duration softTtl) {
+        return softTtl.plusSeconds(staleGraceSeconds);
+    }
+
+    private double coalescingRatio() {
+        double total = leaderLoads.count() + coalescedLoads.count() + remoteLoadsHit.count() + fallbackLoads.count();
+        return total == 0 ? 0 : (coalescedLoads.count() + remoteLoadsHit.count()) / total;
+    }
+}
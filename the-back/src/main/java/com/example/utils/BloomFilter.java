@@ -0,0 +1,117 @@
+package com.example.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 定长位数组布隆过滤器
+ * 位数 m = -n·ln(p) / (ln2)²，哈希个数 k = round(m/n · ln2)；
+ * 元素只做一次 64 位哈希，再用双重哈希 h1 + i·h2 派生出 k 个位置。
+ * 位数组基于 AtomicLongArray，可并发写入和读取；不支持删除，集合变化后需整体重建
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long numBits;
+    private final int numHashes;
+
+    private BloomFilter(long numBits, int numHashes) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.words = new AtomicLongArray(Math.toIntExact((numBits + 63) >>> 6));
+    }
+
+    /**
+     * 按预期元素个数和误判率创建
+     * @param expectedInsertions 预期元素个数
+     * @param fpp 期望误判率，取值 (0, 1)
+     */
+    public static BloomFilter create(long expectedInsertions, double fpp) {
+        long numBits = optimalNumBits(expectedInsertions, fpp);
+        return new BloomFilter(numBits, optimalNumHashes(expectedInsertions, numBits));
+    }
+
+    public static long optimalNumBits(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions 必须大于0");
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp 必须在 (0, 1) 之间");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 向上取整到 64 的倍数，位数组不留零头
+        return Math.max(64, (bits + 63) & ~63L);
+    }
+
+    public static int optimalNumHashes(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 计算元素对应的 k 个位下标，共享到 Redis 位图时也使用同一套下标
+     */
+    public static long[] bitIndexes(String value, long numBits, int numHashes) {
+        long hash = hash64(value);
+        long h1 = hash;
+        long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1L;
+        long[] indexes = new long[numHashes];
+        long combined = h1;
+        for (int i = 0; i < numHashes; i++) {
+            indexes[i] = Math.floorMod(combined, numBits);
+            combined += h2;
+        }
+        return indexes;
+    }
+
+    public void put(String value) {
+        for (long index : bitIndexes(value, numBits, numHashes)) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(String value) {
+        for (long index : bitIndexes(value, numBits, numHashes)) {
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int hashCount() {
+        return numHashes;
+    }
+
+    /**
+     * FNV-1a 后再经 MurmurHash3 的 fmix64 打散，低位分布足够均匀
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return fmix64(hash);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
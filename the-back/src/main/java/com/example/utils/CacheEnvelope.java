@@ -0,0 +1,65 @@
+package com.example.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带软过期时间的缓存条目
+ * Redis 键的 TTL 是硬过期，过期后才需要回源；软过期之后条目仍可返回，但应由一个请求在后台刷新。
+ * 软过期前按 XFetch 规则以逐渐增大的概率提前刷新：重建越慢、离软过期越近，越早触发，热点键不会出现集中失效
+ */
+@Data
+public class CacheEnvelope {
+
+    // 区分包装条目和旧格式的裸 JSON
+    private int env = 1;
+    // 业务数据的 JSON
+    private String data;
+    // 软过期时间（毫秒时间戳），0 表示已被标记为过期
+    private long softExpireAt;
+    // 写入时使用的软过期时长，失效后后台刷新沿用
+    private long softTtlMillis;
+    // 上一次重建耗时（毫秒），即 XFetch 中的 delta
+    private long computeMillis;
+
+    public static String wrap(String data, Duration softTtl, long computeMillis) {
+        CacheEnvelope envelope = new CacheEnvelope();
+        envelope.setData(data);
+        envelope.setSoftExpireAt(System.currentTimeMillis() + softTtl.toMillis());
+        envelope.setSoftTtlMillis(softTtl.toMillis());
+        envelope.setComputeMillis(computeMillis);
+        return JSON.toJSONString(envelope);
+    }
+
+    /**
+     * 解析缓存值；旧格式的裸 JSON 视为已软过期，读到后会被刷新为新格式
+     */
+    public static CacheEnvelope parse(String raw) {
+        if (raw.startsWith("{")) {
+            JSONObject object = JSON.parseObject(raw);
+            if (object.getIntValue("env") == 1) {
+                return object.toJavaObject(CacheEnvelope.class);
+            }
+        }
+        CacheEnvelope legacy = new CacheEnvelope();
+        legacy.setData(raw);
+        return legacy;
+    }
+
+    public boolean isStale(long now) {
+        return now >= softExpireAt;
+    }
+
+    /**
+     * XFetch：now - delta·beta·ln(rand) >= 软过期时间 时提前刷新，ln(rand) 为负数
+     * @param beta 大于 1 时更早刷新，小于 1 时更晚
+     */
+    public boolean shouldRefreshEarly(long now, double beta) {
+        double gap = -computeMillis * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= softExpireAt;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 私聊消息分区路由
+ * 按对话ID（min:max）把私聊消息哈希到固定的K个分区队列，
+ * 同一对话永远落在同一个队列、由同一个消费者顺序处理，不同对话之间可以并行。
+ * 注意：修改分区数会改变对话与队列的映射，应在队列清空后再调整
+ */
+@Component
+public class ChatPartitionRouter {
+
+    // 分区队列名前缀，完整队列名为 privateChat.<分区号>
+    public static final String PRIVATE_CHAT_PARTITION_PREFIX = "privateChat.";
+
+    @Value("${chat.private.partitions:4}")
+    private int partitions;
+
+    /**
+     * 计算对话ID，保证A发给B和B发给A得到相同的ID
+     */
+    public static String dialogId(int userId1, int userId2) {
+        return userId1 < userId2 ? userId1 + ":" + userId2 : userId2 + ":" + userId1;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * 计算对话所属的分区号
+     */
+    public int partitionOf(String dialogId) {
+        return Math.floorMod(dialogId.hashCode(), partitions);
+    }
+
+    /**
+     * 分区号对应的队列名
+     */
+    public String queueName(int partition) {
+        return PRIVATE_CHAT_PARTITION_PREFIX + partition;
+    }
+
+    /**
+     * 两个用户之间的私聊消息应投递的队列
+     */
+    public String privateChatQueue(int senderId, int receiverId) {
+        return queueName(partitionOf(dialogId(senderId, receiverId)));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天消息重试拓扑命名
+ * 每个消费队列 Q 对应一组延迟重试队列 Q.retry.1 .. Q.retry.N：
+ * 消息在第n级重试队列中等待 delays[n-1] 毫秒后过期，经默认交换机死信回原队列 Q；
+ * 超过 N 次仍失败的消息进入停车场队列 chat.parking-lot，由管理员检查后重放
+ */
+@Component
+public class ChatRetryRouter {
+
+    public static final String PARKING_LOT_QUEUE = "chat.parking-lot";
+
+    // 停车场消息头：原始队列、最后一次错误、进入停车场的时间
+    public static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+    public static final String LAST_ERROR_HEADER = "x-last-error";
+    public static final String PARKED_AT_HEADER = "x-parked-at";
+
+    // 各级重试的等待时间（毫秒），按指数递增
+    @Value("${chat.retry.delays:2000,8000,30000}")
+    private long[] delays;
+
+    /**
+     * 最大重试次数，即重试队列的级数
+     */
+    public int getMaxRetries() {
+        return delays.length;
+    }
+
+    /**
+     * 第 attempt 级重试的等待时间，attempt 从1开始
+     */
+    public long delayOf(int attempt) {
+        return delays[attempt - 1];
+    }
+
+    /**
+     * 队列 queue 的第 attempt 级重试队列名，attempt 从1开始
+     */
+    public String retryQueue(String queue, int attempt) {
+        return queue + ".retry." + attempt;
+    }
+}
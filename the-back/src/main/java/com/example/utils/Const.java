@@ -17,6 +17,9 @@ public class Const {
     public static final String GROUP_CHAT_MEMBER_KEY = "chat:group:member:";
     public static final int MESSAGE_EXPIRE_DAYS = 7; // 消息保存7天
 
+    // 聊天消息重试次数随消息头传递，不再依赖单机内存计数
+    public static final String MESSAGE_RETRY_COUNT_HEADER = "x-retry-count";
+
     public static final int ORDER_CORS = -102;
     public static final int ORDER_FLOW_LIMIT = -101;
 
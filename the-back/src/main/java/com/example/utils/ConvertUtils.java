@@ -3,12 +3,18 @@ package com.example.utils;
 import com.example.entity.dto.Group_message;
 import com.example.entity.vo.response.ChatMessage;
 import com.example.entity.vo.response.FriendsResponse;
-import com.example.entity.dto.Account;
+import com.example.entity.vo.response.PrivateMessageView;
 import com.example.entity.dto.PrivateChatMessage;
 import com.example.entity.dto.Friends;
 import com.example.service.AccountService;
 import jakarta.annotation.Resource;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 
 public class ConvertUtils {
 
@@ -18,6 +24,7 @@ public class ConvertUtils {
     public static Group_message convertToGroupMessage(ChatMessage message){
         Group_message group_message = new Group_message();
         System.out.println("转换群组消息: " + message);
+        group_message.setId(parseMessageId(message.getId()));
         group_message.setGroupId(message.getGroupId());
         group_message.setContent(message.getContent());
         group_message.setSenderId(message.getSenderId());
@@ -39,12 +46,13 @@ public class ConvertUtils {
         group_message.setFileType(message.getFileType());
         group_message.setFileSize(message.getFileSize());
         group_message.setMessageType(message.getMessageType());
+        group_message.setSeq(message.getSeq());
         return group_message;
     }
 
     public static PrivateChatMessage convertToPrivateChatMessage(ChatMessage message){
         PrivateChatMessage privateChatMessage = new PrivateChatMessage();
-        privateChatMessage.setId(null);
+        privateChatMessage.setId(parseMessageId(message.getId()));
         privateChatMessage.setSenderId(message.getSenderId());
         privateChatMessage.setReceiverId(message.getReceiverId());
         privateChatMessage.setContent(message.getContent());
@@ -54,11 +62,28 @@ public class ConvertUtils {
         privateChatMessage.setFileType(message.getFileType());
         privateChatMessage.setFileSize(message.getFileSize());
         privateChatMessage.setMessageType(message.getMessageType());
+        privateChatMessage.setConversationId(ChatPartitionRouter.dialogId(message.getSenderId(), message.getReceiverId()));
+        privateChatMessage.setSeq(message.getSeq());
         return privateChatMessage;
     }
 
+    /**
+     * 解析发布前预分配的消息ID，未分配或格式不正确时返回null，由数据库自增生成
+     */
+    private static Long parseMessageId(String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public static ChatMessage convertToChatMessage(PrivateChatMessage privateChatMessage){
         ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setId(privateChatMessage.getId() != null ? String.valueOf(privateChatMessage.getId()) : null);
         chatMessage.setSenderId(privateChatMessage.getSenderId());
         chatMessage.setReceiverId(privateChatMessage.getReceiverId());
         chatMessage.setContent(privateChatMessage.getContent());
@@ -68,6 +93,7 @@ public class ConvertUtils {
         chatMessage.setFileType(privateChatMessage.getFileType());
         chatMessage.setFileSize(privateChatMessage.getFileSize());
         chatMessage.setMessageType(privateChatMessage.getMessageType());
+        chatMessage.setSeq(privateChatMessage.getSeq());
         
         // 根据消息类型设置枚举类型
         chatMessage.setType(ChatMessage.MessageType.CHAT);
@@ -76,6 +102,8 @@ public class ConvertUtils {
 
     public static ChatMessage convertToChatMessage(Group_message group_message){    
         ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setId(group_message.getId() != null ? String.valueOf(group_message.getId()) : null);
+        chatMessage.setSender(group_message.getSenderName());
         chatMessage.setGroupId(group_message.getGroupId());
         chatMessage.setContent(group_message.getContent());
         chatMessage.setSenderId(group_message.getSenderId());
@@ -84,6 +112,7 @@ public class ConvertUtils {
         chatMessage.setFileName(group_message.getFileName());
         chatMessage.setFileType(group_message.getFileType());
         chatMessage.setFileSize(group_message.getFileSize());
+        chatMessage.setSeq(group_message.getSeq());
         
         // 根据ContentType设置messageType
         if (group_message.getContentType() != null) {
@@ -104,16 +133,111 @@ public class ConvertUtils {
     }
 
     public static FriendsResponse convertToFriendsResponse(Friends friends, AccountService accountService){
+        return convertToFriendsResponse(friends, accountService.getUsernames(
+                List.of(friends.getTheFirstUserId(), friends.getTheSecondUserId())));
+    }
+
+    /**
+     * 使用预先批量查询好的用户名转换好友关系，列表场景下避免逐条查询
+     */
+    public static FriendsResponse convertToFriendsResponse(Friends friends, Map<Integer, String> usernames){
         FriendsResponse friendsResponse = new FriendsResponse();
         friendsResponse.setFirstUserId(String.valueOf(friends.getTheFirstUserId()));
-        Account account = accountService.getAccountById(friends.getTheFirstUserId());
-        friendsResponse.setFirstUsername(account.getUsername());
+        friendsResponse.setFirstUsername(usernames.get(friends.getTheFirstUserId()));
         friendsResponse.setSecondUserId(String.valueOf(friends.getTheSecondUserId()));
-        Account account2 = accountService.getAccountById(friends.getTheSecondUserId());
-        friendsResponse.setSecondUsername(account2.getUsername());
+        friendsResponse.setSecondUsername(usernames.get(friends.getTheSecondUserId()));
         friendsResponse.setCreated_at(friends.getCreatedAt());
         friendsResponse.setStatus(FriendsResponse.Status.valueOf(friends.getStatus().name()));
         return friendsResponse;
     }
 
+    /**
+     * 批量转换好友关系，所有用户名只查询一次
+     */
+    public static List<FriendsResponse> convertToFriendsResponses(List<Friends> friendsList, AccountService accountService){
+        Set<Integer> userIds = new HashSet<>();
+        for (Friends friends : friendsList) {
+            userIds.add(friends.getTheFirstUserId());
+            userIds.add(friends.getTheSecondUserId());
+        }
+        Map<Integer, String> usernames = accountService.getUsernames(userIds);
+        List<FriendsResponse> responses = new ArrayList<>(friendsList.size());
+        for (Friends friends : friendsList) {
+            responses.add(convertToFriendsResponse(friends, usernames));
+        }
+        return responses;
+    }
+
+    /**
+     * 批量转换私聊消息，发送者和接收者的用户名只查询一次
+     */
+    public static List<PrivateMessageView> convertToPrivateMessageViews(List<PrivateChatMessage> messages, AccountService accountService){
+        Set<Integer> userIds = new HashSet<>();
+        for (PrivateChatMessage msg : messages) {
+            userIds.add(msg.getSenderId());
+            userIds.add(msg.getReceiverId());
+        }
+        Map<Integer, String> usernames = accountService.getUsernames(userIds);
+        List<PrivateMessageView> views = new ArrayList<>(messages.size());
+        for (PrivateChatMessage msg : messages) {
+            views.add(convertToPrivateMessageView(msg, usernames));
+        }
+        return views;
+    }
+
+    /**
+     * 私聊消息转换为前端使用的结构，附带发送者和接收者的用户名，并补全文件消息的类型
+     */
+    public static PrivateMessageView convertToPrivateMessageView(PrivateChatMessage msg, Map<Integer, String> usernames){
+        PrivateMessageView m = new PrivateMessageView();
+        m.setId(msg.getId());
+        m.setSenderId(msg.getSenderId());
+        m.setSenderName(usernames.get(msg.getSenderId()));
+        m.setReceiverId(msg.getReceiverId());
+        m.setReceiverName(usernames.get(msg.getReceiverId()));
+        m.setContent(msg.getContent());
+        m.setIsRead(msg.isRead());
+        m.setCreatedAt(msg.getCreatedAt());
+        m.setFileUrl(msg.getFileUrl());
+        m.setFileName(msg.getFileName());
+        m.setFileType(msg.getFileType());
+        m.setFileSize(msg.getFileSize());
+        m.setMessageType(msg.getMessageType());
+        m.setSeq(msg.getSeq());
+
+        if (msg.getMessageType() == null && msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
+            String messageType = "FILE";
+            if (msg.getFileType() != null) {
+                if (msg.getFileType().startsWith("image/")) {
+                    messageType = "IMAGE";
+                } else if (msg.getFileType().startsWith("video/")) {
+                    messageType = "VIDEO";
+                } else if (msg.getFileType().startsWith("audio/")) {
+                    messageType = "AUDIO";
+                }
+            }
+            m.setMessageType(messageType);
+        }
+        return m;
+    }
+
+    /**
+     * 补全群聊消息的类型，确保文件元数据完整
+     */
+    public static void fillGroupMessageType(Group_message msg){
+        if (msg.getMessageType() == null) {
+            if (msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
+                if (msg.getContentType() == 1) {
+                    msg.setMessageType("IMAGE");
+                } else if (msg.getContentType() == 2) {
+                    msg.setMessageType("FILE");
+                } else {
+                    msg.setMessageType("FILE"); // 默认为文件类型
+                }
+            } else {
+                msg.setMessageType("TEXT"); // 没有文件URL则为文本消息
+            }
+        }
+    }
+
 }
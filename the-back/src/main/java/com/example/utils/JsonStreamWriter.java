@@ -0,0 +1,167 @@
+package com.example.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.example.entity.RestBean;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * 流式JSON写出工具
+ * 外层结构（对象、数组、字段名）直接写字节，每个实体用 fastjson2 JSON.writeTo 直接序列化到输出流，
+ * 不构建 JSONObject 中间树，也不会把子列表先转成字符串再嵌套（避免二次序列化），响应不会在内存中再拼出一份完整的字符串。
+ * 注意：只负责写出，数据本身仍由调用方先完整加载；峰值内存约为已加载的结果对象加一个实体的序列化缓冲，
+ * 需要由数据来源的条数上限（如 chat.sync.max-messages、历史分页 limit）来约束
+ */
+public class JsonStreamWriter {
+
+    /**
+     * 写出 RestBean 的 data 部分
+     */
+    @FunctionalInterface
+    public interface DataWriter {
+        void write(JsonStreamWriter writer) throws IOException;
+    }
+
+    private final OutputStream out;
+    // 每层容器是否还没有写过元素，用于决定是否需要逗号
+    private final Deque<Boolean> firstInContainer = new ArrayDeque<>();
+    // 刚写完字段名，下一个值前不需要逗号
+    private boolean afterName = false;
+
+    public JsonStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 以 RestBean 成功响应的格式流式写出：{"code":200,"data":...,"message":"success"}
+     */
+    public static StreamingResponseBody success(DataWriter dataWriter) {
+        return out -> {
+            JsonStreamWriter writer = new JsonStreamWriter(out);
+            writer.startObject();
+            writer.field("code", 200);
+            writer.name("data");
+            dataWriter.write(writer);
+            writer.field("message", "success");
+            writer.endObject();
+            writer.flush();
+        };
+    }
+
+    /**
+     * 普通 RestBean 响应（例如错误响应），一次写出
+     */
+    public static StreamingResponseBody of(RestBean<?> restBean) {
+        return out -> JSON.writeTo(out, restBean);
+    }
+
+    public JsonStreamWriter startObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        firstInContainer.push(true);
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        firstInContainer.pop();
+        out.write('}');
+        return this;
+    }
+
+    public JsonStreamWriter startArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        firstInContainer.push(true);
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        firstInContainer.pop();
+        out.write(']');
+        return this;
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        beforeValue();
+        out.write(JSON.toJSONString(name).getBytes(StandardCharsets.UTF_8));
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * 写出单个值，实体直接序列化到输出流
+     */
+    public JsonStreamWriter value(Object value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            out.write("null".getBytes(StandardCharsets.UTF_8));
+        } else {
+            JSON.writeTo(out, value);
+        }
+        return this;
+    }
+
+    public JsonStreamWriter field(String name, Object value) throws IOException {
+        return name(name).value(value);
+    }
+
+    /**
+     * 逐个元素写出数组字段，元素为 null 的集合写为 null
+     */
+    public JsonStreamWriter arrayField(String name, Iterable<?> items) throws IOException {
+        name(name);
+        return array(items);
+    }
+
+    public JsonStreamWriter array(Iterable<?> items) throws IOException {
+        if (items == null) {
+            return value(null);
+        }
+        startArray();
+        for (Object item : items) {
+            value(item);
+        }
+        return endArray();
+    }
+
+    /**
+     * 写出 键 -> 列表 结构的字段，每个列表逐个元素写出
+     */
+    public JsonStreamWriter mapOfArraysField(String name, Map<String, ? extends Iterable<?>> map) throws IOException {
+        name(name);
+        if (map == null) {
+            return value(null);
+        }
+        startObject();
+        for (Map.Entry<String, ? extends Iterable<?>> entry : map.entrySet()) {
+            arrayField(entry.getKey(), entry.getValue());
+        }
+        return endObject();
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!firstInContainer.isEmpty()) {
+            if (firstInContainer.peek()) {
+                firstInContainer.pop();
+                firstInContainer.push(false);
+            } else {
+                out.write(',');
+            }
+        }
+    }
+}
@@ -22,6 +22,12 @@ public class RedisKeys {
     // 群聊消息列表（List）
     public static final String CHAT_GROUP = PREFIX + "chat:group:";
 
+    // 群聊最新消息窗口（ZSet），分数为消息ID，成员为 <20位消息ID>|<消息JSON>
+    public static final String CHAT_GROUP_HISTORY = PREFIX + "chat:group:history:";
+
+    // 群聊消息窗口下界（String）：缓存中包含该ID及以上的全部消息，0 表示已包含群的全部历史
+    public static final String CHAT_GROUP_HISTORY_FLOOR = PREFIX + "chat:group:history:floor:";
+
     // 私聊消息列表（List）
     public static final String CHAT_PRIVATE = PREFIX + "chat:private:";
 
@@ -34,6 +40,9 @@ public class RedisKeys {
     // 用户未读私聊（Hash），格式 user:<userId>:unread:priv
     public static final String USER_UNREAD_PRIV = PREFIX + "user:%s:unread:priv";
 
+    // 用户名缓存（String），格式 account:username:<userId>
+    public static final String ACCOUNT_USERNAME = PREFIX + "account:username:";
+
     // 用户群组缓存
     public static final String USER_GROUPS = PREFIX + "user:groups:";
 
@@ -46,5 +55,50 @@ public class RedisKeys {
     // FIRST_EDIT 添加限流 - 窗口阻塞前缀常量
     public static final String RATE_LIMIT_WINDOW_BLOCK = PREFIX + "rate:window:block:";
 
+    // 消息ID生成器 workerId 租约，格式 idgen:worker:<workerId>
+    public static final String ID_WORKER_LEASE = PREFIX + "idgen:worker:";
+
+    // 消息去重窗口（String），格式 msg:dedup:<senderId>:<tempId>，值为 PENDING 或已入库的消息ID
+    public static final String MESSAGE_DEDUP = PREFIX + "msg:dedup:";
+
+    // 聊天消息持久化流（Stream），chat.transport.mode=streams 时使用
+    public static final String STREAM_CHAT_GROUP = PREFIX + "stream:chat:group";
+    public static final String STREAM_CHAT_PRIVATE = PREFIX + "stream:chat:private";
+    // 流中待入库消息的回执索引（哈希：消息ID -> 发送者信息），键为流名加此后缀
+    public static final String STREAM_ACK_INDEX_SUFFIX = ":ack-index";
+
+    // 本地缓存失效广播频道（Pub/Sub），消息格式 <节点ID>|<缓存键>
+    public static final String CACHE_INVALIDATION_CHANNEL = PREFIX + "cache:invalidate";
+
+    // 分布式锁（String），格式 lock:<锁名>，值为持有者凭证
+    public static final String DISTRIBUTED_LOCK = PREFIX + "lock:";
+
+    // 分布式锁防护令牌：lock:fence:<锁名> 为递增计数器，lock:fence:applied:<锁名> 为已写入的最大令牌
+    public static final String DISTRIBUTED_LOCK_FENCE = PREFIX + "lock:fence:";
+    public static final String DISTRIBUTED_LOCK_FENCE_APPLIED = PREFIX + "lock:fence:applied:";
+
+    // 缓存加载完成通知频道（Pub/Sub），消息为缓存键，等待同一键的其他节点收到后直接读 Redis
+    public static final String CACHE_LOADED_CHANNEL = PREFIX + "cache:loaded";
+
+    // 用户离线收件箱（ZSET），格式 chat:inbox:<userId>，分数为消息ID
+    public static final String CHAT_INBOX = PREFIX + "chat:inbox:";
+
+    // 会话消息序号计数器（String，INCRBY 按段预占），格式 chat:seq:group:<groupId> / chat:seq:private:<min:max>
+    public static final String CHAT_SEQ_GROUP = PREFIX + "chat:seq:group:";
+    public static final String CHAT_SEQ_PRIVATE = PREFIX + "chat:seq:private:";
+
+    // 私聊会话ID回填任务：租约（String，同一时间只有一个节点执行）和完成标记
+    public static final String CONVERSATION_BACKFILL_LEASE = PREFIX + "backfill:conversation:lease";
+    public static final String CONVERSATION_BACKFILL_DONE = PREFIX + "backfill:conversation:done";
+
+    // 防缓存穿透布隆过滤器（String 位图），格式 bloom:<命名空间>，cache.bloom.shared=true 时使用；重建时先写入 <键>:rebuild 再整体替换
+    public static final String BLOOM_FILTER = PREFIX + "bloom:";
+
+    // 布隆过滤器重建租约（String），同一时间只有一个节点从数据库重建共享位图
+    public static final String BLOOM_REBUILD_LEASE = PREFIX + "bloom:rebuild:lease";
+
+    // 布隆过滤器新增元素广播频道（Pub/Sub），消息格式 <节点ID>|<命名空间>|<元素>，内存模式下各节点据此同步新增
+    public static final String BLOOM_ADD_CHANNEL = PREFIX + "bloom:add";
+
     // 消息过期天数，可使用 Const.MESSAGE_EXPIRE_DAYS
 } 
\ No newline at end of file
@@ -6,13 +6,13 @@ import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;   
 import com.example.entity.vo.response.ChatMessage;
+import com.example.entity.vo.response.MessageAck;
 import com.example.service.impl.AccountServiceImpl;
 import com.example.service.ChatService;
 import com.example.entity.vo.request.CustomPrincipal;
 import java.security.Principal;
 import java.time.Instant; // 使用 Instant 获取更标准的时间戳
 import java.util.Date; // 保留 Date 以便兼容现有 VO，但建议未来统一
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import jakarta.annotation.Resource;
 import com.example.utils.Const;
 import java.util.concurrent.TimeUnit;
@@ -35,22 +35,32 @@ import com.example.entity.vo.response.FriendsResponse;
 import com.example.entity.dto.Group_message;
 import java.util.stream.Collectors;
 import com.example.utils.ConvertUtils;
-import java.util.ArrayList;
 import java.util.Map;
 import com.example.entity.vo.response.StatusMessage;
 import com.example.service.OnlineStatusService;
 import java.time.Duration;
 import org.springframework.beans.factory.annotation.Autowired;
 import com.example.service.ChatCacheService;
+import com.example.service.IdGeneratorService;
+import com.example.service.ChatTransport;
+import com.example.entity.vo.response.GroupHistoryPage;
+import com.example.entity.vo.response.PrivateMessageView;
+import com.example.entity.vo.response.SyncResponse;
+import com.example.entity.vo.request.SyncRequest;
+import com.example.service.ChatSyncService;
+import com.example.service.SequenceService;
+import com.example.service.OfflineInboxService;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.example.utils.JsonStreamWriter;
 @RestController
 @RequestMapping("/api/chat")
 public class ChatController {
 
     private final AccountServiceImpl accountServiceImpl;
 
-    @Resource
-    private RabbitTemplate rabbitTemplate;
-
     @Resource
     private SimpMessagingTemplate messagingTemplate;
 
@@ -66,6 +76,24 @@ public class ChatController {
     @Autowired
     private ChatCacheService chatCacheService;
 
+    @Resource
+    private IdGeneratorService idGeneratorService;
+
+    @Resource
+    private ChatTransport chatTransport;
+
+    @Resource
+    private ChatSyncService chatSyncService;
+
+    @Resource
+    private SequenceService sequenceService;
+
+    @Resource
+    private OfflineInboxService offlineInboxService;
+
+    // 按序号补拉时单次请求的最大区间长度
+    private static final int MAX_SEQ_RANGE = 200;
+
     ChatController(AccountServiceImpl accountServiceImpl) {
         this.accountServiceImpl = accountServiceImpl;
     }
@@ -108,77 +136,24 @@ public class ChatController {
             //解析jwt
             DecodedJWT decodedJWT = jwtUtils.resolveJWTFromLocalStorage(jwt);
             String userId = decodedJWT.getClaim("id").asString();
+            String username = decodedJWT.getClaim("name").asString();
             //通过用户id,构建一个返回message，包括用户id，用户名，用户的好友关系和群聊关系
-            List<FriendsResponse> friendIds = chatService.getFriends(userId);
-
-            List<FriendsResponse> friendRequests = chatService.getFriendRequests(userId);
-            
-            List<Group_member> groupIds = chatService.getGroups(userId);
- 
-            List<List<Group_message>> groupMessages = groupIds.stream().map(groupId -> chatService.getGroupChatHistoryByGroupId(groupId.getGroupId(), 100)).collect(Collectors.toList());
-   
-            List<PrivateChatMessage> privateMessages = chatService.getPrivateChatHistory(Integer.parseInt(userId), 100);
-            // 将私聊消息转换为包含用户名的 JSON 对象列表
-            List<JSONObject> privateMessagesWithNames = new ArrayList<>();
-            for (PrivateChatMessage msg : privateMessages) {
-                JSONObject m = new JSONObject();
-                m.put("id", msg.getId());
-                m.put("senderId", msg.getSenderId());
-                m.put("senderName", accountServiceImpl.getAccountById(msg.getSenderId()).getUsername());
-                m.put("receiverId", msg.getReceiverId());
-                m.put("receiverName", accountServiceImpl.getAccountById(msg.getReceiverId()).getUsername());
-                m.put("content", msg.getContent());
-                m.put("isRead", msg.isRead());
-                m.put("createdAt", msg.getCreatedAt());
-                m.put("fileUrl", msg.getFileUrl());
-                m.put("fileName", msg.getFileName());
-                m.put("fileType", msg.getFileType());
-                m.put("fileSize", msg.getFileSize());
-                m.put("messageType", msg.getMessageType());
-                
-                if (msg.getMessageType() == null && msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
-                    String messageType = "FILE";
-                    if (msg.getFileType() != null) {
-                        if (msg.getFileType().startsWith("image/")) {
-                            messageType = "IMAGE";
-                        } else if (msg.getFileType().startsWith("video/")) {
-                            messageType = "VIDEO";
-                        } else if (msg.getFileType().startsWith("audio/")) {
-                            messageType = "AUDIO"; 
-                        }
-                    }
-                    m.put("messageType", messageType);
-                }
-                privateMessagesWithNames.add(m);
-            }
-            
-            // 处理群组消息，确保文件元数据完整
-            for (List<Group_message> messages : groupMessages) {
-                for (Group_message msg : messages) {
-                    if (msg.getMessageType() == null) {
-                        if (msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
-                            if (msg.getContentType() == 1) {
-                                msg.setMessageType("IMAGE");
-                            } else if (msg.getContentType() == 2) {
-                                msg.setMessageType("FILE");
-                            } else {
-                                msg.setMessageType("FILE"); // 默认为文件类型
-                            }
-                        } else {
-                            msg.setMessageType("TEXT"); // 没有文件URL则为文本消息
-                        }
-                    }
-                }
-            }
+            //各部分并行加载，按首次加载（不带高水位）组装
+            SyncResponse snapshot = chatSyncService.sync(userId, username, null);
+            List<Group_member> groupIds = snapshot.getGroups() != null ? snapshot.getGroups() : List.of();
+            List<List<Group_message>> groupMessages = groupIds.stream()
+                    .map(group -> snapshot.getGroupMessages().getOrDefault(group.getGroupId(), List.of()))
+                    .collect(Collectors.toList());
             //构建返回message，包括用户id，用户名，用户的好友关系和群聊关系，要求返回的格式为json
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("userId", userId);
-            jsonObject.put("username", decodedJWT.getClaim("name").asString());
-            jsonObject.put("friendIds", JSON.toJSONString(friendIds));
-            jsonObject.put("friendRequests", JSON.toJSONString(friendRequests));
+            jsonObject.put("username", username);
+            jsonObject.put("friendIds", JSON.toJSONString(snapshot.getFriends() != null ? snapshot.getFriends() : List.of()));
+            jsonObject.put("friendRequests", JSON.toJSONString(snapshot.getFriendRequests() != null ? snapshot.getFriendRequests() : List.of()));
             jsonObject.put("groupIds", JSON.toJSONString(groupIds));
             jsonObject.put("groupMessages", JSON.toJSONString(groupMessages));
-            jsonObject.put("privateMessages", JSON.toJSONString(privateMessagesWithNames));
+            jsonObject.put("privateMessages", JSON.toJSONString(snapshot.getPrivateMessages()));
+            jsonObject.put("partialSections", snapshot.getPartialSections());
             return messageHandler(() -> jsonObject);
         } catch (Exception e) {
             System.err.println("获取用户信息错误: " + e.getMessage());
@@ -188,6 +163,77 @@ public class ChatController {
         }
     }
     
+    // 增量同步：客户端回传高水位和摘要，只返回新消息和发生变化的好友/群组列表
+    // 首次加载不带请求体即可，返回结构与 GetThePrivateMessage 相同的数据（不再嵌套JSON字符串）
+    @PostMapping("/sync")
+    public RestBean<SyncResponse> sync(
+            @org.springframework.web.bind.annotation.RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestBody(required = false) SyncRequest request) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return RestBean.failure(401, "未提供JWT令牌");
+        }
+        DecodedJWT decodedJWT = jwtUtils.resolveJWTFromLocalStorage(authorization.substring(7));
+        if (decodedJWT == null) {
+            return RestBean.failure(401, "JWT令牌无效");
+        }
+        try {
+            String userId = decodedJWT.getClaim("id").asString();
+            String username = decodedJWT.getClaim("name").asString();
+            return RestBean.success(chatSyncService.sync(userId, username, request));
+        } catch (Exception e) {
+            System.err.println("增量同步错误: " + e.getMessage());
+            e.printStackTrace();
+            return RestBean.failure(500, "同步失败");
+        }
+    }
+    
+    // 增量同步的流式版本：同步结果先完整加载（各分段条数受 chat.sync.max-messages 限制），
+    // 再逐个实体直接写入响应流，省去中间JSON树和整份响应字符串，重连高峰时降低单请求内存占用
+    @PostMapping("/sync/stream")
+    public ResponseEntity<StreamingResponseBody> syncStream(
+            @org.springframework.web.bind.annotation.RequestHeader(value = "Authorization", required = false) String authorization,
+            @RequestBody(required = false) SyncRequest request) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return streamJson(JsonStreamWriter.of(RestBean.failure(401, "未提供JWT令牌")));
+        }
+        DecodedJWT decodedJWT = jwtUtils.resolveJWTFromLocalStorage(authorization.substring(7));
+        if (decodedJWT == null) {
+            return streamJson(JsonStreamWriter.of(RestBean.failure(401, "JWT令牌无效")));
+        }
+        SyncResponse response;
+        try {
+            String userId = decodedJWT.getClaim("id").asString();
+            String username = decodedJWT.getClaim("name").asString();
+            response = chatSyncService.sync(userId, username, request);
+        } catch (Exception e) {
+            System.err.println("增量同步错误: " + e.getMessage());
+            e.printStackTrace();
+            return streamJson(JsonStreamWriter.of(RestBean.failure(500, "同步失败")));
+        }
+        return streamJson(JsonStreamWriter.success(writer -> writer.startObject()
+                .field("userId", response.getUserId())
+                .field("username", response.getUsername())
+                .arrayField("friends", response.getFriends())
+                .field("friendsDigest", response.getFriendsDigest())
+                .arrayField("friendRequests", response.getFriendRequests())
+                .field("friendRequestsDigest", response.getFriendRequestsDigest())
+                .arrayField("groups", response.getGroups())
+                .field("groupsDigest", response.getGroupsDigest())
+                .mapOfArraysField("groupMessages", response.getGroupMessages())
+                .arrayField("resetGroups", response.getResetGroups())
+                .arrayField("incompleteGroups", response.getIncompleteGroups())
+                .field("groupHighWaterMarks", response.getGroupHighWaterMarks())
+                .arrayField("privateMessages", response.getPrivateMessages())
+                .field("privateReset", response.isPrivateReset())
+                .field("privateHighWaterMark", response.getPrivateHighWaterMark())
+                .arrayField("partialSections", response.getPartialSections())
+                .endObject()));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> streamJson(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+    
     // 处理公共消息 - 简化为固定频道
     // 逻辑是，用户发送的消息都发送到一个频道，然后前端根据频道id订阅对应的频道
     // 然后后端根据频道id，将消息发送到对应的频道，可行性的原因是订阅频道是可以动态注册的
@@ -200,16 +246,20 @@ public class ChatController {
         message.setSenderId(Integer.parseInt(principal.getName()));
         message.setSender(principal.getUsername());
         message.setTimestamp(Date.from(Instant.now()));
+        // 发布前分配消息ID，回执和历史排序不再依赖数据库自增ID
+        if (!assignMessageId(message, "group")) {
+            return;
+        }
         
         // 检查文件消息并设置正确的消息类型
         if (message.getFileUrl() != null && !message.getFileUrl().isEmpty() && message.getMessageType() == null) {
             message.setMessageType("FILE");
         }
         
-        // 缓存群组消息
         String groupId = message.getGroupId() != null ? message.getGroupId() : "default";
-        rabbitTemplate.convertAndSend("groupChat", message);
-        chatCacheService.cacheGroupMessage(groupId, JSON.toJSONString(message));
+        // 分配群内序号，客户端据此发现缺失的消息
+        message.setSeq(sequenceService.nextGroupSeq(groupId));
+        chatTransport.sendGroupMessage(message);
         // 传递完整的 message 对象
         this.sendMessageToGroup(groupId, message);
         
@@ -236,6 +286,13 @@ public class ChatController {
             System.err.println("无效的私聊消息：接收者不能为空。");
             return;
         }
+
+        // 发布前分配消息ID，回执和历史排序不再依赖数据库自增ID
+        if (!assignMessageId(message, "private")) {
+            return;
+        }
+        // 分配对话内序号，客户端据此发现缺失的消息
+        message.setSeq(sequenceService.nextPrivateSeq(message.getSenderId(), message.getReceiverId()));
         
         // 检查文件消息类型
         if (message.getFileUrl() != null && !message.getFileUrl().isEmpty() && message.getMessageType() == null) {
@@ -243,7 +300,10 @@ public class ChatController {
         }
         
         // 异步持久化和 Redis 操作由 PrivateChatMessageListener 处理
-        rabbitTemplate.convertAndSend("privateChat", message);
+        // 按对话ID投递到固定分区队列，保证同一对话内的消息按发送顺序入库
+        chatTransport.sendPrivateMessage(message);
+        // 同时写入接收者的离线收件箱，接收者此刻不在线时重连后补发
+        offlineInboxService.append(message.getReceiverId(), message);
         
         // 只向接收者发送实时消息
         messagingTemplate.convertAndSendToUser(
@@ -255,6 +315,26 @@ public class ChatController {
         System.out.println("发送私聊消息给接收者: " + message.getReceiverId());
     }
 
+    /**
+     * 为消息分配ID；ID生成器未持有 workerId 租约时不发布消息，直接向发送者回失败确认
+     */
+    private boolean assignMessageId(ChatMessage message, String messageType) {
+        try {
+            message.setId(String.valueOf(idGeneratorService.nextId()));
+            return true;
+        } catch (IllegalStateException e) {
+            System.err.println("消息ID分配失败: " + e.getMessage());
+            if (message.getTempId() != null) {
+                messagingTemplate.convertAndSendToUser(
+                    message.getSenderId().toString(),
+                    "/queue/message-ack",
+                    MessageAck.failure(message.getTempId(), "服务繁忙，请稍后重试", messageType)
+                );
+            }
+            return false;
+        }
+    }
+
     // 处理心跳包
     @MessageMapping("/chat/heartbeat")
     @SendTo("/topic/public/general")
@@ -348,64 +428,83 @@ public class ChatController {
         List<PrivateChatMessage> privateMessages = chatService.getPrivateChatHistoryByUserIdAndFriendId(Integer.parseInt(userId), Integer.parseInt(friendId), 100, oldestMessageId);
         JSONObject jsonObject = new JSONObject();
         // 将私聊消息转换为包含用户名的 JSON 对象列表
-        List<JSONObject> privateMessagesWithNames = new ArrayList<>();
-        for (PrivateChatMessage msg : privateMessages) {
-            JSONObject m = new JSONObject();
-            m.put("id", msg.getId());
-            m.put("senderId", msg.getSenderId());
-            m.put("senderName", accountServiceImpl.getAccountById(msg.getSenderId()).getUsername());
-            m.put("receiverId", msg.getReceiverId());
-            m.put("receiverName", accountServiceImpl.getAccountById(msg.getReceiverId()).getUsername());
-            m.put("content", msg.getContent());
-            m.put("isRead", msg.isRead());
-            m.put("createdAt", msg.getCreatedAt());
-            m.put("fileUrl", msg.getFileUrl());
-            m.put("fileName", msg.getFileName());
-            m.put("fileType", msg.getFileType());
-            m.put("fileSize", msg.getFileSize());
-            m.put("messageType", msg.getMessageType());
-            
-            if (msg.getMessageType() == null && msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
-                String messageType = "FILE";
-                if (msg.getFileType() != null) {
-                    if (msg.getFileType().startsWith("image/")) {
-                        messageType = "IMAGE";
-                    } else if (msg.getFileType().startsWith("video/")) {
-                        messageType = "VIDEO";
-                    } else if (msg.getFileType().startsWith("audio/")) {
-                        messageType = "AUDIO"; 
-                    }
-                }
-                m.put("messageType", messageType);
-            }
-            privateMessagesWithNames.add(m);
-        }
+        List<PrivateMessageView> privateMessagesWithNames = ConvertUtils.convertToPrivateMessageViews(privateMessages, accountServiceImpl);
         jsonObject.put("privateMessages", JSON.toJSONString(privateMessagesWithNames));
         return messageHandler(() -> jsonObject);
     }
     
-    // 新增：获取群聊消息历史
+    // 按序号区间补拉私聊消息：客户端发现 seq 不连续时只拉取缺失的区间 [fromSeq, toSeq]
+    // 返回与实时推送相同的 ChatMessage 结构，客户端可以直接按收到新消息处理
+    @GetMapping("/history/private/range")
+    public RestBean<List<ChatMessage>> getPrivateChatHistoryBySeq(@RequestParam int userId, @RequestParam int friendId,
+                                                                @RequestParam long fromSeq, @RequestParam long toSeq) {
+        if (fromSeq <= 0 || toSeq < fromSeq || toSeq - fromSeq >= MAX_SEQ_RANGE) {
+            return RestBean.failure(400, "序号区间无效，单次最多补拉" + MAX_SEQ_RANGE + "条");
+        }
+        List<PrivateChatMessage> privateMessages = chatService.getPrivateChatHistoryBySeq(userId, friendId, fromSeq, toSeq);
+        Map<Integer, String> usernames = accountServiceImpl.getUsernames(List.of(userId, friendId));
+        List<ChatMessage> messages = privateMessages.stream().map(msg -> {
+            ChatMessage chatMessage = ConvertUtils.convertToChatMessage(msg);
+            chatMessage.setSender(usernames.get(msg.getSenderId()));
+            return chatMessage;
+        }).collect(Collectors.toList());
+        return RestBean.success(messages);
+    }
+
+    // 按序号区间补拉群聊消息，区间内不存在的序号说明没有对应消息（如节点重启跳过的序号）
+    @GetMapping("/history/group/range")
+    public RestBean<List<ChatMessage>> getGroupChatHistoryBySeq(@RequestParam String groupId,
+                                                                @RequestParam long fromSeq, @RequestParam long toSeq) {
+        if (fromSeq <= 0 || toSeq < fromSeq || toSeq - fromSeq >= MAX_SEQ_RANGE) {
+            return RestBean.failure(400, "序号区间无效，单次最多补拉" + MAX_SEQ_RANGE + "条");
+        }
+        List<ChatMessage> messages = chatService.getGroupChatHistoryBySeq(groupId, fromSeq, toSeq).stream()
+                .map(ConvertUtils::convertToChatMessage)
+                .collect(Collectors.toList());
+        return RestBean.success(messages);
+    }
+
+    // 获取群聊消息历史：按消息ID游标从新到旧翻页，首次请求不带 beforeId/cursor
     @GetMapping("/history/group")
-    public RestBean<List<Group_message>> getGroupChatHistory(@RequestParam String groupId, @RequestParam int limit) {
-        List<Group_message> groupMessages = chatService.getGroupChatHistoryByGroupId(groupId, limit);
-        //forEach
-        groupMessages.forEach(msg -> {
-            if (msg.getMessageType() == null) {
-                if (msg.getFileUrl() != null && !msg.getFileUrl().isEmpty()) {
-                    if (msg.getContentType() == 1) {
-                        msg.setMessageType("IMAGE");
-                    } else if (msg.getContentType() == 2) {
-                        msg.setMessageType("FILE");
-                    } else {
-                        msg.setMessageType("FILE");
-                    }
-                } else {
-                    msg.setMessageType("TEXT");
-                }
-            }
-        });
+    public RestBean<GroupHistoryPage> getGroupChatHistory(@RequestParam String groupId,
+                                                          @RequestParam(required = false) Long beforeId,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "50") int limit) {
+        if (limit <= 0 || limit > 200) {
+            return RestBean.failure(400, "limit必须在1-200之间");
+        }
+        GroupHistoryPage page;
+        try {
+            page = chatService.getGroupChatHistoryPage(groupId, beforeId, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return RestBean.failure(400, e.getMessage());
+        }
+        page.getMessages().forEach(ConvertUtils::fillGroupMessageType);
         
-        return RestBean.success(groupMessages);
+        return RestBean.success(page);
     }
-    
-}
\ No newline at end of file
+
+    // 群聊历史的流式版本，参数与 /history/group 相同；整页（最多200条）加载后逐条写入响应流
+    @GetMapping("/history/group/stream")
+    public ResponseEntity<StreamingResponseBody> streamGroupChatHistory(@RequestParam String groupId,
+                                                                        @RequestParam(required = false) Long beforeId,
+                                                                        @RequestParam(required = false) String cursor,
+                                                                        @RequestParam(defaultValue = "50") int limit) {
+        if (limit <= 0 || limit > 200) {
+            return streamJson(JsonStreamWriter.of(RestBean.failure(400, "limit必须在1-200之间")));
+        }
+        GroupHistoryPage page;
+        try {
+            page = chatService.getGroupChatHistoryPage(groupId, beforeId, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return streamJson(JsonStreamWriter.of(RestBean.failure(400, e.getMessage())));
+        }
+        page.getMessages().forEach(ConvertUtils::fillGroupMessageType);
+        return streamJson(JsonStreamWriter.success(writer -> writer.startObject()
+                .arrayField("messages", page.getMessages())
+                .field("nextCursor", page.getNextCursor())
+                .field("hasMore", page.isHasMore())
+                .endObject()));
+    }
+
+}
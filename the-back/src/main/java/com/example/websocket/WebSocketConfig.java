@@ -21,7 +21,8 @@ import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompCommand;
-import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import com.example.service.OfflineInboxService;
 import org.springframework.messaging.MessageChannel;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.entity.vo.request.CustomPrincipal;
@@ -102,7 +103,17 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                     if (user != null) {
                         // 将用户名添加到认证成功后的会话属性中
                         System.out.println("用户名：" + user.getName());
-                        accessor.setSessionAttributes(Collections.singletonMap("user-name", user.getName()));
+                        Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+                        if (sessionAttributes == null) {
+                            sessionAttributes = new ConcurrentHashMap<>();
+                            accessor.setSessionAttributes(sessionAttributes);
+                        }
+                        sessionAttributes.put("user-name", user.getName());
+                        // 重连时客户端带上最后确认的消息ID，订阅私聊队列后从离线收件箱补发之后的消息
+                        String lastAckId = accessor.getFirstNativeHeader(OfflineInboxService.LAST_ACK_HEADER);
+                        if (lastAckId != null && !lastAckId.isEmpty()) {
+                            sessionAttributes.put(OfflineInboxService.LAST_ACK_ATTRIBUTE, lastAckId);
+                        }
                     }
                 }
                 return message;
@@ -0,0 +1,298 @@
+package com.example.service.impl;
+
+import com.example.config.RabbitConfiguration;
+import com.example.entity.vo.response.ChatMessage;
+import com.example.entity.vo.response.MessageAck;
+import com.example.listener.GroupChatMessageListener;
+import com.example.service.ChatService;
+import com.example.service.MessageDedupService;
+import com.example.service.MessageRetryService;
+import com.example.service.MessageWalService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 传输通道基准：embedded（Disruptor 环形缓冲区）与 amqp（RabbitMQ）从发送到发送者收到成功回执的吞吐和延迟
+ * amqp 走生产代码的完整路径：AmqpChatTransport → ChatMessagePublisherImpl（发布确认、退回）→ groupChat 队列
+ * → GroupChatMessageListener（判重、入库、回执），容器按 RabbitConfiguration 的配置创建。
+ * 两种模式共用同样的模拟耗时：数据库每次往返 db-roundtrip-micros 微秒、每行再加 db-row-micros 微秒，
+ * amqp 的判重每次 Redis 往返 redis-roundtrip-micros 微秒（embedded 不经过判重）。
+ * 生产者在途消息数不超过 max-in-flight，不会把环形缓冲区或发布队列打满；出现任何失败回执时本次结果作废。
+ * 默认不运行，手动执行：
+ * mvn test -Dtest=ChatTransportBenchmark -Dbenchmark=true
+ * amqp 需要一个独立的虚拟主机（会声明并使用 groupChat 队列，不要指向生产环境）：
+ * -Dbenchmark.amqp.host=localhost -Dbenchmark.amqp.vhost=benchmark [-Dbenchmark.amqp.batch=true]
+ * 可选参数：benchmark.messages（默认100000）、benchmark.producers（默认4）、benchmark.max-in-flight（默认4096）、
+ * benchmark.db-roundtrip-micros（默认1000）、benchmark.db-row-micros（默认20）、benchmark.redis-roundtrip-micros（默认200）、
+ * benchmark.amqp.concurrency（逐条模式的消费者数，默认1，与 groupChatListener 的默认配置一致；基准中不运行 ChatListenerAutoscaler）
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ChatTransportBenchmark {
+
+    private static final int MESSAGES = Integer.getInteger("benchmark.messages", 100_000);
+    private static final int PRODUCERS = Integer.getInteger("benchmark.producers", 4);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("benchmark.max-in-flight", 4096);
+    private static final long DB_ROUNDTRIP_MICROS = Long.getLong("benchmark.db-roundtrip-micros", 1000);
+    private static final long DB_ROW_MICROS = Long.getLong("benchmark.db-row-micros", 20);
+    private static final long REDIS_ROUNDTRIP_MICROS = Long.getLong("benchmark.redis-roundtrip-micros", 200);
+
+    @Test
+    void embedded() throws Exception {
+        AckRecorder recorder = new AckRecorder();
+        EmbeddedChatTransport transport = new EmbeddedChatTransport();
+        ReflectionTestUtils.setField(transport, "chatService", simulatedChatService());
+        ReflectionTestUtils.setField(transport, "messagingTemplate", recorder.messagingTemplate());
+        ReflectionTestUtils.setField(transport, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(transport, "messageWalService", mock(MessageWalService.class));
+        ReflectionTestUtils.setField(transport, "ringSize", 8192);
+        ReflectionTestUtils.setField(transport, "batchSize", 100);
+        transport.start();
+        try {
+            long elapsed = recorder.run(transport::sendGroupMessage);
+            recorder.report("embedded", elapsed);
+        } finally {
+            transport.stop();
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.amqp.vhost", matches = ".+")
+    void amqp() throws Exception {
+        boolean batch = Boolean.getBoolean("benchmark.amqp.batch");
+        AckRecorder recorder = new AckRecorder();
+        SimpMessagingTemplate messagingTemplate = recorder.messagingTemplate();
+
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(
+                System.getProperty("benchmark.amqp.host", "localhost"));
+        connectionFactory.setUsername(System.getProperty("benchmark.amqp.username", "guest"));
+        connectionFactory.setPassword(System.getProperty("benchmark.amqp.password", "guest"));
+        connectionFactory.setVirtualHost(System.getProperty("benchmark.amqp.vhost"));
+        // 与 application.yml 一致：发布确认与退回
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        connectionFactory.setPublisherReturns(true);
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        Queue queue = QueueBuilder.durable("groupChat").build();
+        admin.declareQueue(queue);
+        admin.purgeQueue(queue.getName(), false);
+
+        RabbitConfiguration rabbitConfiguration = new RabbitConfiguration();
+        ChatMessagePublisherImpl publisher = new ChatMessagePublisherImpl();
+        ReflectionTestUtils.setField(publisher, "rabbitTemplate", rabbitConfiguration.rabbitTemplate(connectionFactory));
+        ReflectionTestUtils.setField(publisher, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(publisher, "queueCapacity", 10000);
+        ReflectionTestUtils.setField(publisher, "batchSize", 100);
+        publisher.start();
+        AmqpChatTransport transport = new AmqpChatTransport();
+        ReflectionTestUtils.setField(transport, "chatMessagePublisher", publisher);
+
+        GroupChatMessageListener listener = new GroupChatMessageListener();
+        ReflectionTestUtils.setField(listener, "chatService", simulatedChatService());
+        ReflectionTestUtils.setField(listener, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(listener, "messageDedupService", simulatedDedupService());
+        ReflectionTestUtils.setField(listener, "messageRetryService", mock(MessageRetryService.class));
+        ReflectionTestUtils.setField(listener, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(listener, "messageWalService", mock(MessageWalService.class));
+        SimpleMessageListenerContainer container = listenerContainer(rabbitConfiguration, connectionFactory, listener, batch);
+        container.start();
+        try {
+            long elapsed = recorder.run(transport::sendGroupMessage);
+            recorder.report(batch ? "amqp-batch" : "amqp", elapsed);
+        } finally {
+            container.stop();
+            publisher.stop();
+            admin.purgeQueue(queue.getName(), false);
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * 按 @RabbitListener 的方式创建监听容器：逐条模式用默认容器工厂，批量模式用 batchListenerContainerFactory
+     */
+    private static SimpleMessageListenerContainer listenerContainer(RabbitConfiguration rabbitConfiguration,
+                                                                    CachingConnectionFactory connectionFactory,
+                                                                    GroupChatMessageListener listener,
+                                                                    boolean batch) throws Exception {
+        SimpleRabbitListenerContainerFactory factory;
+        Method method;
+        if (batch) {
+            factory = rabbitConfiguration.batchListenerContainerFactory(connectionFactory, 50, 20);
+            method = GroupChatMessageListener.class.getMethod("processBatch", List.class);
+        } else {
+            factory = new SimpleRabbitListenerContainerFactory();
+            factory.setConnectionFactory(connectionFactory);
+            factory.setMessageConverter(rabbitConfiguration.jsonMessageConverter());
+            factory.setConcurrentConsumers(Integer.getInteger("benchmark.amqp.concurrency", 1));
+            method = GroupChatMessageListener.class.getMethod("process", ChatMessage.class, Integer.class);
+        }
+        DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        handlerMethodFactory.afterPropertiesSet();
+        MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+        endpoint.setId("benchmarkGroupChatListener");
+        endpoint.setQueueNames("groupChat");
+        endpoint.setBean(listener);
+        endpoint.setMethod(method);
+        endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+        return factory.createListenerContainer(endpoint);
+    }
+
+    private static ChatService simulatedChatService() {
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.savePublicMessagesWithIds(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(0);
+            simulate(DB_ROUNDTRIP_MICROS + DB_ROW_MICROS * batch.size());
+            return batch.stream().map(ChatMessage::getId).toList();
+        });
+        when(chatService.savePublicMessageWithId(any())).thenAnswer(invocation -> {
+            simulate(DB_ROUNDTRIP_MICROS + DB_ROW_MICROS);
+            return ((ChatMessage) invocation.getArgument(0)).getId();
+        });
+        return chatService;
+    }
+
+    private static MessageDedupService simulatedDedupService() {
+        MessageDedupService dedupService = mock(MessageDedupService.class);
+        when(dedupService.dedupKey(any())).thenAnswer(invocation ->
+                "bench:" + ((ChatMessage) invocation.getArgument(0)).getTempId());
+        when(dedupService.tryClaim(anyString())).thenAnswer(invocation -> {
+            simulate(REDIS_ROUNDTRIP_MICROS);
+            return null;
+        });
+        doAnswer(invocation -> {
+            simulate(REDIS_ROUNDTRIP_MICROS);
+            return null;
+        }).when(dedupService).markSaved(anyString(), anyString());
+        return dedupService;
+    }
+
+    private static void simulate(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    private interface Sender {
+        void send(ChatMessage message) throws Exception;
+    }
+
+    /**
+     * 记录每条消息从发送到收到回执的耗时，只有成功回执计入结果
+     */
+    private static class AckRecorder {
+        private final Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        private final long[] latencies = new long[MESSAGES];
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final List<String> failures = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(MESSAGES);
+        private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+        SimpMessagingTemplate messagingTemplate() {
+            SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+            doAnswer(invocation -> {
+                onAck(invocation.getArgument(2));
+                return null;
+            }).when(messagingTemplate).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+            return messagingTemplate;
+        }
+
+        private void onAck(MessageAck ack) {
+            Long start = sentAt.remove(ack.getTempId());
+            if (start == null) {
+                // 同一条消息的重复回执，不重复计数
+                return;
+            }
+            if (ack.isSuccess()) {
+                latencies[succeeded.getAndIncrement()] = System.nanoTime() - start;
+            } else {
+                synchronized (failures) {
+                    failures.add(ack.getTempId() + ": " + ack.getError());
+                }
+            }
+            inFlight.release();
+            done.countDown();
+        }
+
+        /**
+         * 多个生产线程平均分摊消息，返回从开始发送到全部回执的耗时（纳秒）
+         */
+        long run(Sender sender) throws Exception {
+            ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+            long start = System.nanoTime();
+            for (int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                producers.submit(() -> {
+                    for (int i = producer; i < MESSAGES; i += PRODUCERS) {
+                        ChatMessage message = message(i);
+                        inFlight.acquire();
+                        sentAt.put(message.getTempId(), System.nanoTime());
+                        sender.send(message);
+                    }
+                    return null;
+                });
+            }
+            producers.shutdown();
+            assertTrue(done.await(10, TimeUnit.MINUTES), "基准超时，未收到全部回执");
+            long elapsed = System.nanoTime() - start;
+            assertEquals(0, failures.size(), "出现失败回执，本次结果无效: " + failures.stream().limit(5).toList());
+            return elapsed;
+        }
+
+        void report(String transport, long elapsedNanos) {
+            int count = succeeded.get();
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            List<String> percentiles = new ArrayList<>();
+            for (double p : new double[]{0.5, 0.99, 0.999}) {
+                long value = sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+                percentiles.add(String.format("p%s=%.2fms", p * 100, value / 1e6));
+            }
+            System.out.printf("[benchmark] transport=%s messages=%d producers=%d in-flight=%d db=%dus+%dus/row redis=%dus "
+                            + "throughput=%.0f msg/s %s%n",
+                    transport, count, PRODUCERS, MAX_IN_FLIGHT, DB_ROUNDTRIP_MICROS, DB_ROW_MICROS, REDIS_ROUNDTRIP_MICROS,
+                    count / (elapsedNanos / 1e9), String.join(" ", percentiles));
+        }
+    }
+
+    private static ChatMessage message(int i) {
+        ChatMessage message = new ChatMessage();
+        message.setId(String.valueOf(i + 1));
+        message.setTempId("bench-" + i);
+        message.setSenderId(1);
+        message.setGroupId("bench");
+        message.setContent("benchmark message " + i);
+        message.setTimestamp(new Date());
+        return message;
+    }
+}
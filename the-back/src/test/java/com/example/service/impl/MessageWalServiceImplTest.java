@@ -0,0 +1,260 @@
+package com.example.service.impl;
+
+import com.example.entity.vo.response.ChatMessage;
+import com.example.service.ChatService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 预写日志的文件格式与恢复逻辑：CRC 校验、尾部截断、段滚动、检查点续读、隔离无法回放的记录
+ */
+class MessageWalServiceImplTest {
+
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 1;
+
+    @TempDir
+    Path dir;
+
+    private ChatService chatService;
+    private DataSource dataSource;
+    // 回放写入数据库的消息内容，按写入顺序
+    private final List<String> saved = new ArrayList<>();
+    // 数据库拒绝写入的消息内容（模拟数据本身有问题）
+    private final List<String> rejected = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        chatService = mock(ChatService.class);
+        when(chatService.savePublicMessagesWithIds(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> messages = invocation.getArgument(0);
+            return messages.stream().map(this::save).collect(Collectors.toList());
+        });
+        when(chatService.savePublicMessageWithId(any())).thenAnswer(invocation -> save(invocation.getArgument(0)));
+
+        Connection connection = mock(Connection.class);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+    }
+
+    @Test
+    void replayResumesFromCheckpointAfterRestart() {
+        MessageWalServiceImpl wal = open(4096);
+        assertTrue(wal.append(messages("a", "b", "c"), false));
+        assertTrue(wal.isDegraded());
+        assertEquals(3, wal.replay());
+        assertFalse(wal.isDegraded());
+
+        assertTrue(wal.append(messages("d", "e"), false));
+        wal.close();
+
+        // 重启后只回放检查点之后的记录
+        MessageWalServiceImpl restarted = open(4096);
+        assertTrue(restarted.isDegraded());
+        assertEquals(2, restarted.replay());
+        assertEquals(List.of("a", "b", "c", "d", "e"), saved);
+        assertEquals(0, restarted.replay());
+    }
+
+    @Test
+    void recordWithBadCrcEndsTheLog() throws IOException {
+        MessageWalServiceImpl wal = open(4096);
+        assertTrue(wal.append(messages("a", "b", "c"), false));
+        wal.close();
+
+        // 翻转第二条记录的一个负载字节，CRC 不再匹配
+        Path segment = onlySegment();
+        int second = RECORD_HEADER_BYTES + readInt(segment, 0);
+        flipByte(segment, second + RECORD_HEADER_BYTES);
+
+        MessageWalServiceImpl restarted = open(4096);
+        assertEquals(1, restarted.replay());
+        assertEquals(List.of("a"), saved);
+        // 损坏记录之后的数据已被清零，新的追加从损坏位置开始
+        assertEquals(0, readInt(segment, second));
+        assertTrue(restarted.append(messages("d"), false));
+        assertEquals(1, restarted.replay());
+        assertEquals(List.of("a", "d"), saved);
+    }
+
+    @Test
+    void tornTailIsTruncatedOnRecovery() throws IOException {
+        MessageWalServiceImpl wal = open(4096);
+        assertTrue(wal.append(messages("a", "b"), false));
+        wal.close();
+
+        // 模拟崩溃时写了一半的记录：内容已写入，长度字段还是0
+        Path segment = onlySegment();
+        int tail = 2 * RECORD_HEADER_BYTES + readInt(segment, 0)
+                + readInt(segment, RECORD_HEADER_BYTES + readInt(segment, 0));
+        writeBytes(segment, tail + 4, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        MessageWalServiceImpl restarted = open(4096);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(0, readByte(segment, tail + 4 + i));
+        }
+        assertTrue(restarted.append(messages("c"), false));
+        assertEquals(3, restarted.replay());
+        assertEquals(List.of("a", "b", "c"), saved);
+    }
+
+    @Test
+    void appendRollsToNewSegmentAndReplayDeletesOldOnes() throws IOException {
+        MessageWalServiceImpl wal = open(256);
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            contents.add("message-" + i);
+            assertTrue(wal.append(messages("message-" + i), false));
+        }
+        assertTrue(segments().size() > 1);
+
+        assertEquals(20, wal.replay());
+        assertEquals(contents, saved);
+        // 回放完成后只保留正在写入的段
+        assertEquals(1, segments().size());
+        assertFalse(wal.isDegraded());
+    }
+
+    @Test
+    void permanentFailureIsQuarantinedAndCheckpointAdvances() throws IOException {
+        rejected.add("bad");
+        MessageWalServiceImpl wal = open(4096);
+        assertTrue(wal.append(messages("a", "bad", "c"), false));
+
+        assertEquals(3, wal.replay());
+        assertEquals(List.of("a", "c"), saved);
+        assertFalse(wal.isDegraded());
+        String quarantine = Files.readString(dir.resolve("quarantine.jsonl"));
+        assertTrue(quarantine.contains("bad"));
+        assertEquals(1, quarantine.lines().count());
+        // 检查点已越过隔离的记录，不会反复回放
+        assertEquals(0, wal.replay());
+    }
+
+    @Test
+    void replayStopsWhileDatabaseIsUnreachable() throws Exception {
+        MessageWalServiceImpl wal = open(4096);
+        assertTrue(wal.append(messages("a"), false));
+        rejected.add("a");
+        when(dataSource.getConnection()).thenThrow(new java.sql.SQLException("connection refused"));
+
+        assertEquals(0, wal.replay());
+        assertTrue(wal.isDegraded());
+        assertFalse(Files.exists(dir.resolve("quarantine.jsonl")));
+    }
+
+    @Test
+    void appendIfDatabaseUnavailableSkipsWhenDatabaseIsReachable() {
+        MessageWalServiceImpl wal = open(4096);
+        assertFalse(wal.appendIfDatabaseUnavailable(messages("a"), false));
+        assertFalse(wal.isDegraded());
+    }
+
+    @Test
+    void unwritableDirectoryDisablesWal() throws IOException {
+        Path blocker = Files.createFile(dir.resolve("blocker"));
+        MessageWalServiceImpl wal = newService(blocker.resolve("wal"), 4096);
+        assertDoesNotThrow(wal::init);
+        assertFalse(wal.append(messages("a"), false));
+        assertEquals(0, wal.replay());
+    }
+
+    private String save(ChatMessage message) {
+        if (rejected.contains(message.getContent())) {
+            return null;
+        }
+        saved.add(message.getContent());
+        return message.getId();
+    }
+
+    private MessageWalServiceImpl open(int segmentBytes) {
+        MessageWalServiceImpl wal = newService(dir, segmentBytes);
+        wal.init();
+        return wal;
+    }
+
+    private MessageWalServiceImpl newService(Path walDir, int segmentBytes) {
+        MessageWalServiceImpl wal = new MessageWalServiceImpl();
+        ReflectionTestUtils.setField(wal, "chatService", chatService);
+        ReflectionTestUtils.setField(wal, "dataSource", dataSource);
+        ReflectionTestUtils.setField(wal, "enabled", true);
+        ReflectionTestUtils.setField(wal, "dir", walDir.toString());
+        ReflectionTestUtils.setField(wal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(wal, "replayBatchSize", 500);
+        ReflectionTestUtils.setField(wal, "replayMaxMillis", 10000L);
+        ReflectionTestUtils.setField(wal, "probeTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(wal, "probeCacheMillis", 0L);
+        return wal;
+    }
+
+    private static List<ChatMessage> messages(String... contents) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (String content : contents) {
+            ChatMessage message = new ChatMessage();
+            message.setId("id-" + content);
+            message.setContent(content);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private static int readInt(Path file, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            channel.read(buffer, position);
+            return buffer.flip().getInt();
+        }
+    }
+
+    private static byte readByte(Path file, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            return buffer.get(0);
+        }
+    }
+
+    private static void flipByte(Path file, int position) throws IOException {
+        writeBytes(file, position, new byte[]{(byte) ~readByte(file, position)});
+    }
+
+    private static void writeBytes(Path file, int position, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器的容量计算、无漏判以及实际误判率
+ */
+class BloomFilterTest {
+
+    @Test
+    void sizingFollowsTheStandardFormulas() {
+        // n = 100000, p = 1%：m = -n·ln(p)/(ln2)² ≈ 958506，向上取整到64的倍数
+        long bits = BloomFilter.optimalNumBits(100_000, 0.01);
+        assertEquals(958_528, bits);
+        assertEquals(0, bits % 64);
+        // k = m/n·ln2 ≈ 6.64
+        assertEquals(7, BloomFilter.optimalNumHashes(100_000, bits));
+
+        // 容量很小时至少一个字
+        assertEquals(64, BloomFilter.optimalNumBits(1, 0.5));
+        assertEquals(1, BloomFilter.optimalNumHashes(1_000, 64));
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.optimalNumBits(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.optimalNumBits(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.optimalNumBits(100, 1));
+    }
+
+    @Test
+    void createUsesComputedSize() {
+        BloomFilter filter = BloomFilter.create(100_000, 0.01);
+        assertEquals(958_528, filter.bitSize());
+        assertEquals(7, filter.hashCount());
+    }
+
+    @Test
+    void hasNoFalseNegatives() {
+        int n = 50_000;
+        BloomFilter filter = BloomFilter.create(n, 0.01);
+        for (int i = 0; i < n; i++) {
+            filter.put("user:" + i);
+        }
+        for (int i = 0; i < n; i++) {
+            assertTrue(filter.mightContain("user:" + i), "漏判: user:" + i);
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearConfiguredValue() {
+        int n = 100_000;
+        double fpp = 0.01;
+        BloomFilter filter = BloomFilter.create(n, fpp);
+        for (int i = 0; i < n; i++) {
+            filter.put("member:" + i);
+        }
+        int probes = 200_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("absent:" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        // 装满到预期容量时误判率应接近配置值，留出统计波动的余量
+        assertTrue(rate < fpp * 1.5, "误判率过高: " + rate);
+        assertTrue(rate > fpp * 0.5, "误判率异常偏低，位数组可能没有按配置计算: " + rate);
+    }
+
+    @Test
+    void bitIndexesAreStableAndInRange() {
+        long numBits = BloomFilter.optimalNumBits(1_000, 0.01);
+        long[] first = BloomFilter.bitIndexes("group:42", numBits, 7);
+        long[] second = BloomFilter.bitIndexes("group:42", numBits, 7);
+        assertArrayEquals(first, second);
+        for (long index : first) {
+            assertTrue(index >= 0 && index < numBits);
+        }
+    }
+}
@@ -139,11 +139,14 @@ CREATE TABLE `group_messages`  (
   `File_name` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '文件原始名称',
   `File_type` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '文件MIME类型',
   `File_size` bigint NULL DEFAULT NULL COMMENT '文件大小(字节)',
+  `seq` bigint NULL DEFAULT NULL COMMENT '群内消息序号',
   PRIMARY KEY (`id`) USING BTREE,
   INDEX `idx_group`(`groupId` ASC) USING BTREE,
   INDEX `idx_sender`(`SenderId` ASC) USING BTREE,
   INDEX `idx_time`(`Create_at` ASC) USING BTREE,
-  INDEX `idx_group_messages_group_time`(`groupId` ASC, `Create_at` ASC) USING BTREE
+  INDEX `idx_group_messages_group_time`(`groupId` ASC, `Create_at` ASC) USING BTREE,
+  INDEX `idx_group_messages_group_id`(`groupId` ASC, `id` ASC) USING BTREE,
+  INDEX `idx_group_messages_group_seq`(`groupId` ASC, `seq` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1914960728448692243 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '群组消息表' ROW_FORMAT = DYNAMIC;
 
 -- ----------------------------
@@ -181,10 +184,14 @@ CREATE TABLE `private_messages`  (
   `file_type` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '文件MIME类型',
   `file_size` bigint NULL DEFAULT NULL COMMENT '文件大小(字节)',
   `message_type` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '消息类型(TEXT/FILE/IMAGE/VIDEO/AUDIO)',
+  `conversation_id` varchar(32) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '会话ID(较小用户ID:较大用户ID)',
+  `seq` bigint NULL DEFAULT NULL COMMENT '对话内消息序号',
   PRIMARY KEY (`id`) USING BTREE,
   INDEX `messageQueryBySender`(`sender_id` ASC) USING BTREE,
   INDEX `messageQueryByReciver`(`receiver_id` ASC) USING BTREE,
-  INDEX `idx_private_messages_conversation`(`sender_id` ASC, `receiver_id` ASC, `created_at` ASC) USING BTREE
+  INDEX `idx_private_messages_conversation`(`sender_id` ASC, `receiver_id` ASC, `created_at` ASC) USING BTREE,
+  INDEX `idx_private_messages_conversation_id`(`conversation_id` ASC, `id` ASC) USING BTREE,
+  INDEX `idx_private_messages_conversation_seq`(`conversation_id` ASC, `seq` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 1918598219437199432 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = DYNAMIC;
 
 -- ----------------------------
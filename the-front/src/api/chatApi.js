@@ -73,19 +73,48 @@ export const getPrivateChatHistory = async (user1, user2, limit = 50, oldestMess
     }
 };
 
+/**
+ * 按游标分页获取群聊消息历史（从新到旧翻页）
+ * @param {string} groupId 群组ID
+ * @param {number} limit 每页消息数量
+ * @param {string} [cursor] 上一页返回的 nextCursor，不传时从最新消息开始
+ * @returns {Promise<{messages: Array, nextCursor: string|null, hasMore: boolean}>} 分页结果
+ */
+export const getGroupChatHistoryPage = async (groupId, limit = 50, cursor = null) => {
+    try {
+        const params = { groupId, limit };
+        if (cursor) {
+            params.cursor = cursor;
+        }
+        const response = await apiClient.get(`/chat/history/group/stream`, { params });
+        if (response.data.code === 200) {
+            return response.data.data || { messages: [], nextCursor: null, hasMore: false };
+        } else {
+            throw new Error(response.data.message || '获取群聊记录失败');
+        }
+    } catch (error) {
+        console.error("获取群聊记录失败:", error);
+        const errorMsg = error.response?.data?.message || error.message || '获取群聊记录失败';
+        throw new Error(errorMsg);
+    }
+};
+
 /**
  * 获取群聊消息历史
  * @param {string} groupId 群组ID
  * @param {number} limit 最大消息数量
+ * @param {string|number} [beforeId] 只获取该消息ID之前的消息，不传时获取最新消息
  * @returns {Promise<Array>} 消息列表
  */
-export const getGroupChatHistory = async (groupId, limit = 50) => {
+export const getGroupChatHistory = async (groupId, limit = 50, beforeId = null) => {
     try {
-        const response = await apiClient.get(`/chat/history/group`, {
-            params: { groupId, limit }
-        });
+        const params = { groupId, limit };
+        if (beforeId) {
+            params.beforeId = beforeId;
+        }
+        const response = await apiClient.get(`/chat/history/group/stream`, { params });
         if (response.data.code === 200) {
-            return response.data.data || [];
+            return response.data.data?.messages || [];
         } else {
             throw new Error(response.data.message || '获取群聊记录失败');
         }
@@ -7,6 +7,8 @@ import { getReceivedGroupInvitations } from '@/api/groupApi'; // 导入群组API
 import { getAuthToken } from '@/utils/auth';
 
 const SOCKET_URL = 'http://localhost:8080/ws-chat'; // 后端 WebSocket 端点
+// 发现序号缺口后等待多久再补拉（毫秒），期间到达的回执和乱序消息可以先补上缺口
+const SEQ_GAP_GRACE_MS = 1500;
 
 // 默认错误处理函数
 const defaultError = (error) => {
@@ -71,6 +73,16 @@ class StompClientWrapper {
         this.groupMessages = ref(new Map());
         //私聊消息的结构是一维数组，数组中存储的是PrivateChatMessage对象
         this.privateMessages = ref([]); 
+        // 增量同步状态：上次同步的高水位、实体摘要和实体列表（断线清理后用于恢复未变化的列表）
+        this.syncState = null;
+        // 每个会话已收到的最大消息序号，key 为 group:<groupId> 或 private:<较小ID>:<较大ID>
+        this.lastSeqs = new Map();
+        // 每个会话最近见过的序号（包括自己发出、经回执确认的），判断缺口时排除这些序号
+        this.seenSeqs = new Map();
+        // 已发出、尚未收到回执的私聊消息：tempId -> 接收者ID，回执到达时据此找到会话
+        this.pendingPrivateSends = new Map();
+        // 最后确认收到的私聊消息ID（字符串，避免超出JS数字精度），重连时放在 CONNECT 帧里，服务端补发之后的消息
+        this.lastPrivateAckId = null;
         // 临时ID生成器（更可靠）
         this.messageSequence = 0;
         // 回调注册表
@@ -297,24 +309,186 @@ class StompClientWrapper {
         }
     }
 
+    // 构建增量同步请求：首次加载时为空，服务端返回完整数据
+    _buildSyncRequest() {
+        if (!this.syncState) {
+            return {};
+        }
+        return {
+            userId: this.syncState.userId,
+            privateAfterId: this.syncState.privateAfterId,
+            groupAfterIds: this.syncState.groupAfterIds,
+            friendsDigest: this.syncState.friendsDigest,
+            friendRequestsDigest: this.syncState.friendRequestsDigest,
+            groupsDigest: this.syncState.groupsDigest
+        };
+    }
+
+    // 合并增量同步结果：列表为 null 表示未变化，消息在 reset 时替换、否则按ID去重追加
+    _applySyncResponse(data) {
+        const previous = this.syncState || {};
+        const friends = data.friends ?? previous.friends ?? [];
+        const friendRequests = data.friendRequests ?? previous.friendRequests ?? [];
+        const groups = data.groups ?? previous.groups ?? [];
+
+        this.friends.value = friends;
+        this.groups.value = groups;
+        this.friendRequests.value = this._processFriendRequests(friendRequests);
+        console.log('[StompClientWrapper] 同步好友/群组/好友请求, 数量:', friends.length, groups.length, friendRequests.length);
+
+        const resetGroups = new Set(data.resetGroups || []);
+        Object.entries(data.groupMessages || {}).forEach(([gid, msgList]) => {
+            const existing = resetGroups.has(gid) ? [] : (this.groupMessages.value.get(gid) || []);
+            this.groupMessages.value.set(gid, this._appendUnique(existing, msgList));
+        });
+        console.log('[StompClientWrapper] 同步群组消息完成, 有新消息的群数量:', Object.keys(data.groupMessages || {}).length);
+
+        const incomingPrivate = data.privateMessages || [];
+        this.privateMessages.value = data.privateReset
+            ? incomingPrivate
+            : this._appendUnique(this.privateMessages.value, incomingPrivate);
+        console.log('[StompClientWrapper] 同步私聊消息完成, 新消息数量:', incomingPrivate.length);
+        this._ackPrivate(data.privateHighWaterMark);
+
+        this.syncState = {
+            userId: data.userId,
+            privateAfterId: data.privateHighWaterMark,
+            groupAfterIds: data.groupHighWaterMarks || {},
+            friendsDigest: data.friendsDigest,
+            friendRequestsDigest: data.friendRequestsDigest,
+            groupsDigest: data.groupsDigest,
+            friends: [...friends],
+            friendRequests: [...friendRequests],
+            groups: [...groups]
+        };
+    }
+
+    // 部分分段未在服务端截止时间内完成时，稍后再同步一次补齐（高水位未前进，不会丢消息）
+    _scheduleFollowUpSync(jwt, data) {
+        if (!data.partialSections || data.partialSections.length === 0) {
+            return;
+        }
+        console.warn('[StompClientWrapper] 同步数据不完整, 稍后重试:', data.partialSections);
+        setTimeout(() => {
+            internalPost('/api/chat/sync/stream',
+                this._buildSyncRequest(),
+                {
+                    'Authorization': 'Bearer ' + jwt,
+                    'Content-Type': 'application/json'
+                },
+                (retryData) => {
+                    if (retryData) {
+                        this._applySyncResponse(retryData);
+                    }
+                },
+                (message) => console.warn('[StompClientWrapper] 补充同步失败:', message));
+        }, 3000);
+    }
+
+    // 记录最后确认收到的私聊消息ID，只前进不后退
+    _ackPrivate(id) {
+        if (id == null || !/^\d+$/.test(String(id))) {
+            return;
+        }
+        if (this.lastPrivateAckId == null || BigInt(String(id)) > BigInt(this.lastPrivateAckId)) {
+            this.lastPrivateAckId = String(id);
+        }
+    }
+
+    // 记录会话中出现过的序号，并推进已知最大值
+    _markSeq(key, seq) {
+        let seen = this.seenSeqs.get(key);
+        if (!seen) {
+            seen = new Set();
+            this.seenSeqs.set(key, seen);
+        }
+        seen.add(seq);
+        const last = this.lastSeqs.get(key);
+        if (last == null || seq > last) {
+            this.lastSeqs.set(key, seq);
+        }
+        // 只保留最近的序号，更早的缺口已经不会再补拉
+        if (seen.size > 1000) {
+            const floor = this.lastSeqs.get(key) - 500;
+            seen.forEach(s => { if (s < floor) seen.delete(s); });
+        }
+    }
+
+    // 自己发出的私聊消息不会推送回来，回执里带着它占用的序号，记下后对方的下一条消息不会被误判为缺口
+    _markOwnPrivateSeq(ack) {
+        const receiverId = this.pendingPrivateSends.get(ack.tempId);
+        this.pendingPrivateSends.delete(ack.tempId);
+        if (!ack.success || ack.seq == null || receiverId == null) {
+            return;
+        }
+        const a = Number(this.currentUserId.value);
+        const b = Number(receiverId);
+        this._markSeq(`private:${Math.min(a, b)}:${Math.max(a, b)}`, ack.seq);
+    }
+
+    // 按会话序号检测缺失的消息：收到的 seq 比已知最大值大于1时，只补拉中间缺失的区间
+    // 补拉结果与实时推送结构相同，按收到新消息处理；区间内不存在的序号（服务端跳过的序号）直接忽略
+    // 发现缺口后先等一小段时间再检查：自己消息的回执、多节点下稍晚到达的较小序号都可能在这段时间内补上缺口
+    _checkSeqGap(key, seq, rangeUrl, eventName) {
+        if (seq == null) {
+            return;
+        }
+        const last = this.lastSeqs.get(key);
+        this._markSeq(key, seq);
+        if (last == null || seq <= last + 1) {
+            return;
+        }
+        setTimeout(() => this._fetchSeqGap(key, last + 1, seq - 1, rangeUrl, eventName), SEQ_GAP_GRACE_MS);
+    }
+
+    _fetchSeqGap(key, fromSeq, toSeq, rangeUrl, eventName) {
+        const seen = this.seenSeqs.get(key) || new Set();
+        const missing = [];
+        // 单次最多补拉200条，缺口更大时只补最近的部分，更早的消息由历史翻页加载
+        for (let s = Math.max(fromSeq, toSeq - 199); s <= toSeq; s++) {
+            if (!seen.has(s)) {
+                missing.push(s);
+            }
+        }
+        if (missing.length === 0) {
+            return;
+        }
+        const from = missing[0];
+        const to = missing[missing.length - 1];
+        console.warn(`[StompClientWrapper] 检测到消息缺失 ${key}: ${from}-${to}`);
+        internalGet(`${rangeUrl}&fromSeq=${from}&toSeq=${to}`,
+            { 'Authorization': 'Bearer ' + getAuthToken() },
+            (messages) => (messages || [])
+                // 自己发出的私聊消息不会推送回来但本地已显示，只补别人发的
+                .filter(m => String(m.senderId) !== String(this.currentUserId.value))
+                .forEach(m => this._trigger(eventName, m)),
+            (message) => console.warn('[StompClientWrapper] 补拉缺失消息失败:', message));
+    }
+
+    // 追加消息并按ID去重
+    _appendUnique(existing, incoming) {
+        const seen = new Set(existing.map(m => String(m.id)));
+        return existing.concat(incoming.filter(m => !seen.has(String(m.id))));
+    }
+
     // 将getUserInfByJwt移到类内部作为方法
     getUserInfByJwt(jwt) {
         try {
-            return internalPost('/api/chat/GetThePrivateMessage',
-                null,
+            // 重连时回传高水位和摘要，只拉取新消息和发生变化的列表
+            return internalPost('/api/chat/sync/stream',
+                this._buildSyncRequest(),
                 {
-                    'Authorization': 'Bearer ' + jwt
+                    'Authorization': 'Bearer ' + jwt,
+                    'Content-Type': 'application/json'
                 },
                 (data) => {
                     if (!data) {
                         console.error('[StompClientWrapper] 从服务器收到空数据');
                         return;
                     }
-                    console.log('[StompClientWrapper] 获取用户信息成功:', data);
+                    console.log('[StompClientWrapper] 同步用户数据成功:', data);
                     
                     // 使用异步处理，避免阻塞主线程
-                    //{"userId":"2","username":"test2","friendIds":"[{\"userId\":\"1\",\"username\":\"test\"}]","groupIds":"[]"}
-                    //获得的数据格式是json字符串，需要注意，friendIds和groupIds是json字符串，需要转换为对象
                     Promise.resolve().then(() => {
                         if (data.userId) {
                             this.currentUserId.value = data.userId;
@@ -326,43 +500,11 @@ class StompClientWrapper {
                         }
                         
                         try {
-                            if (data.friendIds) {
-                                const parsedFriends = JSON.parse(data.friendIds) || [];
-                                this.friends.value = parsedFriends;
-                                console.log('[StompClientWrapper] 解析好友列表成功, 好友数量:', parsedFriends.length);
-                            }
-                            
-                            if (data.groupIds) {
-                                const parsedGroups = JSON.parse(data.groupIds) || [];
-                                this.groups.value = parsedGroups;
-                                console.log('[StompClientWrapper] 解析群组列表成功, 群组列表:', parsedGroups);
-                                console.log('[StompClientWrapper] 解析群组列表成功, 群组数量:', parsedGroups.length);
-                            }
-                            if (data.groupMessages) {
-                                // 这里后端传来的 groupMessages 是 List<List<Group_message>> 的 JSON 字符串
-                                const parsedGroupMsgArrays = JSON.parse(data.groupMessages) || [];
-                                // 将每个群组的消息列表按首条消息的 groupId 建立映射
-                                parsedGroupMsgArrays.forEach(msgList => {
-                                    if (Array.isArray(msgList) && msgList.length > 0) {
-                                        const gid = String(msgList[0].groupId);
-                                        this.groupMessages.value.set(gid, msgList);
-                                    }
-                                });
-                                console.log('[StompClientWrapper] 解析群组消息映射成功:', this.groupMessages.value);
-                            }
-                            if(data.privateMessages){
-                                const parsedPrivateMessages = JSON.parse(data.privateMessages) || [];
-                                this.privateMessages.value = parsedPrivateMessages;
-                                console.log('[StompClientWrapper] 解析私聊消息列表成功, 私聊消息列表:', parsedPrivateMessages);
-                                console.log('[StompClientWrapper] 解析私聊消息列表成功, 私聊消息数量:', parsedPrivateMessages.length);
-                            }
-                            if(data.friendRequests){
-                                // 使用新方法处理好友请求
-                                this._handleInitialFriendRequests(data);
-                            }
+                            this._applySyncResponse(data);
                         } catch (parseError) {
-                            console.error('[StompClientWrapper] 解析好友或群组数据出错:', parseError);
+                            console.error('[StompClientWrapper] 处理同步数据出错:', parseError);
                         }
+                        this._scheduleFollowUpSync(jwt, data);
                         
                         if (this.resolveConnectionPromise) {
                             this.resolveConnectionPromise();
@@ -505,11 +647,16 @@ class StompClientWrapper {
             };  
     
             // STOMP连接
+            const connectHeaders = {
+                token: jwt,
+                'heart-beat': '10000,10000' // 与后端一致的10秒心跳
+            };
+            if (this.lastPrivateAckId) {
+                // 重连：服务端订阅私聊队列后从离线收件箱补发这之后的消息
+                connectHeaders['last-ack-id'] = this.lastPrivateAckId;
+            }
             this.stompClient.value.connect(  
-                {
-                    token: jwt,
-                    'heart-beat': '10000,10000' // 与后端一致的10秒心跳
-                },
+                connectHeaders,
                 //修改连接逻辑，连接成功后，向后端发送get请求，获取用户信息
                 (frame) => {
                     console.log('[StompClientWrapper] 已连接到服务器:', frame);
@@ -662,6 +809,9 @@ class StompClientWrapper {
                             
                             // 触发群组消息事件
                             this._trigger('onPublicMessage', parsedMessage);
+                            this._checkSeqGap('group:' + parsedMessage.groupId, parsedMessage.seq,
+                                `/api/chat/history/group/range?groupId=${encodeURIComponent(parsedMessage.groupId)}`,
+                                'onPublicMessage');
                         } catch (e) {
                             console.error('[StompClientWrapper] 解析群组消息失败:', e, message.body);
                         }
@@ -747,6 +897,12 @@ class StompClientWrapper {
                         
                         // 触发消息接收事件
                         this._trigger('onPrivateMessage', parsedMessage);
+                        this._ackPrivate(parsedMessage.id);
+                        const a = Number(parsedMessage.senderId);
+                        const b = Number(parsedMessage.receiverId);
+                        this._checkSeqGap(`private:${Math.min(a, b)}:${Math.max(a, b)}`, parsedMessage.seq,
+                            `/api/chat/history/private/range?userId=${b}&friendId=${a}`,
+                            'onPrivateMessage');
                     } catch (e) {
                         console.error('[StompClientWrapper] 解析私人消息出错:', e, message.body);
                     }
@@ -857,6 +1013,9 @@ class StompClientWrapper {
                         const ackData = JSON.parse(message.body);
                         console.log('[StompClientWrapper] 解析后的消息确认:', ackData);
                         
+                        if (ackData.messageType === 'private') {
+                            this._markOwnPrivateSeq(ackData);
+                        }
                         // 触发消息确认事件
                         this._trigger('onMessageAck', ackData);
                     } catch (e) {
@@ -1707,6 +1866,7 @@ class StompClientWrapper {
                 }
             });
             console.log(`[StompClientWrapper] 已发送私人消息到 ${destination}，接收者ID: ${toUserId}`);
+            this.pendingPrivateSends.set(tempId, toUserId);
             
             return tempId;
         } catch (e) {